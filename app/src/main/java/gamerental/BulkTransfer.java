@@ -0,0 +1,168 @@
+package gamerental;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class loads and dumps whole tables as CSV files through the
+ * PostgreSQL COPY protocol.  Rows are streamed between the file and the
+ * server without being parsed or held in the JVM, so a few hundred
+ * thousand rows take seconds rather than one statement per row.
+ *
+ * Imports have upsert semantics: the file is copied into a temporary
+ * staging table, then merged into the target with INSERT ... ON CONFLICT
+ * in the same transaction, so a failed import changes nothing.
+ *
+ */
+public class BulkTransfer {
+
+   // characters buffered between the file and the COPY stream.
+   static final int COPY_BUFFER_SIZE = 1 << 16;
+
+   /**
+    * The column layout of a table that can be bulk loaded and dumped.
+    */
+   static final class Table {
+      final String name;
+      final String key;
+      final String[] columns;
+
+      Table(String name, String key, String... columns) {
+         this.name = name;
+         this.key = key;
+         this.columns = columns;
+      }//end Table
+
+      String columnList() {
+         return String.join(", ", this.columns);
+      }//end columnList
+   }//end Table
+
+   static final Table CATALOG = new Table("Catalog", "gameID",
+      "gameID", "gameName", "genre", "price", "description", "imageURL");
+   static final Table USERS = new Table("Users", "login",
+      "login", "password", "role", "favGames", "phoneNum", "numOverDueGames");
+   static final Table RENTAL_ORDER = new Table("RentalOrder", "rentalOrderID",
+      "rentalOrderID", "login", "noOfGames", "totalPrice", "orderTimestamp", "dueDate", "returnedDate");
+
+   private final GameRental _esql;
+
+   /**
+    * Creates a new bulk transfer tool
+    *
+    * @param esql the database to load into and dump from
+    */
+   public BulkTransfer(GameRental esql) {
+      this._esql = esql;
+   }//end BulkTransfer
+
+   /**
+    * @param name a table name, case-insensitive
+    * @return the table layout
+    * @throws java.lang.IllegalArgumentException when the table is not supported
+    */
+   static Table table(String name) {
+      for (Table table : new Table[] { CATALOG, USERS, RENTAL_ORDER })
+         if (table.name.toLowerCase(Locale.ROOT).equals(name.toLowerCase(Locale.ROOT)))
+            return table;
+      throw new IllegalArgumentException("Bulk transfer supports Catalog, Users and RentalOrder, not " + name);
+   }//end table
+
+   /**
+    * Writes every row of a table to a CSV file with a header line.
+    *
+    * @param table the table to dump
+    * @param file the CSV file to create or overwrite
+    * @return the number of rows written
+    * @throws java.sql.SQLException when the COPY failed
+    * @throws java.io.IOException when the file cannot be written
+    */
+   public long exportCsv(Table table, Path file) throws SQLException, IOException {
+      String sql = "COPY (SELECT " + table.columnList() + " FROM " + table.name
+         + " ORDER BY " + table.key + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+      try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), COPY_BUFFER_SIZE)) {
+         return copy(conn -> copyManager(conn).copyOut(sql, out));
+      }//end try
+   }//end exportCsv
+
+   /**
+    * Upserts every row of a CSV file into a table.  The file must start
+    * with a header line and contain the table's columns in export order.
+    * Rows whose key already exists replace the stored row; if the file
+    * repeats a key, one of its rows wins.
+    *
+    * @param table the table to load
+    * @param file the CSV file to read
+    * @return the number of rows inserted or updated
+    * @throws java.sql.SQLException when the load failed; nothing is changed
+    * @throws java.io.IOException when the file cannot be read
+    */
+   public long importCsv(Table table, Path file) throws SQLException, IOException {
+      String staging = "staging_" + table.name.toLowerCase(Locale.ROOT);
+      List<String> updates = new ArrayList<String>();
+      for (String column : table.columns)
+         if (!column.equals(table.key))
+            updates.add(column + " = EXCLUDED." + column);
+
+      String merge = "INSERT INTO " + table.name + " (" + table.columnList() + ")"
+         + " SELECT DISTINCT ON (" + table.key + ") " + table.columnList() + " FROM " + staging
+         + " ORDER BY " + table.key
+         + " ON CONFLICT (" + table.key + ") DO UPDATE SET " + String.join(", ", updates);
+
+      long merged;
+      try (Reader in = new BufferedReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), COPY_BUFFER_SIZE)) {
+         merged = this._esql.inTransaction(() -> {
+            this._esql.executeUpdate("CREATE TEMP TABLE " + staging + " (LIKE " + table.name
+               + " INCLUDING DEFAULTS) ON COMMIT DROP");
+            copy(conn -> copyManager(conn).copyIn("COPY " + staging + " (" + table.columnList()
+               + ") FROM STDIN WITH (FORMAT csv, HEADER)", in, COPY_BUFFER_SIZE));
+            return (long) this._esql.executeUpdate(merge);
+         });
+      }//end try
+
+      if (table == CATALOG)
+         this._esql.invalidateCatalog();
+      return merged;
+   }//end importCsv
+
+   /**
+    * A COPY operation against one connection.
+    */
+   private interface CopyWork {
+      long run(Connection conn) throws SQLException, IOException;
+   }//end CopyWork
+
+   /*
+    * Runs a COPY on a pooled (or the current transaction's) connection.
+    * File errors are reported as SQLExceptions so that an enclosing
+    * transaction rolls back.
+    **/
+   private long copy(CopyWork work) throws SQLException {
+      return this._esql.withConnection(conn -> {
+         try{
+            return work.run(conn);
+         }catch (IOException e){
+            throw new SQLException("COPY failed: " + e.getMessage(), "58030", e);
+         }//end try
+      });
+   }//end copy
+
+   private static CopyManager copyManager(Connection conn) throws SQLException {
+      return conn.unwrap(PGConnection.class).getCopyAPI();
+   }//end copyManager
+
+}//end BulkTransfer
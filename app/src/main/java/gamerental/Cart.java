@@ -0,0 +1,81 @@
+package gamerental;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class collects the games a customer wants to rent in one order.
+ * Adding a game that is already in the cart adds to its unit count, so
+ * every gameID appears at most once per order.
+ *
+ */
+public class Cart {
+
+   // units ordered per gameID, in the order the games were added.
+   private final LinkedHashMap<String, Integer> _lines = new LinkedHashMap<String, Integer>();
+
+   /**
+    * Adds units of a game to the cart
+    *
+    * @param gameID the catalog id of the game
+    * @param units the number of units, at least one
+    */
+   public void add(String gameID, int units) {
+      if (gameID == null || gameID.trim().isEmpty())
+         throw new IllegalArgumentException("Game ID must not be empty");
+      if (units < 1)
+         throw new IllegalArgumentException("Number of units must be at least 1");
+      this._lines.merge(gameID.trim(), units, Integer::sum);
+   }//end add
+
+   /**
+    * @return true when nothing has been added yet
+    */
+   public boolean isEmpty() {
+      return this._lines.isEmpty();
+   }//end isEmpty
+
+   /**
+    * @return the number of distinct games in the cart
+    */
+   public int size() {
+      return this._lines.size();
+   }//end size
+
+   /**
+    * @return the total number of units over all games
+    */
+   public int totalUnits() {
+      int total = 0;
+      for (int units : this._lines.values())
+         total += units;
+      return total;
+   }//end totalUnits
+
+   /**
+    * @return the gameIDs in the cart, parallel to units()
+    */
+   public String[] gameIDs() {
+      return this._lines.keySet().toArray(new String[0]);
+   }//end gameIDs
+
+   /**
+    * @return the units per game, parallel to gameIDs()
+    */
+   public int[] units() {
+      int[] units = new int[this._lines.size()];
+      int i = 0;
+      for (int n : this._lines.values())
+         units[i++] = n;
+      return units;
+   }//end units
+
+   /**
+    * @return the units ordered per gameID, in insertion order
+    */
+   public Map<String, Integer> lines() {
+      return Collections.unmodifiableMap(this._lines);
+   }//end lines
+
+}//end Cart
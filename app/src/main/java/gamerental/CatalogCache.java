@@ -0,0 +1,222 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps the whole Catalog table in memory with four indexes:
+ * a hash index by gameID, a hash index by genre, a price-ordered map
+ * for range queries and sorted scans, and a full-text index over titles
+ * and descriptions (see CatalogSearchIndex).
+ *
+ * The cache is loaded once and then kept current write-through: every
+ * change made to Catalog through GameRental is applied here as well.
+ * Readers never block each other; writers briefly block readers.
+ *
+ */
+public class CatalogCache {
+
+   // the primary index.
+   private final HashMap<String, Game> _byId = new HashMap<String, Game>();
+
+   // genre (lower case) to the games listed under it, keyed by gameID.
+   private final HashMap<String, Map<String, Game>> _byGenre = new HashMap<String, Map<String, Game>>();
+
+   // price to the games at that price, keyed by gameID.
+   private final TreeMap<Double, Map<String, Game>> _byPrice = new TreeMap<Double, Map<String, Game>>();
+
+   // words of titles and descriptions to the games containing them.
+   private final CatalogSearchIndex _text = new CatalogSearchIndex();
+
+   private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+   /**
+    * Reads every Catalog row into a new cache.
+    *
+    * @param esql the database to load from
+    * @return the loaded cache
+    * @throws java.sql.SQLException when the catalog cannot be read
+    */
+   public static CatalogCache load(GameRental esql) throws SQLException {
+      CatalogCache cache = new CatalogCache();
+      List<Game> games = new ArrayList<Game>();
+      esql.executeQueryForEach(Queries.LOAD_CATALOG, row -> games.add(Game.from(row)));
+      cache.putAll(games);
+      return cache;
+   }//end load
+
+   /**
+    * @param gameID the catalog key
+    * @return the game, or null if there is none with that id
+    */
+   public Game get(String gameID) {
+      this._lock.readLock().lock();
+      try{
+         return this._byId.get(gameID);
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end get
+
+   /**
+    * @param genre the genre, matched case-insensitively
+    * @return the games listed under the genre
+    */
+   public List<Game> byGenre(String genre) {
+      this._lock.readLock().lock();
+      try{
+         Map<String, Game> games = this._byGenre.get(genreKey(genre));
+         return games == null ? Collections.<Game>emptyList() : new ArrayList<Game>(games.values());
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end byGenre
+
+   /**
+    * @param minPrice the lowest price, inclusive
+    * @param maxPrice the highest price, inclusive
+    * @return the games in the price range, cheapest first
+    */
+   public List<Game> byPriceRange(double minPrice, double maxPrice) {
+      if (minPrice > maxPrice)
+         return Collections.emptyList();
+      this._lock.readLock().lock();
+      try{
+         return flatten(this._byPrice.subMap(minPrice, true, maxPrice, true).values());
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end byPriceRange
+
+   /**
+    * @param descending true for the most expensive games first
+    * @return every game ordered by price
+    */
+   public List<Game> sortedByPrice(boolean descending) {
+      this._lock.readLock().lock();
+      try{
+         NavigableMap<Double, Map<String, Game>> view =
+            descending ? this._byPrice.descendingMap() : this._byPrice;
+         return flatten(view.values());
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end sortedByPrice
+
+   /**
+    * Finds games by the words of their title and description.  Words may
+    * be abbreviated or slightly misspelled.
+    *
+    * @param query the words to look for
+    * @param limit the most games to return
+    * @return the best matching games, best first
+    */
+   public List<Game> search(String query, int limit) {
+      this._lock.readLock().lock();
+      try{
+         return this._text.search(query, limit);
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end search
+
+   /**
+    * @return the number of games in the catalog
+    */
+   public int size() {
+      this._lock.readLock().lock();
+      try{
+         return this._byId.size();
+      }finally{
+         this._lock.readLock().unlock();
+      }//end try
+   }//end size
+
+   /**
+    * Adds a game or replaces the cached copy of it.
+    *
+    * @param game the current state of the Catalog row
+    */
+   public void put(Game game) {
+      this._lock.writeLock().lock();
+      try{
+         unindex(this._byId.put(game.gameID(), game));
+         index(game);
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end put
+
+   /**
+    * Drops a game from every index.
+    *
+    * @param gameID the catalog key
+    */
+   public void remove(String gameID) {
+      this._lock.writeLock().lock();
+      try{
+         unindex(this._byId.remove(gameID));
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end remove
+
+   private void putAll(Collection<Game> games) {
+      this._lock.writeLock().lock();
+      try{
+         for (Game game : games) {
+            unindex(this._byId.put(game.gameID(), game));
+            index(game);
+         }//end for
+      }finally{
+         this._lock.writeLock().unlock();
+      }//end try
+   }//end putAll
+
+   private void index(Game game) {
+      this._byGenre.computeIfAbsent(genreKey(game.genre()), k -> new LinkedHashMap<String, Game>())
+         .put(game.gameID(), game);
+      this._byPrice.computeIfAbsent(game.price(), k -> new LinkedHashMap<String, Game>())
+         .put(game.gameID(), game);
+      this._text.add(game);
+   }//end index
+
+   private void unindex(Game game) {
+      if (game == null)
+         return;
+      removeFrom(this._byGenre, genreKey(game.genre()), game.gameID());
+      removeFrom(this._byPrice, game.price(), game.gameID());
+      this._text.remove(game);
+   }//end unindex
+
+   private static <K> void removeFrom(Map<K, Map<String, Game>> index, K key, String gameID) {
+      Map<String, Game> games = index.get(key);
+      if (games != null) {
+         games.remove(gameID);
+         if (games.isEmpty())
+            index.remove(key);
+      }//end if
+   }//end removeFrom
+
+   private static List<Game> flatten(Collection<Map<String, Game>> groups) {
+      List<Game> result = new ArrayList<Game>();
+      for (Map<String, Game> games : groups)
+         result.addAll(games.values());
+      return result;
+   }//end flatten
+
+   private static String genreKey(String genre) {
+      return genre == null ? "" : genre.trim().toLowerCase(Locale.ROOT);
+   }//end genreKey
+
+}//end CatalogCache
@@ -0,0 +1,318 @@
+package gamerental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class is an inverted index over the title and description of every
+ * catalog entry.  Text is split into lower-case words; each word maps to
+ * the list of games containing it and how often, with title words counted
+ * TITLE_WEIGHT times.  Results are ranked with BM25, games matching more
+ * of the query's words first.
+ *
+ * Every query word also matches the indexed words it is a prefix of, so
+ * "zel" finds "zelda", and a word that is not in the index matches the
+ * words one or two edits away from it, so "zelad" finds "zelda".  Such
+ * matches count for less than exact ones.
+ *
+ * The index is not synchronized; CatalogCache maintains it next to its
+ * other indexes under its own lock.  Removed games leave dead entries in
+ * the posting lists until they outnumber the live ones, when the lists
+ * are rebuilt.
+ *
+ */
+class CatalogSearchIndex {
+
+   // how many times a title word counts against a description word.
+   static final int TITLE_WEIGHT = 3;
+
+   // BM25 term frequency saturation and length normalization.
+   static final double K1 = 1.2;
+   static final double B = 0.75;
+
+   // score factors of prefix and typo matches relative to exact ones.
+   static final double PREFIX_WEIGHT = 0.8;
+   static final double TYPO_WEIGHT = 0.5;
+
+   // most indexed words a single query word is expanded to.
+   static final int MAX_EXPANSIONS = 64;
+
+   // query words beyond this many are ignored.
+   static final int MAX_QUERY_WORDS = 32;
+
+   // most indexed words looked at for the completions of one prefix.
+   static final int MAX_PREFIX_SCAN = 4096;
+
+   // words too common to be worth indexing.
+   static final Set<String> STOP_WORDS = Set.of(
+      "a", "an", "and", "at", "by", "for", "in", "is", "it", "of", "on", "or", "the", "to", "with");
+
+   /*
+    * The games containing one word, in the order they were indexed, and
+    * the weighted number of times each contains it.  live counts the
+    * entries whose game is still in the index.
+    **/
+   private static final class Postings {
+      int[] docs = new int[4];
+      int[] freqs = new int[4];
+      int size = 0;
+      int live = 0;
+
+      void add(int doc, int freq) {
+         if (this.size == this.docs.length) {
+            this.docs = Arrays.copyOf(this.docs, this.size * 2);
+            this.freqs = Arrays.copyOf(this.freqs, this.size * 2);
+         }//end if
+         this.docs[this.size] = doc;
+         this.freqs[this.size] = freq;
+         ++this.size;
+         ++this.live;
+      }//end add
+   }//end Postings
+
+   // every indexed word, sorted so a prefix is a range.
+   private final TreeMap<String, Postings> _words = new TreeMap<String, Postings>();
+
+   // document number to game, null once removed.
+   private final ArrayList<Game> _docs = new ArrayList<Game>();
+
+   // document number to weighted word count.
+   private int[] _lengths = new int[16];
+
+   private final HashMap<String, Integer> _docOf = new HashMap<String, Integer>();
+   private long _totalLength = 0;
+
+   /**
+    * Indexes a game.  The game must not already be indexed.
+    *
+    * @param game the catalog entry
+    */
+   void add(Game game) {
+      int doc = this._docs.size();
+      this._docs.add(game);
+      this._docOf.put(game.gameID(), doc);
+      if (doc == this._lengths.length)
+         this._lengths = Arrays.copyOf(this._lengths, doc * 2);
+
+      Map<String, Integer> freqs = wordCounts(game);
+      int length = 0;
+      for (Map.Entry<String, Integer> word : freqs.entrySet()) {
+         this._words.computeIfAbsent(word.getKey(), w -> new Postings()).add(doc, word.getValue());
+         length += word.getValue();
+      }//end for
+      this._lengths[doc] = length;
+      this._totalLength += length;
+   }//end add
+
+   /**
+    * Takes a game out of the results.
+    *
+    * @param game the catalog entry as it was indexed
+    */
+   void remove(Game game) {
+      Integer doc = this._docOf.remove(game.gameID());
+      if (doc == null)
+         return;
+      this._docs.set(doc, null);
+      this._totalLength -= this._lengths[doc];
+      for (String word : wordCounts(game).keySet()) {
+         Postings postings = this._words.get(word);
+         if (--postings.live == 0)
+            this._words.remove(word);
+      }//end for
+      if (this._docs.size() > 1024 && this._docOf.size() < this._docs.size() / 2)
+         compact();
+   }//end remove
+
+   // re-indexes the live games so dead entries stop costing time and memory.
+   private void compact() {
+      List<Game> games = new ArrayList<Game>(this._docOf.size());
+      for (Game game : this._docs)
+         if (game != null)
+            games.add(game);
+      this._words.clear();
+      this._docs.clear();
+      this._docOf.clear();
+      this._lengths = new int[Math.max(16, games.size())];
+      this._totalLength = 0;
+      for (Game game : games)
+         add(game);
+   }//end compact
+
+   /**
+    * @param query words to look for in titles and descriptions
+    * @param limit the most games to return
+    * @return the best matching games, best first
+    */
+   List<Game> search(String query, int limit) {
+      Set<String> terms = new LinkedHashSet<String>(tokenize(query));
+      if (terms.size() > MAX_QUERY_WORDS)
+         terms = new LinkedHashSet<String>(new ArrayList<String>(terms).subList(0, MAX_QUERY_WORDS));
+      int n = this._docOf.size();
+      if (terms.isEmpty() || n == 0 || limit <= 0)
+         return new ArrayList<Game>();
+
+      int docs = this._docs.size();
+      double avgLength = Math.max(1.0, (double) this._totalLength / n);
+      float[] score = new float[docs];
+      byte[] matched = new byte[docs];
+      float[] best = new float[docs];
+      int[] touched = new int[16];
+
+      for (String term : terms) {
+         // a game scores its best match of each query word, not the sum of them
+         int touchedCount = 0;
+         for (Map.Entry<String, Double> expansion : expand(term).entrySet()) {
+            Postings postings = this._words.get(expansion.getKey());
+            double idf = Math.log(1 + (n - postings.live + 0.5) / (postings.live + 0.5));
+            double weight = expansion.getValue() * idf;
+            for (int i = 0; i < postings.size; ++i) {
+               int doc = postings.docs[i];
+               if (this._docs.get(doc) == null)
+                  continue;
+               double tf = postings.freqs[i];
+               float s = (float) (weight * tf * (K1 + 1)
+                  / (tf + K1 * (1 - B + B * this._lengths[doc] / avgLength)));
+               if (best[doc] == 0) {
+                  if (touchedCount == touched.length)
+                     touched = Arrays.copyOf(touched, touchedCount * 2);
+                  touched[touchedCount++] = doc;
+               }//end if
+               if (s > best[doc])
+                  best[doc] = s;
+            }//end for
+         }//end for
+         for (int i = 0; i < touchedCount; ++i) {
+            int doc = touched[i];
+            score[doc] += best[doc];
+            ++matched[doc];
+            best[doc] = 0;
+         }//end for
+      }//end for
+
+      // keep the top games in a min-heap of size limit
+      Comparator<Integer> rank = (a, b) ->
+         matched[a] != matched[b] ? matched[a] - matched[b] : Float.compare(score[a], score[b]);
+      PriorityQueue<Integer> top = new PriorityQueue<Integer>(limit + 1, rank);
+      for (int doc = 0; doc < docs; ++doc) {
+         if (matched[doc] == 0 || (top.size() == limit && rank.compare(doc, top.peek()) <= 0))
+            continue;
+         top.add(doc);
+         if (top.size() > limit)
+            top.poll();
+      }//end for
+      Game[] result = new Game[top.size()];
+      for (int i = result.length - 1; i >= 0; --i)
+         result[i] = this._docs.get(top.poll());
+      return new ArrayList<Game>(Arrays.asList(result));
+   }//end search
+
+   /*
+    * The indexed words a query word matches, with their score factors:
+    * the word itself, the words it is a prefix of, and when the word is
+    * not indexed, the words within a small edit distance of it.
+    **/
+   private Map<String, Double> expand(String term) {
+      Map<String, Double> matches = new HashMap<String, Double>();
+      if (this._words.containsKey(term))
+         matches.put(term, 1.0);
+
+      // under a short prefix, the most common completions are the likeliest meant
+      List<Map.Entry<String, Postings>> completions = new ArrayList<Map.Entry<String, Postings>>();
+      for (Map.Entry<String, Postings> word : this._words.subMap(term, false, term + Character.MAX_VALUE, false).entrySet()) {
+         if (completions.size() == MAX_PREFIX_SCAN)
+            break;
+         completions.add(word);
+      }//end for
+      completions.sort((a, b) -> b.getValue().live - a.getValue().live);
+      for (Map.Entry<String, Postings> word : completions.subList(0, Math.min(MAX_EXPANSIONS, completions.size())))
+         matches.put(word.getKey(), PREFIX_WEIGHT);
+
+      int maxEdits = term.length() >= 8 ? 2 : term.length() >= 4 ? 1 : 0;
+      if (maxEdits == 0 || this._words.containsKey(term))
+         return matches;
+      // typos rarely hit the first letter, so only words sharing it are compared
+      String first = term.substring(0, 1);
+      for (String word : this._words.subMap(first, true, first + Character.MAX_VALUE, false).keySet()) {
+         if (Math.abs(word.length() - term.length()) > maxEdits || matches.containsKey(word))
+            continue;
+         int edits = editDistance(term, word, maxEdits);
+         if (edits <= maxEdits) {
+            matches.put(word, TYPO_WEIGHT / edits);
+            if (matches.size() >= MAX_EXPANSIONS)
+               break;
+         }//end if
+      }//end for
+      return matches;
+   }//end expand
+
+   /*
+    * Edit distance between two words, counting a swap of two adjacent
+    * letters as one edit like an insertion, deletion or substitution, or
+    * max + 1 as soon as it is known to exceed max.
+    **/
+   static int editDistance(String a, String b, int max) {
+      int[] before = new int[b.length() + 1];
+      int[] prev = new int[b.length() + 1];
+      int[] cur = new int[b.length() + 1];
+      for (int j = 0; j <= b.length(); ++j)
+         prev[j] = j;
+      int prevMin = 0;
+      for (int i = 1; i <= a.length(); ++i) {
+         cur[0] = i;
+         int rowMin = cur[0];
+         for (int j = 1; j <= b.length(); ++j) {
+            int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+            cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+               cur[j] = Math.min(cur[j], before[j - 2] + 1);
+            rowMin = Math.min(rowMin, cur[j]);
+         }//end for
+         // a swap reaches back two rows, so both must be past max
+         if (rowMin > max && prevMin >= max)
+            return max + 1;
+         prevMin = rowMin;
+         int[] swap = before;
+         before = prev;
+         prev = cur;
+         cur = swap;
+      }//end for
+      return Math.min(prev[b.length()], max + 1);
+   }//end editDistance
+
+   private static Map<String, Integer> wordCounts(Game game) {
+      Map<String, Integer> freqs = new HashMap<String, Integer>();
+      for (String word : tokenize(game.gameName()))
+         freqs.merge(word, TITLE_WEIGHT, Integer::sum);
+      for (String word : tokenize(game.description()))
+         freqs.merge(word, 1, Integer::sum);
+      return freqs;
+   }//end wordCounts
+
+   /**
+    * Splits text into lower-case words of letters and digits, leaving out
+    * stop words.
+    *
+    * @param text the text, may be null
+    * @return the words in order
+    */
+   static List<String> tokenize(String text) {
+      List<String> words = new ArrayList<String>();
+      if (text == null)
+         return words;
+      for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+         if (!word.isEmpty() && !STOP_WORDS.contains(word))
+            words.add(word);
+      return words;
+   }//end tokenize
+
+}//end CatalogSearchIndex
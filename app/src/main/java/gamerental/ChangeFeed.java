@@ -0,0 +1,216 @@
+package gamerental;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class delivers the changes committed to Catalog, Users and
+ * TrackingInfo by any node.  Triggers on those tables (schema version 7)
+ * publish one NOTIFY per changed row on CHANNEL, or one per statement
+ * when it changed many rows.  A dedicated thread per database, or shard,
+ * LISTENs on a connection of its own and hands each change to the
+ * subscribers of its table.
+ *
+ * Notifications sent while the listener is disconnected are lost, so
+ * after it reconnects every subscriber is sent a RESET change and should
+ * treat everything it holds as stale.
+ *
+ */
+public class ChangeFeed implements AutoCloseable {
+
+   // the NOTIFY channel the triggers publish on.
+   static final String CHANNEL = "gamerental_changes";
+
+   // longest wait for notifications before checking for shutdown.
+   static final int POLL_MILLIS = 500;
+
+   // pause before reconnecting after the connection failed.
+   static final long RETRY_DELAY_MILLIS = 1000L;
+
+   // how long start() waits for the first LISTEN.
+   static final long START_TIMEOUT_MILLIS = 5000L;
+
+   /**
+    * One committed change.  A null id means the change touched many or
+    * all rows of the table.  shard is the database that committed it.
+    */
+   public static final class Change {
+      public final int shard;
+      public final String table;
+      public final String op;
+      public final String id;
+
+      Change(int shard, String table, String op, String id) {
+         this.shard = shard;
+         this.table = table;
+         this.op = op;
+         this.id = id;
+      }//end Change
+
+      @Override
+      public String toString() {
+         return this.op + " " + this.table + (this.id == null ? "" : " " + this.id) + " on shard " + this.shard;
+      }//end toString
+   }//end Change
+
+   /**
+    * A registration made by subscribe(); closing it stops the deliveries.
+    */
+   public interface Subscription extends AutoCloseable {
+      @Override
+      void close();
+   }//end Subscription
+
+   private static final class Subscriber {
+      final String table;
+      final Consumer<Change> consumer;
+
+      Subscriber(String table, Consumer<Change> consumer) {
+         this.table = table;
+         this.consumer = consumer;
+      }//end Subscriber
+   }//end Subscriber
+
+   private final List<String> _urls;
+   private final Properties _props;
+   private final CopyOnWriteArrayList<Subscriber> _subscribers = new CopyOnWriteArrayList<Subscriber>();
+   private final CountDownLatch _listening;
+   private final List<Thread> _listeners = new ArrayList<Thread>();
+   private volatile boolean _running = false;
+
+   /**
+    * Creates a new feed; call start() to begin listening
+    *
+    * @param urls the JDBC URL of the primary of each shard, in shard order
+    * @param props the driver properties, including user and password
+    */
+   public ChangeFeed(List<String> urls, Properties props) {
+      this._urls = new ArrayList<String>(urls);
+      this._props = props;
+      this._listening = new CountDownLatch(urls.size());
+   }//end ChangeFeed
+
+   /**
+    * Registers a subscriber.  Changes are delivered on the listener
+    * thread of the shard that committed them, in its commit order; a slow
+    * subscriber delays all others.  With several shards, a subscriber may
+    * be called from several threads at once.
+    *
+    * @param table the table, in lower case, e.g. "catalog"
+    * @param consumer what to do with each change of the table
+    * @return the registration, to be closed when no longer needed
+    */
+   public Subscription subscribe(String table, Consumer<Change> consumer) {
+      Subscriber subscriber = new Subscriber(table, consumer);
+      this._subscribers.add(subscriber);
+      return () -> this._subscribers.remove(subscriber);
+   }//end subscribe
+
+   /**
+    * Starts the listener threads, waiting briefly until they listen so
+    * that no change committed after start() returns is missed.  Does
+    * nothing if the feed is already started.
+    */
+   public synchronized void start() {
+      if (!this._listeners.isEmpty())
+         return;
+      this._running = true;
+      for (int i = 0; i < this._urls.size(); ++i) {
+         int shard = i;
+         Thread listener = new Thread(() -> listenLoop(shard), this._urls.size() == 1 ? "change-feed" : "change-feed-" + i);
+         listener.setDaemon(true);
+         listener.start();
+         this._listeners.add(listener);
+      }//end for
+      try{
+         if (!this._listening.await(START_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            System.err.println("Change feed is not listening yet; cached data may go stale until it is");
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+   }//end start
+
+   private void listenLoop(int shard) {
+      boolean reconnected = false;
+      while (this._running) {
+         try (Connection conn = DriverManager.getConnection(this._urls.get(shard), this._props);
+              Statement stmt = conn.createStatement()) {
+            stmt.execute("LISTEN " + CHANNEL);
+            this._listening.countDown();
+            if (reconnected)
+               dispatch(new Change(shard, null, "RESET", null));
+            PGConnection pg = conn.unwrap(PGConnection.class);
+            while (this._running) {
+               PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+               if (notifications == null)
+                  continue;
+               for (PGNotification n : notifications)
+                  dispatch(parse(shard, n.getParameter()));
+            }//end while
+         }catch (SQLException e){
+            if (!this._running)
+               break;
+            System.err.println("Change feed connection to " + this._urls.get(shard) + " failed, reconnecting: " + e.getMessage());
+            reconnected = true;
+            try{
+               Thread.sleep(RETRY_DELAY_MILLIS);
+            }catch (InterruptedException ie){
+               // closing.
+            }//end try
+         }//end try
+      }//end while
+   }//end listenLoop
+
+   @SuppressWarnings("unchecked")
+   private static Change parse(int shard, String payload) {
+      try{
+         Map<String, Object> event = (Map<String, Object>) Json.parse(payload);
+         return new Change(shard, (String) event.get("table"), (String) event.get("op"), (String) event.get("id"));
+      }catch (RuntimeException e){
+         // not ours to understand; subscribers treat it as a bulk change.
+         return new Change(shard, null, "RESET", null);
+      }//end try
+   }//end parse
+
+   // a change with no table goes to every subscriber.
+   private void dispatch(Change change) {
+      for (Subscriber subscriber : this._subscribers) {
+         if (change.table != null && !change.table.equals(subscriber.table))
+            continue;
+         try{
+            subscriber.consumer.accept(change);
+         }catch (RuntimeException e){
+            System.err.println("Change subscriber failed on " + change + ": " + e.getMessage());
+         }//end try
+      }//end for
+   }//end dispatch
+
+   /**
+    * Stops listening; the current deliveries finish first.
+    */
+   @Override
+   public synchronized void close() {
+      this._running = false;
+      try{
+         for (Thread listener : this._listeners)
+            listener.join(POLL_MILLIS * 4L);
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+      this._listeners.clear();
+   }//end close
+
+}//end ChangeFeed
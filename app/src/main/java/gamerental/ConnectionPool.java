@@ -0,0 +1,346 @@
+package gamerental;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps a bounded pool of physical connections to one
+ * PostgreSQL server.  Connections are handed out with borrow() and must be
+ * given back with release(); every connection carries its own
+ * StatementCache so prepared statements survive across borrowers.
+ *
+ * The pool never holds more than maxSize connections, keeps at least
+ * minSize of them open, validates connections that sat idle before handing
+ * them out, closes connections that stay idle for too long and reports
+ * connections that are held past the leak threshold.
+ *
+ */
+public class ConnectionPool {
+
+   // connections idle for less than this are handed out without a round trip.
+   static final long VALIDATION_INTERVAL_MILLIS = 500;
+
+   // seconds the driver may spend on a Connection.isValid() check.
+   static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+   // how often the maintenance task evicts, tops up and looks for leaks.
+   static final long MAINTENANCE_INTERVAL_MILLIS = 5000;
+
+   // whether a borrow records its stack trace for leak reports; costly, so off by default.
+   static final boolean TRACE_BORROWS = Boolean.getBoolean("gamerental.pool.traceBorrows");
+
+   /**
+    * A physical connection owned by the pool, together with the prepared
+    * statements cached on it and the bookkeeping used for eviction and
+    * leak detection.
+    */
+   public static final class PooledConnection {
+      private final ConnectionPool _owner;
+      private final Connection _connection;
+      private final StatementCache _statements;
+      private volatile long _lastUsedMillis;
+      private volatile long _borrowedAtMillis;
+      private volatile String _borrowerThread;
+      private volatile Throwable _borrowedBy;
+      private volatile boolean _leakReported;
+      private volatile boolean _broken;
+
+      PooledConnection(ConnectionPool owner, Connection connection, int statementCacheSize) {
+         this._owner = owner;
+         this._connection = connection;
+         this._statements = new StatementCache(connection, statementCacheSize);
+         this._lastUsedMillis = System.currentTimeMillis();
+      }//end PooledConnection
+
+      /**
+       * @return the physical connection
+       */
+      public Connection connection() {
+         return this._connection;
+      }//end connection
+
+      /**
+       * @return the pool the connection must be released to
+       */
+      public ConnectionPool pool() {
+         return this._owner;
+      }//end pool
+
+      /**
+       * @return the prepared statements cached on this connection
+       */
+      public StatementCache statements() {
+         return this._statements;
+      }//end statements
+
+      /**
+       * Records a failure on this connection.  Connection-level errors mark
+       * it broken so the pool discards it instead of reusing it.
+       *
+       * @param e the error raised while using the connection
+       */
+      public void fail(SQLException e) {
+         String state = e.getSQLState();
+         if (state == null || state.startsWith("08") || state.startsWith("57P"))
+            this._broken = true;
+      }//end fail
+
+      private void closeQuietly() {
+         this._statements.close();
+         try{
+            this._connection.close();
+         }catch (SQLException e){
+            // ignored.
+         }//end try
+      }//end closeQuietly
+   }//end PooledConnection
+
+   private final String _url;
+   private final Properties _props;
+   private final int _minSize;
+   private final int _maxSize;
+   private final long _borrowTimeoutMillis;
+   private final long _idleTimeoutMillis;
+   private final long _leakThresholdMillis;
+   private final int _statementCacheSize;
+
+   // one permit per connection that may still be borrowed.
+   private final Semaphore _permits;
+
+   // idle connections, most recently used first.
+   private final LinkedBlockingDeque<PooledConnection> _idle = new LinkedBlockingDeque<PooledConnection>();
+
+   // connections currently handed out.
+   private final Set<PooledConnection> _borrowed = ConcurrentHashMap.newKeySet();
+
+   // number of open physical connections, idle or borrowed.
+   private final AtomicInteger _total = new AtomicInteger();
+
+   private final ScheduledExecutorService _maintenance;
+   private volatile boolean _closed = false;
+
+   /**
+    * Creates a new connection pool and opens its first minSize connections
+    *
+    * @param url the JDBC connection URL
+    * @param props the driver properties, including user and password
+    * @param minSize the number of connections kept open at all times
+    * @param maxSize the maximum number of open connections
+    * @param borrowTimeoutMillis how long borrow() waits for a free connection
+    * @param idleTimeoutMillis how long a surplus connection may stay idle
+    * @param leakThresholdMillis how long a connection may be held before it is reported
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool(String url, Properties props, int minSize, int maxSize,
+                         long borrowTimeoutMillis, long idleTimeoutMillis,
+                         long leakThresholdMillis) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+         throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+      this._url = url;
+      this._props = props;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._borrowTimeoutMillis = borrowTimeoutMillis;
+      this._idleTimeoutMillis = idleTimeoutMillis;
+      this._leakThresholdMillis = leakThresholdMillis;
+      this._statementCacheSize = StatementCache.DEFAULT_CAPACITY;
+      this._permits = new Semaphore(maxSize, true);
+
+      // fail fast if the database cannot be reached at all.
+      for (int i = 0; i < minSize; ++i)
+         this._idle.offerFirst(open());
+
+      this._maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "connection-pool-maintenance");
+         t.setDaemon(true);
+         return t;
+      });
+      this._maintenance.scheduleWithFixedDelay(this::maintain,
+         MAINTENANCE_INTERVAL_MILLIS, MAINTENANCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Borrows a connection from the pool, waiting at most the configured
+    * borrow timeout for one to become available.  The connection is in
+    * autocommit mode and must be handed back with release().
+    *
+    * @return a validated connection
+    * @throws java.sql.SQLException when no connection became available in time
+    */
+   public PooledConnection borrow() throws SQLException {
+      if (this._closed)
+         throw new SQLException("Connection pool is closed", "08003");
+      try{
+         if (!this._permits.tryAcquire(this._borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+            throw new SQLException("Timed out after " + this._borrowTimeoutMillis
+               + " ms waiting for a database connection (" + this._borrowed.size()
+               + " of " + this._maxSize + " in use)", "08001");
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for a database connection", "08001", e);
+      }//end try
+
+      try{
+         PooledConnection pc;
+         while ((pc = this._idle.pollFirst()) != null) {
+            if (isUsable(pc))
+               break;
+            destroy(pc);
+         }//end while
+         if (pc == null)
+            pc = open();
+
+         pc._borrowedAtMillis = System.currentTimeMillis();
+         pc._borrowerThread = Thread.currentThread().getName();
+         pc._borrowedBy = TRACE_BORROWS && this._leakThresholdMillis > 0
+            ? new Throwable("Connection borrowed here") : null;
+         pc._leakReported = false;
+         this._borrowed.add(pc);
+         return pc;
+      }catch (SQLException | RuntimeException e){
+         this._permits.release();
+         throw e;
+      }//end try
+   }//end borrow
+
+   /**
+    * Returns a borrowed connection to the pool.  Broken connections and
+    * connections returned after the pool was closed are discarded.
+    *
+    * @param pc the connection obtained from borrow()
+    */
+   public void release(PooledConnection pc) {
+      if (pc == null || !this._borrowed.remove(pc))
+         return;
+      try{
+         if (!pc._broken && !pc._connection.isClosed()) {
+            if (!pc._connection.getAutoCommit()) {
+               // never hand out a connection with an open transaction.
+               pc._connection.rollback();
+               pc._connection.setAutoCommit(true);
+            }//end if
+         }//end if
+      }catch (SQLException e){
+         pc._broken = true;
+      }//end try
+
+      pc._borrowedBy = null;
+      pc._lastUsedMillis = System.currentTimeMillis();
+      if (pc._broken || this._closed)
+         destroy(pc);
+      else
+         this._idle.offerFirst(pc);
+      this._permits.release();
+   }//end release
+
+   /**
+    * @return the number of open physical connections
+    */
+   public int totalConnections() {
+      return this._total.get();
+   }//end totalConnections
+
+   /**
+    * @return the number of connections currently borrowed
+    */
+   public int activeConnections() {
+      return this._borrowed.size();
+   }//end activeConnections
+
+   /**
+    * @return the number of connections waiting in the pool
+    */
+   public int idleConnections() {
+      return this._idle.size();
+   }//end idleConnections
+
+   /**
+    * Closes every idle connection and stops the maintenance task.
+    * Connections still borrowed are closed when they are released.
+    */
+   public void close() {
+      this._closed = true;
+      this._maintenance.shutdownNow();
+      PooledConnection pc;
+      while ((pc = this._idle.pollFirst()) != null)
+         destroy(pc);
+   }//end close
+
+   private boolean isUsable(PooledConnection pc) {
+      try{
+         if (pc._broken || pc._connection.isClosed())
+            return false;
+         long idleFor = System.currentTimeMillis() - pc._lastUsedMillis;
+         return idleFor < VALIDATION_INTERVAL_MILLIS
+            || pc._connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+      }catch (SQLException e){
+         return false;
+      }//end try
+   }//end isUsable
+
+   private PooledConnection open() throws SQLException {
+      Connection connection = DriverManager.getConnection(this._url, this._props);
+      this._total.incrementAndGet();
+      return new PooledConnection(this, connection, this._statementCacheSize);
+   }//end open
+
+   private void destroy(PooledConnection pc) {
+      this._total.decrementAndGet();
+      pc.closeQuietly();
+   }//end destroy
+
+   /*
+    * Evicts connections idle past the idle timeout, reopens connections
+    * up to the minimum size and reports leaked connections.
+    **/
+   private void maintain() {
+      try{
+         long now = System.currentTimeMillis();
+
+         // walk from the least recently used end so warm connections stay.
+         List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+         Iterator<PooledConnection> it = this._idle.descendingIterator();
+         while (it.hasNext() && this._total.get() - evicted.size() > this._minSize) {
+            PooledConnection pc = it.next();
+            if (now - pc._lastUsedMillis >= this._idleTimeoutMillis && this._idle.remove(pc))
+               evicted.add(pc);
+         }//end while
+         for (PooledConnection pc : evicted)
+            destroy(pc);
+
+         while (!this._closed && this._total.get() < this._minSize)
+            this._idle.offerLast(open());
+
+         if (this._leakThresholdMillis > 0) {
+            for (PooledConnection pc : this._borrowed) {
+               if (!pc._leakReported && now - pc._borrowedAtMillis > this._leakThresholdMillis) {
+                  pc._leakReported = true;
+                  System.err.println("Possible connection leak: connection held for "
+                     + (now - pc._borrowedAtMillis) + " ms by thread " + pc._borrowerThread);
+                  Throwable borrower = pc._borrowedBy;
+                  if (borrower != null)
+                     borrower.printStackTrace();
+                  else
+                     System.err.println("Run with -Dgamerental.pool.traceBorrows=true to see where it was borrowed");
+               }//end if
+            }//end for
+         }//end if
+      }catch (Exception e){
+         System.err.println("Connection pool maintenance failed: " + e.getMessage());
+      }//end try
+   }//end maintain
+
+}//end ConnectionPool
@@ -0,0 +1,89 @@
+package gamerental;
+
+import java.sql.SQLException;
+
+/**
+ * This class is an immutable copy of one row of the Catalog table.
+ *
+ */
+public class Game {
+
+   // column names in the order values() returns them.
+   public static final String[] COLUMNS = {
+      "gameid", "gamename", "genre", "price", "description", "imageurl"
+   };
+
+   private final String _gameID;
+   private final String _gameName;
+   private final String _genre;
+   private final double _price;
+   private final String _description;
+   private final String _imageURL;
+
+   /**
+    * Creates a new catalog entry
+    *
+    * @param gameID the catalog key
+    * @param gameName the title of the game
+    * @param genre the genre the game is listed under
+    * @param price the rental price per unit
+    * @param description the catalog description
+    * @param imageURL the cover image location
+    */
+   public Game(String gameID, String gameName, String genre, double price,
+               String description, String imageURL) {
+      this._gameID = gameID;
+      this._gameName = gameName;
+      this._genre = genre;
+      this._price = price;
+      this._description = description;
+      this._imageURL = imageURL;
+   }//end Game
+
+   /**
+    * Copies a Catalog row out of a query result.
+    *
+    * @param row a row selected with all Catalog columns
+    * @return the catalog entry
+    * @throws java.sql.SQLException when a column is missing
+    */
+   public static Game from(Row row) throws SQLException {
+      return new Game(row.getString("gameID"), row.getString("gameName"),
+         row.getString("genre"), row.getDouble("price"),
+         row.getString("description"), row.getString("imageURL"));
+   }//end from
+
+   public String gameID() {
+      return this._gameID;
+   }//end gameID
+
+   public String gameName() {
+      return this._gameName;
+   }//end gameName
+
+   public String genre() {
+      return this._genre;
+   }//end genre
+
+   public double price() {
+      return this._price;
+   }//end price
+
+   public String description() {
+      return this._description;
+   }//end description
+
+   public String imageURL() {
+      return this._imageURL;
+   }//end imageURL
+
+   /**
+    * @return the column values, in the order of COLUMNS
+    */
+   public Object[] values() {
+      return new Object[] {
+         this._gameID, this._gameName, this._genre, this._price, this._description, this._imageURL
+      };
+   }//end values
+
+}//end Game
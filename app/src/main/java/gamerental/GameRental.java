@@ -0,0 +1,2164 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package gamerental;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.lang.Math;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ *
+ */
+public class GameRental {
+
+   // pool of physical database connections, each with its own
+   // prepared statement cache.
+   private ConnectionPool _pool = null;
+
+   // connection of the transaction the current thread is running, if any.
+   private final ThreadLocal<ConnectionPool.PooledConnection> _transaction =
+      new ThreadLocal<ConnectionPool.PooledConnection>();
+
+   // read replicas and the sessions pinned to the primary; never null.
+   private ReplicaRouter _replicas = null;
+
+   // replica the read-only work on the current thread reads from, if any.
+   private final ThreadLocal<ReplicaRouter.Replica> _readReplica =
+      new ThreadLocal<ReplicaRouter.Replica>();
+
+   // the databases per-user data is spread over; never null.
+   private ShardRouter _shards = null;
+
+   // shard the work on the current thread runs on; none means shard 0.
+   private final ThreadLocal<ShardRouter.Shard> _shard =
+      new ThreadLocal<ShardRouter.Shard>();
+
+   // runs the per-shard parts of scatter-gather work in parallel.
+   private final ExecutorService _scatter = Executors.newCachedThreadPool (r -> {
+      Thread t = new Thread (r, "shard-scatter");
+      t.setDaemon (true);
+      return t;
+   });
+
+   // latency, row and error statistics of operations and statements.
+   private final Metrics _metrics = new Metrics();
+
+   // ids of new rental orders and shipments, reserved from sequences in blocks.
+   private final IdAllocator _orderIds = new IdAllocator(this, "rental_order_id_seq", "RO");
+   private final IdAllocator _trackingIds = new IdAllocator(this, "tracking_id_seq", "TRK");
+
+   // this node's allotments of stock, leased from Catalog in chunks.
+   private final Inventory _inventory = new Inventory(this);
+
+   // logged-in users, with their roles and profiles.
+   private final SessionManager _sessions = new SessionManager(this);
+
+   // in-memory copy of the Catalog table, loaded on first use.
+   private volatile CatalogCache _catalog = null;
+
+   // changes committed by any node, keeping the catalog cache current.
+   private ChangeFeed _changes = null;
+
+   // local journal orders are acknowledged from, if enabled.
+   private OrderJournal _journal = null;
+
+   // pool sizing and timeouts, overridable with -Dgamerental.pool.* flags.
+   static final int POOL_MIN_SIZE = Integer.getInteger("gamerental.pool.min", 1);
+   static final int POOL_MAX_SIZE = Integer.getInteger("gamerental.pool.max", 10);
+   static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("gamerental.pool.borrowTimeoutMillis", 5000L);
+   static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("gamerental.pool.idleTimeoutMillis", 600000L);
+   static final long POOL_LEAK_THRESHOLD_MILLIS = Long.getLong("gamerental.pool.leakThresholdMillis", 60000L);
+
+   // number of executions of a cached statement after which the driver
+   // switches it to a named, server-side prepared statement.
+   static final int PREPARE_THRESHOLD = 2;
+
+   // orders shown per page of the rental order history.
+   static final int ORDER_PAGE_SIZE = Integer.getInteger("gamerental.orderPageSize", 10);
+
+   // games shown for a catalog word search.
+   static final int SEARCH_RESULTS = Integer.getInteger("gamerental.searchResults", 20);
+
+   // host:port of each read replica, comma-separated; none by default.
+   static final String REPLICAS = System.getProperty("gamerental.replicas", "");
+
+   // host:port of each shard after the first, comma-separated; none by default.
+   static final String SHARDS = System.getProperty("gamerental.shards", "");
+
+   // directory of the order journal; orders go straight to the database when empty.
+   static final String JOURNAL = System.getProperty("gamerental.journal", "");
+
+   // Catalog rows copied to a shard per statement.
+   static final int CATALOG_COPY_BATCH = 1000;
+
+   // rows fetched per round trip by the streaming query methods.
+   static final int FETCH_SIZE = Integer.getInteger("gamerental.fetchSize", 500);
+
+   // empty bind-variable list used by the legacy, literal-SQL helpers.
+   private static final Object[] NO_PARAMS = new Object[0];
+
+   // words that make a statement unfit for a read replica, e.g. FOR UPDATE or nextval().
+   private static final Pattern WRITES =
+      Pattern.compile ("\\b(INSERT|UPDATE|DELETE|MERGE|COPY|LOCK|FOR\\s+SHARE|NEXTVAL|SETVAL)\\b");
+
+   // statements already judged by isReadOnly(), by SQL text, and at most how many.
+   private static final int READ_ONLY_CACHE_SIZE = 4096;
+   private static final ConcurrentHashMap<String, Boolean> READ_ONLY_STATEMENTS = new ConcurrentHashMap<String, Boolean> ();
+
+   // handling the keyboard inputs through a BufferedReader
+   // This variable can be global for convenience.
+   // Time spent waiting for the user is left out of operation latencies.
+   static BufferedReader in = new BufferedReader(
+                                new InputStreamReader(System.in)) {
+      @Override
+      public String readLine() throws IOException {
+         long start = System.nanoTime();
+         try{
+            return super.readLine();
+         }finally{
+            Metrics.exclude(System.nanoTime() - start);
+         }//end try
+      }
+   };
+
+   /**
+    * Creates a new instance of GameRental store
+    *
+    * @param hostname the MySQL or PostgreSQL server hostname
+    * @param database the name of the database
+    * @param username the user name used to login to the database
+    * @param password the user login password
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public GameRental(String dbname, String dbport, String user, String passwd) throws SQLException {
+
+      System.out.print("Connecting to database...");
+      try{
+         // constructs the connection URL
+         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+         System.out.println ("Connection URL: " + url + "\n");
+
+         // open the connection pool.  String parameters are sent
+         // untyped so that they coerce exactly like quoted SQL literals.
+         Properties props = new Properties();
+         props.setProperty("user", user);
+         props.setProperty("password", passwd);
+         props.setProperty("prepareThreshold", Integer.toString(PREPARE_THRESHOLD));
+         props.setProperty("stringtype", "unspecified");
+         this._pool = new ConnectionPool(url, props, POOL_MIN_SIZE, POOL_MAX_SIZE,
+            POOL_BORROW_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS);
+
+         // replicas hold the same database under the same credentials
+         List<String> replicaURLs = new ArrayList<String>();
+         for (String replica : REPLICAS.split(","))
+            if (!replica.trim().isEmpty())
+               replicaURLs.add("jdbc:postgresql://" + replica.trim() + "/" + dbname);
+         this._replicas = new ReplicaRouter(replicaURLs, props);
+
+         // shards too hold the same database under the same credentials
+         List<String> shardURLs = new ArrayList<String>();
+         for (String shard : SHARDS.split(","))
+            if (!shard.trim().isEmpty())
+               shardURLs.add("jdbc:postgresql://" + shard.trim() + "/" + dbname);
+         this._shards = new ShardRouter(url, this._pool, shardURLs, props);
+
+         List<String> feedURLs = new ArrayList<String>();
+         for (ShardRouter.Shard shard : this._shards.all())
+            feedURLs.add(shard.url);
+         this._changes = new ChangeFeed(feedURLs, props);
+         // the other shards' Catalog tables are copies of shard 0's
+         this._changes.subscribe("catalog", change -> {
+            if (change.shard == 0)
+               refreshCatalog (change);
+         });
+         this._changes.subscribe("users", change -> this._sessions.invalidate (change.id));
+         if (!replicaURLs.isEmpty())
+            System.out.println("Read replicas: " + replicaURLs);
+         if (!shardURLs.isEmpty())
+            System.out.println("Shards: " + feedURLs);
+         if (!JOURNAL.isEmpty()) {
+            this._journal = new OrderJournal(this, Paths.get(JOURNAL));
+            System.out.println("Order journal: " + JOURNAL);
+         }//end if
+         System.out.println("Done");
+      }catch (Exception e){
+         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
+         System.out.println("Make sure you started postgres on this machine");
+         System.exit(-1);
+      }//end catch
+   }//end GameRental
+
+   /**
+    * Method to execute an update SQL statement.  Update SQL instructions
+    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+    *
+    * @param sql the input SQL string
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql) throws SQLException {
+      return executeUpdate (sql, NO_PARAMS);
+   }//end executeUpdate
+
+   /**
+    * Method to execute a parameterized update SQL statement.  The statement
+    * is taken from the statement cache, so repeated calls with the same SQL
+    * text are parsed and planned only once.
+    *
+    * @param sql the input SQL string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      // issues the update instruction on a cached statement
+      return withStatement (sql, params, stmt -> stmt.executeUpdate ());
+   }//end executeUpdate
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and outputs the results to
+    * standard out.
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query) throws SQLException {
+      return executeQueryAndPrintResult (query, NO_PARAMS);
+   }//end executeQueryAndPrintResult
+
+   /**
+    * Method to execute a parameterized query and output the results to
+    * standard out.
+    *
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      // streams the rows through a buffered renderer, one write per row
+      ResultPrinter printer = new ResultPrinter ();
+      try{
+         return executeQueryForEach (query, printer, params);
+      }finally{
+         printer.flush ();
+      }//end try
+   }//end executeQueryAndPrintResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results as
+    * a list of records. Each record in turn is a list of attribute values.
+    * The whole result is held in memory; use executeQueryForEach for
+    * results of unbounded size.
+    *
+    * @param query the input query string
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
+      return executeQueryAndReturnResult (query, NO_PARAMS);
+   }//end executeQueryAndReturnResult
+
+   /**
+    * Method to execute a parameterized query and return the results as a
+    * list of records. Each record in turn is a list of attribute values
+    *
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      // issues the query instruction
+      return withStatement (query, params, stmt -> {
+         try (ResultSet rs = stmt.executeQuery ()) {
+
+            /*
+             ** obtains the metadata object for the returned result set.  The metadata
+             ** contains row and column info.
+             */
+            ResultSetMetaData rsmd = rs.getMetaData ();
+            int numCol = rsmd.getColumnCount ();
+
+            // iterates through the result set and saves the data returned by the query.
+            List<List<String>> result  = new ArrayList<List<String>>();
+            while (rs.next()){
+               List<String> record = new ArrayList<String>();
+               for (int i=1; i<=numCol; ++i)
+                  record.add(rs.getString (i));
+               result.add(record);
+            }//end while
+            return result;
+         }//end try
+      });
+   }//end executeQueryAndReturnResult
+
+   /**
+    * Method to execute a parameterized query and hand every row to a
+    * callback as it arrives.  Rows are fetched through a server-side
+    * cursor, FETCH_SIZE at a time, so memory use does not depend on the
+    * size of the result.
+    *
+    * @param query the input query string with '?' placeholders
+    * @param handler the callback invoked once per row
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryForEach (String query, RowHandler handler, Object... params) throws SQLException {
+      return withStatement (query, params, stmt -> forEachRow (stmt, handler));
+   }//end executeQueryForEach
+
+   /*
+    * Runs a statement and hands its rows to a handler.  Outside a
+    * transaction it opens one for the cursor, and commits it only once
+    * every row was handled: the statement may be a writing CTE, which
+    * must not be kept when the caller sees it fail.
+    **/
+   static int forEachRow (PreparedStatement stmt, RowHandler handler) throws SQLException {
+      Connection conn = stmt.getConnection ();
+      boolean autoCommit = conn.getAutoCommit ();
+
+      // the driver only uses a cursor inside a transaction
+      if (autoCommit)
+         conn.setAutoCommit (false);
+      stmt.setFetchSize (FETCH_SIZE);
+      try (ResultSet rs = stmt.executeQuery ()) {
+         Row row = new Row (rs);
+         int rowCount = 0;
+         while (rs.next ()){
+            handler.handle (row);
+            ++rowCount;
+         }//end while
+         if (autoCommit)
+            conn.commit ();
+         return rowCount;
+      }catch (SQLException | RuntimeException | Error e){
+         // turning autocommit back on would commit what the statement wrote
+         if (autoCommit) {
+            try{
+               conn.rollback ();
+            }catch (SQLException re){
+               e.addSuppressed (re);
+            }//end try
+         }//end if
+         throw e;
+      }finally{
+         if (autoCommit)
+            conn.setAutoCommit (true);
+      }//end try
+   }//end forEachRow
+
+   /**
+    * Method to execute a parameterized query and return its rows as a lazy
+    * stream backed by a server-side cursor.  The stream holds a pooled
+    * connection until it is closed, so it must be used in a
+    * try-with-resources block.  Each Row is only valid until the stream
+    * advances.
+    *
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the rows of the result
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public Stream<Row> executeQueryAsStream (String query, Object... params) throws SQLException {
+      final ConnectionPool.PooledConnection bound = this._transaction.get ();
+      final ConnectionPool.PooledConnection conn = bound != null ? bound : borrowRouted (query);
+      final long start = System.nanoTime ();
+      final long[] rowCount = { 0 };
+      final ResultSet rs;
+      final Row row;
+      PreparedStatement oneOff = null;
+      try{
+         conn.connection ().setAutoCommit (false);
+         PreparedStatement stmt;
+         if (params.length == 0) {
+            // a one-off text stays out of the cache, as in withStatement()
+            oneOff = conn.connection ().prepareStatement (query);
+            oneOff.closeOnCompletion ();
+            stmt = oneOff;
+         } else {
+            stmt = conn.statements ().prepare (query);
+            for (int i = 0; i < params.length; ++i)
+               stmt.setObject (i + 1, params[i]);
+         }//end if
+         stmt.setFetchSize (FETCH_SIZE);
+         rs = stmt.executeQuery ();
+         row = new Row (rs);
+      }catch (SQLException e){
+         if (oneOff != null) {
+            try{
+               oneOff.close ();
+            }catch (SQLException ce){
+               // ignored.
+            }//end try
+         }//end if
+         conn.fail (e);
+         this._metrics.recordStatement (query, System.nanoTime () - start, 0, true);
+         if (bound == null)
+            conn.pool ().release (conn);
+         throw e;
+      }//end try
+
+      Spliterator<Row> rows = new Spliterators.AbstractSpliterator<Row> (Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+         @Override
+         public boolean tryAdvance (Consumer<? super Row> action) {
+            try{
+               if (!rs.next ())
+                  return false;
+            }catch (SQLException e){
+               conn.fail (e);
+               throw new IllegalStateException (e.getMessage (), e);
+            }//end try
+            ++rowCount[0];
+            action.accept (row);
+            return true;
+         }
+      };
+      return StreamSupport.stream (rows, false).onClose (() -> {
+         // the latency of a stream runs until it is closed
+         this._metrics.recordStatement (query, System.nanoTime () - start, rowCount[0], false);
+         try{
+            rs.close ();
+         }catch (SQLException e){
+            // ignored.
+         }finally{
+            // releasing rolls back the read-only transaction
+            if (bound == null)
+               conn.pool ().release (conn);
+         }//end try
+      });
+   }//end executeQueryAsStream
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the number of results
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query) throws SQLException {
+      return executeQuery (query, NO_PARAMS);
+   }//end executeQuery
+
+   /**
+    * Method to execute a parameterized query and return the number of
+    * results
+    *
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query, Object... params) throws SQLException {
+      // issues the query instruction
+      return withStatement (query, params, stmt -> {
+         try (ResultSet rs = stmt.executeQuery ()) {
+            int rowCount = 0;
+
+            // iterates through the result set and count nuber of results.
+            while (rs.next()){
+               rowCount++;
+            }//end while
+            return rowCount;
+         }//end try
+      });
+   }//end executeQuery
+
+   /**
+    * Method to fetch the last value from sequence. This
+    * method issues the query to the DBMS and returns the current
+    * value of sequence used for autogenerated keys.  currval() is
+    * session-local, so this only sees values generated on the pooled
+    * connection that happens to be borrowed.
+    *
+    * @param sequence name of the DB sequence
+    * @return current value of a sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getCurrSeqVal(String sequence) throws SQLException {
+      return withStatement ("SELECT currval(?::regclass)", new Object[] { sequence }, stmt -> {
+         try (ResultSet rs = stmt.executeQuery ()) {
+            if (rs.next())
+               return rs.getInt(1);
+            return -1;
+         }//end try
+      });
+   }//end getCurrSeqVal
+
+   /**
+    * Returns the in-memory catalog, loading it from the database the first
+    * time it is needed.
+    *
+    * @return the catalog cache
+    * @throws java.sql.SQLException when the catalog cannot be loaded
+    */
+   public CatalogCache catalog () throws SQLException {
+      CatalogCache catalog = this._catalog;
+      if (catalog == null) {
+         synchronized (this) {
+            if (this._catalog == null) {
+               // listen first, so no change after the load is missed
+               this._changes.start ();
+               CatalogCache loaded = onShard (0, () -> CatalogCache.load (this));
+               copyToShards (loaded.sortedByPrice (false));
+               this._catalog = loaded;
+            }//end if
+            catalog = this._catalog;
+         }//end synchronized
+      }//end if
+      return catalog;
+   }//end catalog
+
+   /**
+    * Drops the in-memory catalog so that it is reloaded from the database
+    * on next use, e.g. after a bulk import.
+    */
+   public void invalidateCatalog () {
+      this._catalog = null;
+   }//end invalidateCatalog
+
+   /*
+    * Applies a Catalog change committed by any node to the cache: the
+    * changed row is read again, and a change without an id drops the
+    * whole cache.
+    **/
+   private void refreshCatalog (ChangeFeed.Change change) {
+      CatalogCache catalog = this._catalog;
+      if (catalog == null)
+         return;
+      if (change.id == null) {
+         invalidateCatalog ();
+         return;
+      }//end if
+      Game[] game = { null };
+      try{
+         executeQueryForEach (Queries.LOAD_GAME, row -> game[0] = Game.from (row), change.id);
+      }catch (SQLException e){
+         // cannot tell what changed; start over
+         invalidateCatalog ();
+         return;
+      }//end try
+      if (game[0] == null) {
+         // the copies stay: orders on the other shards may refer to it
+         catalog.remove (change.id);
+      } else {
+         catalog.put (game[0]);
+         copyToShards (Collections.singletonList (game[0]));
+      }//end if
+   }//end refreshCatalog
+
+   /*
+    * Brings the Catalog copies on the other shards up to date with games
+    * of shard 0.  A failure is only reported; that shard prices orders
+    * from its older copy until the game changes again or the catalog is
+    * next loaded.
+    **/
+   private void copyToShards (List<Game> games) {
+      for (ShardRouter.Shard shard : this._shards.all ()) {
+         if (shard.index == 0)
+            continue;
+         try{
+            onShard (shard.index, () -> {
+               for (int from = 0; from < games.size (); from += CATALOG_COPY_BATCH) {
+                  List<Game> batch = games.subList (from, Math.min (games.size (), from + CATALOG_COPY_BATCH));
+                  String[][] columns = new String[Game.COLUMNS.length][batch.size ()];
+                  for (int i = 0; i < batch.size (); ++i) {
+                     Object[] values = batch.get (i).values ();
+                     for (int c = 0; c < values.length; ++c)
+                        columns[c][i] = values[c] == null ? null : values[c].toString ();
+                  }//end for
+                  executeUpdate (Queries.COPY_CATALOG, (Object[]) columns);
+               }//end for
+               return null;
+            });
+         }catch (SQLException e){
+            System.err.println ("Could not copy the catalog to shard " + shard.url + ": " + e.getMessage ());
+         }//end try
+      }//end for
+   }//end copyToShards
+
+   /**
+    * Starts listening for changes, if not started yet, and returns the feed.
+    *
+    * @return the changes committed by any node
+    */
+   public ChangeFeed changes () {
+      this._changes.start ();
+      return this._changes;
+   }//end changes
+
+   /**
+    * @return the sessions of the users logged in to this node
+    */
+   public SessionManager sessions () {
+      return this._sessions;
+   }//end sessions
+
+   /**
+    * @return the latency, row and error statistics of this store
+    */
+   public Metrics metrics () {
+      return this._metrics;
+   }//end metrics
+
+   /**
+    * Changes the price and description of a catalog entry and applies the
+    * change to the catalog cache in the same round trip.
+    *
+    * @param gameID the catalog key
+    * @param price the new rental price
+    * @param description the new description
+    * @return the updated entry, or null if there is no game with that id
+    * @throws java.sql.SQLException when the update failed
+    */
+   public Game updateCatalogEntry (String gameID, double price, String description) throws SQLException {
+      Game[] updated = new Game[1];
+      executeQueryForEach (Queries.UPDATE_CATALOG,
+         row -> updated[0] = Game.from (row), description, price, gameID);
+      if (updated[0] != null)
+         catalog ().put (updated[0]);
+      return updated[0];
+   }//end updateCatalogEntry
+
+   /**
+    * Fetches one page of a customer's order history, newest first.  Pages
+    * are addressed by keyset cursors over (orderTimestamp, rentalOrderID),
+    * so every page is a single range scan of the
+    * RentalOrder(login, orderTimestamp, rentalOrderID) index.
+    *
+    * @param login the customer whose orders are listed
+    * @param from the cursor to page from, or null for the most recent page
+    * @param older true for the page after the cursor, false for the page before it
+    * @param pageSize the maximum number of orders on the page
+    * @return the page with the cursors of its first and last order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public OrderPage fetchOrderPage (String login, OrderPage.Key from, boolean older, int pageSize) throws SQLException {
+      String query;
+      Object[] params;
+      if (from == null) {
+         older = true;
+         query = Queries.FIRST_ORDER_PAGE;
+         params = new Object[] { login, pageSize + 1 };
+      } else if (older) {
+         query = Queries.OLDER_ORDER_PAGE;
+         params = new Object[] { login, from.orderTimestamp (), from.rentalOrderID (), pageSize + 1 };
+      } else {
+         query = Queries.NEWER_ORDER_PAGE;
+         params = new Object[] { login, from.orderTimestamp (), from.rentalOrderID (), pageSize + 1 };
+      }//end if
+
+      // one extra row tells whether there is anything beyond this page
+      List<Object[]> rows = new ArrayList<Object[]> ();
+      List<OrderPage.Key> keys = new ArrayList<OrderPage.Key> ();
+      String[][] columns = { new String[0] };
+      String sql = query;
+      Object[] args = params;
+      onShardOf (login, () -> executeQueryForEach (sql, row -> {
+         if (rows.isEmpty ()) {
+            columns[0] = new String[row.columnCount ()];
+            for (int i = 1; i <= row.columnCount (); ++i)
+               columns[0][i - 1] = row.columnName (i);
+         }//end if
+         rows.add (row.toArray ());
+         keys.add (new OrderPage.Key (row.getTimestamp ("orderTimestamp"), row.getString ("rentalOrderID")));
+      }, args));
+
+      return OrderPage.of (columns[0], rows, keys, pageSize, from != null, older);
+   }//end fetchOrderPage
+
+   /**
+    * Reads any number of orders with their games and latest shipment in a
+    * single round trip per shard holding them, so history screens need
+    * not query once per order.  Orders the login may not see, and unknown
+    * ids, are left out.
+    *
+    * @param login the session asking
+    * @param staff whether the session may see every order, as employees
+    *        and managers do
+    * @param rentalOrderIDs the orders to read
+    * @return the orders found, newest first
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<OrderDetail> fetchOrderDetails (String login, boolean staff, List<String> rentalOrderIDs) throws SQLException {
+      TreeMap<Integer, List<String>> byShard = new TreeMap<Integer, List<String>> ();
+      for (String rentalOrderID : rentalOrderIDs)
+         byShard.computeIfAbsent (this._shards.shardOfId (rentalOrderID), i -> new ArrayList<String> ()).add (rentalOrderID);
+
+      List<OrderDetail> details = new ArrayList<OrderDetail> ();
+      for (Map.Entry<Integer, List<String>> ids : byShard.entrySet ()) {
+         OrderDetail.Collector collector = new OrderDetail.Collector ();
+         onShard (ids.getKey (), () -> executeQueryForEach (Queries.ORDER_DETAILS, collector,
+            ids.getValue ().toArray (new String[0]), login, staff));
+         details.addAll (collector.details ());
+      }//end for
+      if (byShard.size () > 1)
+         details.sort (OrderDetail.NEWEST_FIRST);
+      return details;
+   }//end fetchOrderDetails
+
+   /**
+    * @param login the session asking
+    * @param staff whether the session may see every order
+    * @param rentalOrderID the order to read
+    * @return the order with its games and latest shipment, or null if
+    *         there is no such order the login may see
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public OrderDetail fetchOrderDetail (String login, boolean staff, String rentalOrderID) throws SQLException {
+      List<OrderDetail> details = fetchOrderDetails (login, staff, Collections.singletonList (rentalOrderID));
+      return details.isEmpty () ? null : details.get (0);
+   }//end fetchOrderDetail
+
+   /**
+    * The most rented games of the last days.  With several shards, each
+    * adds up its own rollup and the totals are merged here.
+    *
+    * @param days how many days back, today included
+    * @param limit the most games to return
+    * @return gameid, gamename, genre, orders, units and revenue of each
+    *         game, most units first
+    * @throws java.sql.SQLException when a shard could not be read
+    */
+   public List<Map<String, Object>> topGamesReport (int days, int limit) throws SQLException {
+      if (this._shards.size () == 1)
+         return rowMaps (Queries.TOP_GAMES_REPORT, days, limit);
+
+      // every game rented on any shard, not each shard's top: a game can be
+      // in the overall top without being in any one shard's
+      Map<String, BigDecimal[]> totals = new HashMap<String, BigDecimal[]> ();
+      for (List<Map<String, Object>> shard : onEveryShard (() -> rowMaps (Queries.SHARD_GAME_TOTALS, days)))
+         for (Map<String, Object> row : shard)
+            addTotals (totals.computeIfAbsent ((String) row.get ("gameid"), g -> zeros (3)), row, "orders", "units", "revenue");
+
+      List<Map.Entry<String, BigDecimal[]>> ranked = new ArrayList<Map.Entry<String, BigDecimal[]>> (totals.entrySet ());
+      ranked.sort ((a, b) -> {
+         int c = b.getValue ()[1].compareTo (a.getValue ()[1]);
+         if (c == 0)
+            c = b.getValue ()[2].compareTo (a.getValue ()[2]);
+         return c != 0 ? c : a.getKey ().compareTo (b.getKey ());
+      });
+      CatalogCache catalog = catalog ();
+      List<Map<String, Object>> report = new ArrayList<Map<String, Object>> ();
+      for (Map.Entry<String, BigDecimal[]> game : ranked.subList (0, Math.min (limit, ranked.size ()))) {
+         Game entry = catalog.get (game.getKey ());
+         Map<String, Object> row = new LinkedHashMap<String, Object> ();
+         row.put ("gameid", game.getKey ());
+         row.put ("gamename", entry == null ? null : entry.gameName ());
+         row.put ("genre", entry == null ? null : entry.genre ());
+         row.put ("orders", game.getValue ()[0]);
+         row.put ("units", game.getValue ()[1]);
+         row.put ("revenue", game.getValue ()[2]);
+         report.add (row);
+      }//end for
+      return report;
+   }//end topGamesReport
+
+   /**
+    * Rentals and revenue by genre for each of the last days, summed over
+    * all shards.
+    *
+    * @param days how many days back, today included
+    * @return day, genre, orders, units and revenue, newest day first
+    * @throws java.sql.SQLException when a shard could not be read
+    */
+   public List<Map<String, Object>> genreRevenueReport (int days) throws SQLException {
+      if (this._shards.size () == 1)
+         return rowMaps (Queries.GENRE_REVENUE_REPORT, days);
+
+      Map<List<Object>, BigDecimal[]> totals = new HashMap<List<Object>, BigDecimal[]> ();
+      for (List<Map<String, Object>> shard : onEveryShard (() -> rowMaps (Queries.GENRE_REVENUE_REPORT, days)))
+         for (Map<String, Object> row : shard)
+            addTotals (totals.computeIfAbsent (Arrays.asList (row.get ("day"), row.get ("genre")), k -> zeros (3)),
+               row, "orders", "units", "revenue");
+
+      List<Map<String, Object>> report = new ArrayList<Map<String, Object>> ();
+      for (Map.Entry<List<Object>, BigDecimal[]> cell : totals.entrySet ()) {
+         Map<String, Object> row = new LinkedHashMap<String, Object> ();
+         row.put ("day", cell.getKey ().get (0));
+         row.put ("genre", cell.getKey ().get (1));
+         row.put ("orders", cell.getValue ()[0]);
+         row.put ("units", cell.getValue ()[1]);
+         row.put ("revenue", cell.getValue ()[2]);
+         report.add (row);
+      }//end for
+      report.sort ((a, b) -> {
+         int c = ((java.util.Date) b.get ("day")).compareTo ((java.util.Date) a.get ("day"));
+         if (c == 0)
+            c = ((BigDecimal) b.get ("revenue")).compareTo ((BigDecimal) a.get ("revenue"));
+         return c != 0 ? c : ((String) a.get ("genre")).compareTo ((String) b.get ("genre"));
+      });
+      return report;
+   }//end genreRevenueReport
+
+   private static BigDecimal[] zeros (int n) {
+      BigDecimal[] values = new BigDecimal[n];
+      Arrays.fill (values, BigDecimal.ZERO);
+      return values;
+   }//end zeros
+
+   private static void addTotals (BigDecimal[] totals, Map<String, Object> row, String... columns) {
+      for (int i = 0; i < columns.length; ++i) {
+         Object value = row.get (columns[i]);
+         if (value != null)
+            totals[i] = totals[i].add (new BigDecimal (value.toString ()));
+      }//end for
+   }//end addTotals
+
+   /**
+    * Runs a query and copies every row into a map keyed by column name.
+    *
+    * @param query the SQL text with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the rows, in query order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<Map<String, Object>> rowMaps (String query, Object... params) throws SQLException {
+      List<Map<String, Object>> rows = new ArrayList<Map<String, Object>> ();
+      executeQueryForEach (query, row -> {
+         Map<String, Object> map = new LinkedHashMap<String, Object> ();
+         for (int i = 1; i <= row.columnCount (); ++i)
+            map.put (row.columnName (i), row.getObject (i));
+         rows.add (map);
+      }, params);
+      return rows;
+   }//end rowMaps
+
+   /**
+    * Places a rental order for every game in a cart.  All rows are written
+    * atomically in one round trip; nothing is written if any gameID is
+    * not in the catalog.  The order and tracking ids are allocated here,
+    * and stock-tracked titles are reserved from the inventory first.
+    *
+    * With the order journal enabled, the order is priced from the catalog
+    * cache and acknowledged once it is journaled; it is written to the
+    * database, and shows in the order history, shortly after.
+    *
+    * @param login the customer placing the order
+    * @param cart the games and units to rent
+    * @return the generated order keys and totals
+    * @throws java.sql.SQLException when the order could not be placed
+    */
+   public OrderReceipt submitOrder (String login, Cart cart) throws SQLException {
+      if (cart.isEmpty())
+         throw new IllegalArgumentException("Cart is empty");
+      if (this._journal != null)
+         return journalOrder (login, cart);
+
+      // ids and stock come from shard 0; the order goes to the user's shard
+      int shard = this._shards.shardOf (login);
+      String rentalOrderID = this._shards.tag (this._orderIds.nextId (), shard);
+      String trackingID = this._shards.tag (this._trackingIds.nextId (), shard);
+      OrderReceipt[] receipt = new OrderReceipt[1];
+      this._inventory.reserve (cart);
+      try{
+         onShard (shard, () -> executeQueryForEach (Queries.PLACE_ORDER, row -> receipt[0] = new OrderReceipt (
+               row.getString (1), row.getString (2), row.getInt (3),
+               row.getDouble (4), row.getString (5), row.getString (6)),
+            cart.gameIDs(), cart.units(), rentalOrderID, login, cart.size(), trackingID));
+      }finally{
+         if (receipt[0] == null)
+            this._inventory.release (cart);
+      }//end try
+      if (receipt[0] == null)
+         throw new SQLException("Order not placed: one or more Game IDs are not in the catalog", "23503");
+      return receipt[0];
+   }//end submitOrder
+
+   /*
+    * Checks everything the drain's statement would reject before the
+    * order is journaled, as a journaled order is already acknowledged.
+    **/
+   private OrderReceipt journalOrder (String login, Cart cart) throws SQLException {
+      if (!sessions ().isKnown (login))
+         throw new SQLException("Order not placed: no such user " + login, "23503");
+      CatalogCache catalog = catalog ();
+      String[] gameIDs = cart.gameIDs ();
+      int[] units = cart.units ();
+      BigDecimal[] prices = new BigDecimal[gameIDs.length];
+      for (int i = 0; i < gameIDs.length; ++i) {
+         Game game = catalog.get (gameIDs[i]);
+         if (game == null)
+            throw new SQLException("Order not placed: one or more Game IDs are not in the catalog", "23503");
+         prices[i] = BigDecimal.valueOf (game.price ());
+      }//end for
+
+      int shard = this._shards.shardOf (login);
+      OrderJournal.Entry entry = new OrderJournal.Entry (this._shards.tag (this._orderIds.nextId (), shard),
+         this._shards.tag (this._trackingIds.nextId (), shard), login, System.currentTimeMillis (),
+         gameIDs, units, prices);
+      this._inventory.reserve (cart);
+      try{
+         this._journal.append (entry);
+      }catch (IOException e){
+         this._inventory.release (cart);
+         throw new SQLException("Order not placed: " + e.getMessage(), "58030", e);
+      }//end try
+      return entry.receipt ();
+   }//end journalOrder
+
+   /**
+    * @return the order journal's counters, or null when it is not enabled
+    */
+   public Map<String, Object> journalStats () {
+      return this._journal == null ? null : this._journal.stats ();
+   }//end journalStats
+
+   /**
+    * Work performed inside a transaction.
+    */
+   public interface TransactionWork<T> {
+      T run () throws SQLException;
+   }//end TransactionWork
+
+   /**
+    * Runs work inside one database transaction.  Every execute* call the
+    * work makes on this thread uses the same connection; the transaction
+    * commits when the work returns and rolls back when it throws.
+    * Nested calls join the enclosing transaction.
+    *
+    * @param work the statements to run atomically
+    * @return the result of the work
+    * @throws java.sql.SQLException when a statement or the commit failed
+    */
+   public <T> T inTransaction (TransactionWork<T> work) throws SQLException {
+      if (this._transaction.get () != null)
+         return work.run ();
+
+      ConnectionPool.PooledConnection conn = borrow (shardPool ());
+      this._transaction.set (conn);
+      try{
+         conn.connection ().setAutoCommit (false);
+         T result = work.run ();
+         conn.connection ().commit ();
+         return result;
+      }catch (SQLException e){
+         conn.fail (e);
+         throw e;
+      }finally{
+         // releasing rolls back anything left uncommitted
+         this._transaction.remove ();
+         conn.pool ().release (conn);
+      }//end try
+   }//end inTransaction
+
+   /**
+    * Runs work on connections of its own even when the current thread is
+    * inside inTransaction(), so that what it writes commits regardless of
+    * the enclosing transaction.
+    *
+    * @param work the statements to run outside the current transaction
+    * @return the result of the work
+    * @throws java.sql.SQLException when the work failed
+    */
+   <T> T outsideTransaction (TransactionWork<T> work) throws SQLException {
+      ConnectionPool.PooledConnection bound = this._transaction.get ();
+      if (bound == null)
+         return work.run ();
+      this._transaction.remove ();
+      try{
+         return work.run ();
+      }finally{
+         this._transaction.set (bound);
+      }//end try
+   }//end outsideTransaction
+
+   /**
+    * @return the databases per-user data is spread over
+    */
+   public ShardRouter shards () {
+      return this._shards;
+   }//end shards
+
+   /**
+    * Runs work on one shard: every execute* call and transaction the work
+    * makes on this thread uses that shard's database.  Work outside any
+    * onShard() call runs on shard 0.
+    *
+    * @param index the shard
+    * @param work the statements to run there
+    * @return the result of the work
+    * @throws java.sql.SQLException when the work failed
+    * @throws java.lang.IllegalStateException inside a transaction on
+    *         another shard; a transaction cannot span shards
+    */
+   public <T> T onShard (int index, TransactionWork<T> work) throws SQLException {
+      ShardRouter.Shard current = this._shard.get ();
+      if ((current == null ? 0 : current.index) == index)
+         return work.run ();
+      if (this._transaction.get () != null)
+         throw new IllegalStateException ("A transaction cannot span shards");
+      this._shard.set (this._shards.shard (index));
+      try{
+         return work.run ();
+      }finally{
+         if (current == null)
+            this._shard.remove ();
+         else
+            this._shard.set (current);
+      }//end try
+   }//end onShard
+
+   /**
+    * Runs work on the shard holding a user's profile and orders.
+    *
+    * @param login the user
+    * @param work the statements to run there
+    * @return the result of the work
+    * @throws java.sql.SQLException when the work failed
+    */
+   public <T> T onShardOf (String login, TransactionWork<T> work) throws SQLException {
+      return onShard (this._shards.shardOf (login), work);
+   }//end onShardOf
+
+   /**
+    * Runs work on the shard an order or shipment was created on.
+    *
+    * @param id the rentalOrderID or trackingID
+    * @param work the statements to run there
+    * @return the result of the work
+    * @throws java.sql.SQLException when the work failed
+    */
+   public <T> T onShardOfId (String id, TransactionWork<T> work) throws SQLException {
+      return onShard (this._shards.shardOfId (id), work);
+   }//end onShardOfId
+
+   /**
+    * Runs work once on every shard, in parallel, for operations that
+    * cover all users.  Must not be called inside a transaction.
+    *
+    * @param work the statements to run on each shard
+    * @return the result of each shard, in shard order
+    * @throws java.sql.SQLException when the work failed on any shard;
+    *         it may have succeeded on others
+    */
+   public <T> List<T> onEveryShard (TransactionWork<T> work) throws SQLException {
+      if (this._shards.size () == 1)
+         return Collections.singletonList (onShard (0, work));
+      List<Future<T>> pending = new ArrayList<Future<T>> ();
+      for (ShardRouter.Shard shard : this._shards.all ())
+         pending.add (this._scatter.submit (() -> onShard (shard.index, work)));
+
+      List<T> results = new ArrayList<T> ();
+      SQLException failure = null;
+      for (Future<T> result : pending) {
+         try{
+            results.add (result.get ());
+         }catch (ExecutionException e){
+            if (e.getCause () instanceof RuntimeException)
+               throw (RuntimeException) e.getCause ();
+            SQLException cause = e.getCause () instanceof SQLException
+               ? (SQLException) e.getCause () : new SQLException (e.getCause ());
+            if (failure == null)
+               failure = cause;
+            else
+               failure.addSuppressed (cause);
+         }catch (InterruptedException e){
+            Thread.currentThread ().interrupt ();
+            throw new SQLException ("Interrupted while waiting for the shards", "57014");
+         }//end try
+      }//end for
+      if (failure != null)
+         throw failure;
+      return results;
+   }//end onEveryShard
+
+   /*
+    * The primary pool of the shard the current thread works on.
+    **/
+   private ConnectionPool shardPool () {
+      ShardRouter.Shard shard = this._shard.get ();
+      return shard == null ? this._pool : shard.pool;
+   }//end shardPool
+
+   /**
+    * Runs work on the primary even inside readOnly(), for reads that must
+    * see every committed change.
+    *
+    * @param work the reads
+    * @return the result of the work
+    * @throws java.sql.SQLException when the work failed
+    */
+   <T> T onPrimary (TransactionWork<T> work) throws SQLException {
+      ReplicaRouter.Replica replica = this._readReplica.get ();
+      if (replica == null)
+         return work.run ();
+      this._readReplica.remove ();
+      try{
+         return work.run ();
+      }finally{
+         this._readReplica.set (replica);
+      }//end try
+   }//end onPrimary
+
+   /**
+    * Runs read-only work on a read replica, unless the session wrote in
+    * the last few seconds or no replica is up; then it runs on the
+    * primary.  Each execute* call the work makes on this thread borrows
+    * from the chosen replica's pool, so no connection is held while the
+    * work waits for the user.  Inside inTransaction() the work joins the
+    * transaction on the primary.
+    *
+    * @param login the session reading, or null for an anonymous read
+    * @param work the reads
+    * @return the result of the work
+    * @throws java.lang.Exception when the work failed
+    */
+   public <T> T readOnly (String login, Metrics.Timed<T> work) throws Exception {
+      if (this._readReplica.get () != null)
+         return work.run ();
+      ReplicaRouter.Replica replica = this._replicas.pick (login);
+      if (replica == null)
+         return work.run ();
+      this._readReplica.set (replica);
+      try{
+         return work.run ();
+      }finally{
+         this._readReplica.remove ();
+      }//end try
+   }//end readOnly
+
+   /**
+    * Runs read-only work of a menu operation; see readOnly(String, Timed).
+    *
+    * @param login the session reading, or null for an anonymous read
+    * @param work the reads; it handles its own errors
+    */
+   public void readOnly (String login, Runnable work) {
+      try{
+         readOnly (login, () -> {
+            work.run ();
+            return null;
+         });
+      }catch (RuntimeException e){
+         throw e;
+      }catch (Exception e){
+         // a Runnable throws no checked exceptions.
+         throw new IllegalStateException (e);
+      }//end try
+   }//end readOnly
+
+   /**
+    * Runs work that writes, on the primary.  The session then reads from
+    * the primary for a few seconds, so it sees its own writes before the
+    * replicas do.
+    *
+    * @param login the session writing, or null
+    * @param work the writes
+    * @return the result of the work
+    * @throws java.lang.Exception when the work failed
+    */
+   public <T> T readWrite (String login, Metrics.Timed<T> work) throws Exception {
+      try{
+         return work.run ();
+      }finally{
+         // even a failed operation may have committed part of its writes
+         this._replicas.pin (login);
+      }//end try
+   }//end readWrite
+
+   /**
+    * Runs a menu operation that writes; see readWrite(String, Timed).
+    *
+    * @param login the session writing, or null
+    * @param work the writes; it handles its own errors
+    */
+   public void readWrite (String login, Runnable work) {
+      try{
+         work.run ();
+      }finally{
+         this._replicas.pin (login);
+      }//end try
+   }//end readWrite
+
+   /**
+    * @return this node's stock allotments
+    */
+   public Inventory inventory () {
+      return this._inventory;
+   }//end inventory
+
+   /**
+    * Work performed with a raw database connection.
+    */
+   public interface ConnectionWork<T> {
+      T run (Connection connection) throws SQLException;
+   }//end ConnectionWork
+
+   /**
+    * Runs work that needs the JDBC connection itself, e.g. to use a
+    * driver-specific API.  Inside inTransaction() the transaction's
+    * connection is used; otherwise one is borrowed for the duration of the
+    * work.  The work must not close the connection.
+    *
+    * @param work what to do with the connection
+    * @return the result of the work
+    * @throws java.sql.SQLException when the work failed
+    */
+   public <T> T withConnection (ConnectionWork<T> work) throws SQLException {
+      ConnectionPool.PooledConnection bound = this._transaction.get ();
+      ConnectionPool.PooledConnection conn = bound != null ? bound : borrow (shardPool ());
+      try{
+         return work.run (conn.connection ());
+      }catch (SQLException e){
+         conn.fail (e);
+         throw e;
+      }finally{
+         if (bound == null)
+            conn.pool ().release (conn);
+      }//end try
+   }//end withConnection
+
+   /**
+    * Work performed with a bound, cached prepared statement.
+    */
+   private interface StatementWork<T> {
+      T run (PreparedStatement stmt) throws SQLException;
+   }//end StatementWork
+
+   /**
+    * Borrows a pooled connection, fetches the cached prepared statement for
+    * a SQL text, binds the given parameters to it and runs the work.  The
+    * connection goes back to the pool afterwards, even on failure.  Inside
+    * inTransaction() the transaction's connection is used instead.
+    *
+    * A text without parameters is a one-off, e.g. DDL, ANALYZE or EXPLAIN,
+    * so it runs on a statement of its own, closed afterwards, and never
+    * takes a place in the statement cache.
+    *
+    * @param sql the SQL text with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @param work what to do with the bound statement
+    * @return the result of the work
+    * @throws java.sql.SQLException when the statement fails
+    */
+   private <T> T withStatement (String sql, Object[] params, StatementWork<T> work) throws SQLException {
+      ConnectionPool.PooledConnection bound = this._transaction.get ();
+      ConnectionPool.PooledConnection conn = bound != null ? bound : borrowRouted (sql);
+      long start = System.nanoTime ();
+      long rows = 0;
+      boolean failed = true;
+      PreparedStatement oneOff = null;
+      try{
+         PreparedStatement stmt;
+         if (params.length == 0) {
+            oneOff = conn.connection ().prepareStatement (sql);
+            stmt = oneOff;
+         } else {
+            stmt = conn.statements ().prepare (sql);
+            for (int i = 0; i < params.length; ++i)
+               stmt.setObject (i + 1, params[i]);
+         }//end if
+         T result = work.run (stmt);
+         rows = rowCount (result);
+         failed = false;
+         return result;
+      }catch (SQLException e){
+         conn.fail (e);
+         throw e;
+      }finally{
+         this._metrics.recordStatement (sql, System.nanoTime () - start, rows, failed);
+         if (oneOff != null) {
+            try{
+               oneOff.close ();
+            }catch (SQLException e){
+               // ignored.
+            }//end try
+         }//end if
+         if (bound == null)
+            conn.pool ().release (conn);
+      }//end try
+   }//end withStatement
+
+   /*
+    * Borrows a connection from the primary's or a replica's pool,
+    * recording how long the wait took.
+    **/
+   private ConnectionPool.PooledConnection borrow (ConnectionPool pool) throws SQLException {
+      long start = System.nanoTime ();
+      boolean failed = true;
+      try{
+         ConnectionPool.PooledConnection conn = pool.borrow ();
+         failed = false;
+         return conn;
+      }finally{
+         this._metrics.recordBorrow (System.nanoTime () - start, failed);
+      }//end try
+   }//end borrow
+
+   /*
+    * Borrows a connection for one statement outside a transaction: from
+    * the replica chosen by readOnly(), if it is up and the statement only
+    * reads, else from the primary.  The replicas are of shard 0; the other
+    * shards are read on their primaries.
+    **/
+   private ConnectionPool.PooledConnection borrowRouted (String sql) throws SQLException {
+      ShardRouter.Shard shard = this._shard.get ();
+      if (shard != null && shard.index != 0)
+         return borrow (shard.pool);
+      ReplicaRouter.Replica replica = this._readReplica.get ();
+      if (replica != null && replica.healthy && isReadOnly (sql)) {
+         try{
+            return borrow (replica.pool);
+         }catch (SQLException e){
+            this._replicas.markDown (replica, e);
+         }//end try
+      }//end if
+      return borrow (this._pool);
+   }//end borrowRouted
+
+   /*
+    * Whether a statement can run on a hot standby: a SELECT, or a WITH
+    * query, that neither writes, locks rows nor advances a sequence.
+    * Judged once per SQL text, for the first READ_ONLY_CACHE_SIZE texts.
+    **/
+   static boolean isReadOnly (String sql) {
+      Boolean known = READ_ONLY_STATEMENTS.get (sql);
+      if (known != null)
+         return known;
+      String text = sql.stripLeading ().toUpperCase (Locale.ROOT);
+      boolean readOnly = (text.startsWith ("SELECT") || text.startsWith ("WITH")) && !WRITES.matcher (text).find ();
+      if (READ_ONLY_STATEMENTS.size () < READ_ONLY_CACHE_SIZE)
+         READ_ONLY_STATEMENTS.put (sql, readOnly);
+      return readOnly;
+   }//end isReadOnly
+
+   // the rows a statement returned or changed, judged by its result.
+   private static long rowCount (Object result) {
+      if (result instanceof Number)
+         return ((Number) result).longValue ();
+      if (result instanceof List)
+         return ((List<?>) result).size ();
+      return 0;
+   }//end rowCount
+
+   /**
+    * Method to close the connection pool if it is open.
+    */
+   public void cleanup(){
+      // drain journaled orders while the pools are still open
+      if (this._journal != null){
+         this._journal.close ();
+      }//end if
+      if (this._changes != null){
+         this._changes.close ();
+      }//end if
+      this._sessions.close ();
+      // hand unsold stock allotments back while the pool is still open
+      this._inventory.close ();
+      if (this._replicas != null){
+         this._replicas.close ();
+      }//end if
+      this._scatter.shutdownNow ();
+      if (this._shards != null){
+         this._shards.close ();
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
+      this._metrics.close ();
+   }//end cleanup
+
+   /**
+    * The main execution method
+    *
+    * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+    */
+   public static void main (String[] args) {
+      if (args.length < 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            GameRental.class.getName () +
+            " <dbname> <port> <user> [command]\n" +
+            "Commands (default: interactive menu):\n" +
+            "  migrate       apply pending schema migrations\n" +
+            "  check-plans   fail if an application query plans to a sequential scan of a large table\n" +
+            "  serve [port]  serve the operations as JSON over HTTP (default port " + GameRentalServer.DEFAULT_PORT + ")\n" +
+            "  import <Catalog|Users|RentalOrder> <file.csv>   upsert rows from a CSV file\n" +
+            "  export <Catalog|Users|RentalOrder> <file.csv>   dump a table to a CSV file\n" +
+            "  ingest-tracking <file|-> | --listen <port>      apply courier status events in batches\n" +
+            "  overdue       count the rentals that fell due since the last run\n" +
+            "  workload seed <users> <games> <orders>          add synthetic data to load-test with\n" +
+            "  workload run <users> <seconds> [script ...]     simulate concurrent users and report latencies");
+         return;
+      }//end if
+
+      Greeting();
+      GameRental esql = null;
+      int status = 0;
+      try{
+         // use postgres JDBC driver.
+         Class.forName ("org.postgresql.Driver").newInstance ();
+         // instantiate the GameRental object and creates a physical
+         // connection.
+         String dbname = args[0];
+         String dbport = args[1];
+         String user = args[2];
+         esql = new GameRental (dbname, dbport, user, "");
+
+         if (args.length > 3) {
+            // run a single command instead of the interactive menu
+            status = runCommand (esql, args[3], Arrays.copyOfRange (args, 4, args.length));
+         } else {
+            // warm the catalog cache before the first customer browses it
+            esql.catalog ();
+         }//end if
+
+         // menu operations are timed, without the time spent typing
+         final GameRental db = esql;
+         boolean keepon = args.length == 3;
+         while(keepon) {
+            // These are sample SQL statements
+            System.out.println("MAIN MENU");
+            System.out.println("---------");
+            System.out.println("1. Create user");
+            System.out.println("2. Log in");
+            System.out.println("9. < EXIT");
+            SessionManager.Session authorised = null;
+            switch (readChoice()){
+               case 1: db.metrics().time("Create user", () -> CreateUser(db)); break;
+               case 2: authorised = db.metrics().call("Log in", () -> LogIn(db)); break;
+               case 9: keepon = false; break;
+               default : System.out.println("Unrecognized choice!"); break;
+            }//end switch
+            if (authorised != null) {
+              final String login = authorised.login();
+              final String token = authorised.token();
+              boolean usermenu = true;
+              while(usermenu) {
+                System.out.println("MAIN MENU");
+                System.out.println("---------");
+                System.out.println("1. View Profile");
+                System.out.println("2. Update Profile");
+                System.out.println("3. View Catalog");
+                System.out.println("4. Place Rental Order");
+                System.out.println("5. View Full Rental Order History");
+                System.out.println("6. View 5 Most Recent Rental Orders");
+                System.out.println("7. View Rental Order Information");
+                System.out.println("8. View Tracking Information");
+
+                //the following functionalities basically used by employees & managers
+                System.out.println("9. Update Tracking Information");
+
+                //the following functionalities basically used by managers
+                System.out.println("10. Update Catalog");
+                System.out.println("11. Update User");
+                System.out.println("12. Dump Statistics");
+                System.out.println("13. Record Rental Return");
+                System.out.println("14. Restock Game");
+                System.out.println("15. Top Games Report");
+                System.out.println("16. Revenue by Genre Report");
+                System.out.println("17. Watch Tracking Information");
+
+                System.out.println(".........................");
+                System.out.println("20. Log out");
+                int choice = readChoice();
+                // the session may have ended, or its user been removed, while the menu waited
+                final SessionManager.Session session = db.sessions().get(token);
+                if (session == null) {
+                   System.out.println("Your session has expired; please log in again.");
+                   break;
+                }
+                switch (choice){
+                   case 1: db.metrics().time("View profile", () -> viewProfile(session)); break;
+                   case 2: db.metrics().time("Update profile", () -> db.readWrite(login, () -> updateProfile(db, login))); break;
+                   case 3: db.metrics().time("View catalog", () -> db.readOnly(login, () -> viewCatalog(db))); break;
+                   case 4: db.metrics().time("Place order", () -> db.readWrite(login, () -> placeOrder(db, login))); break;
+                   case 5: db.metrics().time("View full order history", () -> db.readOnly(login, () -> viewAllOrders(db, session))); break;
+                   case 6: db.metrics().time("View recent orders", () -> db.readOnly(login, () -> viewRecentOrders(db, login))); break;
+                   case 7: db.metrics().time("View order information", () -> db.readOnly(login, () -> viewOrderInfo(db, session))); break;
+                   case 8: db.metrics().time("View tracking information", () -> db.readOnly(login, () -> viewTrackingInfo(db, session))); break;
+                   case 9: if (allowed(session, "employee", "manager")) db.metrics().time("Update tracking information", () -> db.readWrite(login, () -> updateTrackingInfo(db))); break;
+                   case 10: if (allowed(session, "manager")) db.metrics().time("Update catalog", () -> db.readWrite(login, () -> updateCatalog(db))); break;
+                   case 11: if (allowed(session, "manager")) db.metrics().time("Update user", () -> db.readWrite(login, () -> updateUser(db))); break;
+                   case 12: if (allowed(session, "manager")) db.metrics().dump(System.out); break;
+                   case 13: if (allowed(session, "employee", "manager")) db.metrics().time("Record return", () -> db.readWrite(login, () -> recordReturn(db))); break;
+                   case 14: if (allowed(session, "manager")) db.metrics().time("Restock game", () -> db.readWrite(login, () -> restock(db))); break;
+                   case 15: if (allowed(session, "manager")) db.metrics().time("Top games report", () -> db.readOnly(login, () -> topGamesReport(db))); break;
+                   case 16: if (allowed(session, "manager")) db.metrics().time("Revenue by genre report", () -> db.readOnly(login, () -> genreRevenueReport(db))); break;
+                   case 17: db.metrics().time("Watch tracking information", () -> watchTrackingInfo(db, session)); break;
+
+
+
+                   case 20: db.sessions().logout(token); usermenu = false; break;
+                   default : System.out.println("Unrecognized choice!"); break;
+                }
+              }
+            }
+         }//end while
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+         status = 1;
+      }finally{
+         // make sure to cleanup the created table and close the connection.
+         try{
+            if(esql != null) {
+               System.out.print("Disconnecting from database...");
+               esql.cleanup ();
+               System.out.println("Done\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+      }//end try
+      if (status != 0)
+         System.exit (status);
+   }//end main
+
+   /**
+    * Runs one non-interactive command given on the command line
+    *
+    * @param esql the connected database
+    * @param command the command name
+    * @param args the arguments following the command name
+    * @return the process exit status
+    * @throws java.lang.Exception when the command failed
+    */
+   static int runCommand (GameRental esql, String command, String[] args) throws Exception {
+      switch (command) {
+         case "migrate": {
+            // every shard holds the whole schema
+            List<String> versions = esql.onEveryShard (() -> {
+               SchemaMigrator migrator = new SchemaMigrator (esql);
+               List<Integer> applied = migrator.migrate ();
+               return "Schema is at version " + migrator.currentVersion ()
+                  + " (" + applied.size () + " migration(s) applied)";
+            });
+            for (int i = 0; i < versions.size (); ++i)
+               System.out.println ((versions.size () > 1 ? "Shard " + i + ": " : "") + versions.get (i));
+            return 0;
+         }
+         case "check-plans": {
+            // one shard at a time, so each prints its lines together
+            List<String> problems = new ArrayList<String> ();
+            for (ShardRouter.Shard shard : esql.shards ().all ()) {
+               if (esql.shards ().size () > 1)
+                  System.out.println ("Shard " + shard.index + " (" + shard.url + ")");
+               problems.addAll (esql.onShard (shard.index, () -> new QueryPlanChecker (esql).check ()));
+            }//end for
+            if (!problems.isEmpty ()) {
+               System.err.println (problems.size () + " query plan(s) use sequential scans on large tables");
+               return 1;
+            }//end if
+            System.out.println ("All query plans use indexes on large tables");
+            return 0;
+         }
+         case "serve": {
+            int port = args.length > 0 ? Integer.parseInt (args[0]) : GameRentalServer.DEFAULT_PORT;
+            GameRentalServer server = new GameRentalServer (esql, port);
+            esql.catalog ();
+            server.start ();
+            System.out.println ("Serving on port " + server.port () + ", press Ctrl-C to stop");
+
+            // run until the JVM is asked to shut down
+            CountDownLatch stopped = new CountDownLatch (1);
+            Runtime.getRuntime ().addShutdownHook (new Thread (() -> {
+               server.stop ();
+               esql.metrics ().dump (System.out);
+               stopped.countDown ();
+            }));
+            stopped.await ();
+            return 0;
+         }
+         case "import":
+         case "export": {
+            if (args.length != 2) {
+               System.err.println ("Usage: " + command + " <Catalog|Users|RentalOrder> <file.csv>");
+               return 2;
+            }//end if
+            BulkTransfer.Table table = BulkTransfer.table (args[0]);
+            if (esql.shards ().size () > 1 && !"Catalog".equalsIgnoreCase (table.name)) {
+               // rows would have to be split by login; only Catalog lives on shard 0
+               System.err.println (command + " of " + table.name + " is not supported with several shards");
+               return 2;
+            }//end if
+            Path file = Paths.get (args[1]);
+            long start = System.nanoTime ();
+            BulkTransfer transfer = new BulkTransfer (esql);
+            long rows = "import".equals (command) ? transfer.importCsv (table, file) : transfer.exportCsv (table, file);
+            System.out.printf ("%sed %d %s row(s) in %.2f s%n", command, rows, table.name,
+               (System.nanoTime () - start) / 1e9);
+            return 0;
+         }
+         case "overdue": {
+            System.out.println ("Overdue engine: " + new OverdueEngine (esql).runOnce ());
+            return 0;
+         }
+         case "workload": {
+            if (args.length < 1 || ("seed".equals (args[0]) && args.length != 4)
+                  || ("run".equals (args[0]) && args.length < 3)
+                  || !("seed".equals (args[0]) || "run".equals (args[0]))) {
+               System.err.println ("Usage: workload seed <users> <games> <orders> | workload run <users> <seconds> [script ...]");
+               return 2;
+            }//end if
+            WorkloadDriver driver = new WorkloadDriver (esql);
+            if ("seed".equals (args[0])) {
+               driver.seed (Integer.parseInt (args[1]), Integer.parseInt (args[2]), Integer.parseInt (args[3]));
+               return 0;
+            }//end if
+            List<Path> scripts = new ArrayList<Path> ();
+            for (int i = 3; i < args.length; ++i)
+               scripts.add (Paths.get (args[i]));
+            driver.loadScripts (scripts);
+            driver.run (Integer.parseInt (args[1]), Long.parseLong (args[2]));
+            driver.report (System.out);
+            return 0;
+         }
+         case "ingest-tracking": {
+            if (args.length < 1 || ("--listen".equals (args[0]) && args.length < 2)) {
+               System.err.println ("Usage: ingest-tracking <file|-> | --listen <port>");
+               return 2;
+            }//end if
+            TrackingIngestor ingestor = new TrackingIngestor (esql);
+            ingestor.start ();
+            try{
+               if ("--listen".equals (args[0])) {
+                  // Ctrl-C writes what is buffered before the JVM exits
+                  Runtime.getRuntime ().addShutdownHook (new Thread (ingestor::close));
+                  ingestor.listen (Integer.parseInt (args[1]));
+               } else if ("-".equals (args[0])) {
+                  ingestor.ingest (new InputStreamReader (System.in, StandardCharsets.UTF_8));
+               } else {
+                  try (Reader file = Files.newBufferedReader (Paths.get (args[0]), StandardCharsets.UTF_8)) {
+                     ingestor.ingest (file);
+                  }//end try
+               }//end if
+            }finally{
+               ingestor.close ();
+            }//end try
+            System.out.println ("Tracking events: " + ingestor.stats ());
+            return 0;
+         }
+         default:
+            System.err.println ("Unknown command: " + command);
+            return 2;
+      }//end switch
+   }//end runCommand
+
+   public static void Greeting(){
+      System.out.println(
+         "\n\n*******************************************************\n" +
+         "              User Interface      	               \n" +
+         "*******************************************************\n");
+   }//end Greeting
+
+   /*
+    * Reads the users choice given from the keyboard
+    * @int
+    **/
+   public static int readChoice() {
+      int input;
+      // returns only if a correct value is given.
+      do {
+         System.out.print("Please make your choice: ");
+         try { // read the integer, parse it and break.
+            input = Integer.parseInt(in.readLine());
+            break;
+         }catch (Exception e) {
+            System.out.println("Your input is invalid!");
+            continue;
+         }//end try
+      }while (true);
+      return input;
+   }//end readChoice
+
+   /*
+    * Creates a new user
+    **/
+   public static void CreateUser(GameRental esql){
+   try {
+      System.out.print("\tEnter Username: ");
+      String username = in.readLine();
+      System.out.print("\tEnter Password: ");
+      String password = in.readLine();
+      System.out.print("\tEnter Phone Number: ");
+      String phoneNumber = in.readLine();
+
+      String query = Queries.CREATE_USER;
+      String hash = PasswordHasher.hash(password);
+      esql.onShardOf(username, () -> esql.executeUpdate(query, username, hash, phoneNumber));
+      System.out.println("User successfully created!");
+   }
+   catch (Exception e) {
+      System.err.println(e.getMessage());
+   }
+}//end CreateUser
+
+
+   /*
+    * Check log in credentials for an existing user
+    * @return the new session, or null if the credentials are wrong
+    **/
+   public static SessionManager.Session LogIn(GameRental esql){
+   try {
+      System.out.print("\tEnter username: ");
+      String username = in.readLine();
+      System.out.print("\tEnter password: ");
+      String password = in.readLine();
+
+      SessionManager.Session session = esql.sessions().login(username, password);
+
+      if (session != null) {
+         System.out.println("Successful Log in!");
+         return session;
+      } else {
+         System.out.println("Invalid username or password.");
+         return null;
+      }
+   } catch (Exception e) {
+      System.err.println(e.getMessage());
+      return null;
+   }
+   }//end
+
+// Rest of the functions definition go in here
+
+   // the profile was read at login, or after it last changed
+   public static void viewProfile(SessionManager.Session session) {
+        ResultPrinter printer = new ResultPrinter();
+        printer.header(session.profile().keySet().toArray(new String[0]));
+        printer.row(session.profile().values().toArray());
+        printer.flush();
+    }
+
+   // tells the user when their role does not allow a menu option.
+   static boolean allowed(SessionManager.Session session, String... roles) {
+      if (session.hasRole(roles))
+         return true;
+      System.out.println("This option requires the role " + String.join(" or ", roles) + ".");
+      return false;
+   }
+
+    public static void updateProfile(GameRental esql, String username) {
+      try {
+         System.out.println("What would you like to update?");
+         System.out.println("1. Password");
+              System.out.println("2. Phone Number");
+         System.out.println("3. Favorite Games");
+         int choice = readChoice();
+         String query = "";
+         String value = "";
+
+      switch(choice) {
+         case 1:
+           System.out.println("\tEnter new Password: ");
+           value = PasswordHasher.hash(in.readLine());
+           query = Queries.UPDATE_PASSWORD;
+           break;
+              case 2:
+           System.out.println("\tEnter new Phone Number: ");
+           value = in.readLine();
+           query = Queries.UPDATE_PHONE_NUM;
+           break;
+              case 3:
+           System.out.println("\tEnter new Favorite Game: ");
+           value = in.readLine();
+           query = Queries.UPDATE_FAV_GAMES;
+           break;
+              default: 
+           System.out.println("\tUnrecognized Choice!");
+           return;
+      }
+      String update = query;
+      String newValue = value;
+      esql.onShardOf(username, () -> esql.executeUpdate(update, newValue, username));
+      esql.sessions().invalidate(username);
+      System.out.println("Profile was updated successfully!");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+        }
+   }
+
+    public static void viewCatalog(GameRental esql) {
+      try {
+         System.out.println("Search catalog by: ");
+         System.out.println("1. Genre");
+         System.out.println("2. Price Range");
+         System.out.println("3. Sort by Price (High to Low)");
+         System.out.println("4. Sort by Price (Low to High)");
+         System.out.println("5. Title or Description");
+         int choice = readChoice();
+         CatalogCache catalog = esql.catalog();
+         List<Game> games;
+
+         switch(choice) {
+            case 1:
+               System.out.print("\tEnter genre: ");
+               String genre = in.readLine();
+               games = catalog.byGenre(genre);
+               break;
+                 case 2:
+               System.out.print("\tEnter minimum price (leave empty for none): ");
+               String minPrice = in.readLine().trim();
+               System.out.print("\tEnter maximum price: ");
+               double maxPrice = Double.parseDouble(in.readLine());
+               games = catalog.byPriceRange(minPrice.isEmpty() ? 0 : Double.parseDouble(minPrice), maxPrice);
+               break;
+                 case 3:
+               games = catalog.sortedByPrice(true);
+               break;
+                 case 4:
+               games = catalog.sortedByPrice(false);
+               break;
+                 case 5:
+               System.out.print("\tEnter search words: ");
+               games = catalog.search(in.readLine(), SEARCH_RESULTS);
+               break;
+            default:
+               System.out.println("Unrecognized Choice!");
+               return;
+         }
+         // served from memory, rendered like a query result
+         ResultPrinter printer = new ResultPrinter();
+         if (!games.isEmpty())
+            printer.header(Game.COLUMNS);
+         for (Game game : games)
+            printer.row(game.values());
+         printer.flush();
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+  public static void placeOrder(GameRental esql, String username) {
+       try {
+            // Fill the cart until the customer enters an empty Game ID
+            Cart cart = new Cart();
+            while (true) {
+               System.out.print("\tEnter Game ID (leave empty to finish): ");
+               String gameID = in.readLine();
+               if (gameID == null || gameID.trim().isEmpty())
+                  break;
+               System.out.print("\tEnter number of units: ");
+               int unitsOrdered = Integer.parseInt(in.readLine());
+               cart.add(gameID, unitsOrdered);
+            }
+            if (cart.isEmpty()) {
+               System.out.println("No games selected, order cancelled.");
+               return;
+            }
+
+            // Price and insert the whole order in one round trip
+            OrderReceipt receipt = esql.submitOrder(username, cart);
+            System.out.println(receipt);
+            System.out.println("Order successfully placed!");
+
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+ public static void viewAllOrders(GameRental esql, SessionManager.Session session) {
+      String username = session.login();
+      try {
+         OrderPage page = esql.fetchOrderPage(username, null, true, ORDER_PAGE_SIZE);
+         while (true) {
+            printOrderPage(page);
+            if (!page.hasNewer() && !page.hasOlder())
+               return;
+            System.out.println("1. Next page (older orders)");
+            System.out.println("2. Previous page (newer orders)");
+            System.out.println("3. Order details for this page");
+            System.out.println("4. Back");
+            switch (readChoice()) {
+               case 1:
+                  if (page.hasOlder())
+                     page = esql.fetchOrderPage(username, page.oldest(), true, ORDER_PAGE_SIZE);
+                  else
+                     System.out.println("This is the last page.");
+                  break;
+               case 2:
+                  if (page.hasNewer())
+                     page = esql.fetchOrderPage(username, page.newest(), false, ORDER_PAGE_SIZE);
+                  else
+                     System.out.println("This is the first page.");
+                  break;
+               case 3:
+                  for (OrderDetail detail : esql.fetchOrderDetails(username, session.isStaff(), page.rentalOrderIDs()))
+                     detail.print();
+                  break;
+               case 4: return;
+               default: System.out.println("Unrecognized choice!"); break;
+            }
+         }
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void viewRecentOrders(GameRental esql, String username) {
+       try {
+         printOrderPage(esql.fetchOrderPage(username, null, true, 5));
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   /*
+    * Prints one page of rental orders
+    **/
+   static void printOrderPage(OrderPage page) {
+      if (page.isEmpty()) {
+         System.out.println("No rental orders found.");
+         return;
+      }
+      ResultPrinter printer = new ResultPrinter();
+      printer.header(page.columns());
+      for (Object[] row : page.rows())
+         printer.row(row);
+      printer.flush();
+   }
+
+   public static void viewOrderInfo(GameRental esql, SessionManager.Session session) {
+      try {
+         System.out.print("Enter Rental Order ID: ");
+         String rentalOrderID = in.readLine();
+         OrderDetail detail = esql.fetchOrderDetail(session.login(), session.isStaff(), rentalOrderID);
+         if (detail == null)
+            System.out.println("No rental order with that ID.");
+         else
+            detail.print();
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void viewTrackingInfo(GameRental esql, SessionManager.Session session) {
+      try {
+         System.out.print("Enter Tracking ID: ");
+         String trackingID = in.readLine();
+         if (printTrackingInfo(esql, session, trackingID) == 0)
+            System.out.println("No shipment with that tracking ID.");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   // prints a shipment the session may see, from the shard its id names
+   static int printTrackingInfo(GameRental esql, SessionManager.Session session, String trackingID) throws SQLException {
+      return esql.onShardOfId(trackingID, () -> esql.executeQueryAndPrintResult(
+         Queries.VIEW_TRACKING_INFO, trackingID, session.login(), session.isStaff()));
+   }
+
+   public static void watchTrackingInfo(GameRental esql, SessionManager.Session session) {
+      try {
+         System.out.print("Enter Tracking ID: ");
+         String trackingID = in.readLine();
+         // pushed by the database on every committed change; nothing is polled
+         ChangeFeed.Subscription watch = esql.changes().subscribe("trackinginfo", change -> {
+            if (change.id == null || change.id.equals(trackingID)) {
+               try{
+                  System.out.println("Tracking information changed:");
+                  printTrackingInfo(esql, session, trackingID);
+               }catch (SQLException e){
+                  System.err.println(e.getMessage());
+               }//end try
+            }//end if
+         });
+         try{
+            if (printTrackingInfo(esql, session, trackingID) == 0) {
+               System.out.println("No shipment with that tracking ID.");
+               return;
+            }//end if
+            System.out.println("Watching for changes; press Enter to stop.");
+            in.readLine();
+         }finally{
+            watch.close();
+         }//end try
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void updateTrackingInfo(GameRental esql) {
+      try {
+         System.out.print("\tEnter Tracking ID: ");
+         String trackingID = in.readLine();
+         System.out.print("\tEnter new status: ");
+         String status = in.readLine();
+         System.out.print("\tEnter current location (leave empty to keep): ");
+         String currentLocation = in.readLine();
+         System.out.print("\tEnter new courier name: ");
+         String courierName = in.readLine();
+         System.out.print("\tEnter additional comments: ");
+         String additionalComments = in.readLine();
+
+         String query = Queries.UPDATE_TRACKING_INFO;
+         String location = currentLocation == null || currentLocation.trim().isEmpty() ? null : currentLocation;
+         int updated = esql.onShardOfId(trackingID, () -> esql.executeUpdate(query, status,
+            location, courierName, additionalComments, trackingID));
+         if (updated == 0)
+            System.out.println("No shipment with that tracking ID.");
+         else
+            System.out.println("Tracking information updated successfully!");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void recordReturn(GameRental esql) {
+      try {
+         System.out.print("\tEnter Rental Order ID: ");
+         String rentalOrderID = in.readLine();
+
+         boolean late = new OverdueEngine(esql).recordReturn(rentalOrderID);
+         System.out.println(late ? "Late return recorded; overdue count reduced." : "Return recorded.");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void restock(GameRental esql) {
+      try {
+         System.out.print("\tEnter Game ID: ");
+         String gameID = in.readLine();
+         System.out.print("\tEnter units delivered: ");
+         int units = Integer.parseInt(in.readLine());
+
+         int inStock = esql.inventory().restock(gameID, units);
+         if (inStock < 0)
+            System.out.println("No game with that ID in the catalog.");
+         else
+            System.out.println("Restocked; " + inStock + " units now in stock.");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void topGamesReport(GameRental esql) {
+      try {
+         int days = readCount("\tEnter number of days (leave empty for 7): ", 7);
+         int limit = readCount("\tEnter number of games (leave empty for 10): ", 10);
+         printRows(esql.topGamesReport(days, limit));
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void genreRevenueReport(GameRental esql) {
+      try {
+         int days = readCount("\tEnter number of days (leave empty for 7): ", 7);
+         printRows(esql.genreRevenueReport(days));
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   // prints report rows as a table, all rows having the same columns.
+   static void printRows(List<Map<String, Object>> rows) {
+      if (rows.isEmpty()) {
+         System.out.println("No rentals in that period.");
+         return;
+      }
+      ResultPrinter printer = new ResultPrinter();
+      printer.header(rows.get(0).keySet().toArray(new String[0]));
+      for (Map<String, Object> row : rows)
+         printer.row(row.values().toArray());
+      printer.flush();
+   }
+
+   // reads a positive count, or the default for an empty line.
+   static int readCount(String prompt, int fallback) throws IOException {
+      System.out.print(prompt);
+      String line = in.readLine().trim();
+      int count = line.isEmpty() ? fallback : Integer.parseInt(line);
+      if (count <= 0)
+         throw new IllegalArgumentException("Enter a positive number");
+      return count;
+   }
+
+   public static void updateCatalog(GameRental esql) {
+      try {
+         System.out.print("Enter game ID: ");
+         String gameID = in.readLine();
+         System.out.print("Enter new price: ");
+         double price = Double.parseDouble(in.readLine());
+         System.out.print("Enter description: ");
+         String descrip = in.readLine();
+
+         if (esql.updateCatalogEntry(gameID, price, descrip) == null) {
+            System.out.println("No game with that ID in the catalog.");
+            return;
+         }
+         System.out.println("Catalog updated successfully!");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   
+   }
+
+   public static void updateUser(GameRental esql) {
+      try {
+         System.out.print("Enter username: ");
+         String username = in.readLine();
+         System.out.print("Enter new role: ");
+         String role = in.readLine();
+         System.out.print("Enter new number of Overdue Games: ");
+         int numOverdueGames = Integer.parseInt(in.readLine());
+
+         String query = Queries.UPDATE_USER;
+         esql.onShardOf(username, () -> esql.executeUpdate(query, role, numOverdueGames, username));
+         esql.sessions().invalidate(username);
+         System.out.println("User information has been updated!");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+}//end GameRental
+
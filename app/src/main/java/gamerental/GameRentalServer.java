@@ -0,0 +1,766 @@
+package gamerental;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class exposes the GameRental operations as JSON over HTTP.  It
+ * runs on the JDK's built-in HttpServer and handles every request on its
+ * own virtual thread (on JDK 21 and later), so thousands of slow clients
+ * can be in flight while only as many requests as there are pooled
+ * connections talk to the database at once.
+ *
+ * Customers authenticate with HTTP Basic credentials from the Users
+ * table, or with a bearer token from POST /sessions.  Either way the
+ * password hash is checked once per client and session, not per request.
+ * Tracking updates require the employee or manager role; catalog and user
+ * updates require the manager role.
+ *
+ * GET requests run on a read replica when -Dgamerental.replicas is set,
+ * except for callers that wrote in the last few seconds.
+ *
+ *    POST /users                 create a customer account
+ *    POST /sessions              log in with Basic credentials, returning a bearer token
+ *    DELETE /sessions            log out the bearer token
+ *    GET  /profile               view own profile
+ *    PUT  /profile               update password, phoneNum or favGames
+ *    GET  /catalog               search by genre and price range, sorted by price,
+ *                                or by title and description words (q), best first
+ *    GET  /catalog/{gameID}      one catalog entry
+ *    PUT  /catalog/{gameID}      update price and description (manager)
+ *    POST /orders                place an order for a cart of games
+ *    GET  /orders                one page of own order history; with ?details=true,
+ *                                each order with its games and shipment
+ *    GET  /orders/{id}           an order with its games and shipment (own orders;
+ *                                any order for employees and managers)
+ *    GET  /tracking/{id}         tracking information; with ?wait=N, after its next
+ *                                change or N seconds
+ *    PUT  /tracking/{id}         update tracking information (employee, manager)
+ *    POST /tracking/events       queue a batch of courier events (employee, manager)
+ *    POST /returns/{id}          record the return of an order (employee, manager)
+ *    PUT  /users/{login}         update role and overdue count (manager)
+ *    GET  /stats                 latency, row and error statistics (manager)
+ *    GET  /reports/top-games     most rented games of the last days (manager)
+ *    GET  /reports/genres        revenue by genre per day (manager)
+ *
+ */
+public class GameRentalServer {
+
+   // port used when none is given on the command line.
+   static final int DEFAULT_PORT = 8080;
+
+   // largest request body accepted, in bytes.
+   static final int MAX_BODY_BYTES = 1 << 20;
+
+   // longest a tracking request may wait for a change, in seconds.
+   static final int MAX_WAIT_SECONDS = 60;
+
+   // catalog entries returned per request when no limit is given, and at most.
+   static final int DEFAULT_CATALOG_LIMIT = 100;
+   static final int MAX_CATALOG_LIMIT = 1000;
+
+   // days reported on and games listed when the request does not say.
+   static final int DEFAULT_REPORT_DAYS = 7;
+   static final int DEFAULT_REPORT_LIMIT = 10;
+
+   // request threads and queued requests on runtimes without virtual threads.
+   static final int MAX_REQUEST_THREADS = Integer.getInteger("gamerental.server.maxThreads", 200);
+   static final int MAX_QUEUED_REQUESTS = Integer.getInteger("gamerental.server.maxQueued", 1000);
+
+   // set on the thread answering a request the request threads had no room for.
+   private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<Boolean>();
+
+   // the first path segments that are routed.
+   static final Set<String> RESOURCES = Set.of("users", "sessions", "profile", "catalog", "orders", "tracking", "returns", "stats", "reports");
+
+   /**
+    * An error that maps to a specific HTTP status.
+    */
+   static final class HttpError extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+      final int status;
+
+      HttpError(int status, String message) {
+         super(message);
+         this.status = status;
+      }//end HttpError
+   }//end HttpError
+
+   /**
+    * One HTTP request, with its path split into segments.
+    */
+   static final class Request {
+      final HttpExchange exchange;
+      final String method;
+      final String[] path;
+      final Map<String, String> query;
+      String login;
+      String role;
+      SessionManager.Session session;
+
+      Request(HttpExchange exchange) {
+         this.exchange = exchange;
+         this.method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+         String raw = exchange.getRequestURI().getPath();
+         List<String> segments = new ArrayList<String>();
+         for (String s : raw.split("/"))
+            if (!s.isEmpty())
+               segments.add(URLDecoder.decode(s, StandardCharsets.UTF_8));
+         this.path = segments.toArray(new String[0]);
+         this.query = parseQuery(exchange.getRequestURI().getRawQuery());
+      }//end Request
+
+      String segment(int i) {
+         return i < this.path.length ? this.path[i] : null;
+      }//end segment
+
+      // the login and password of the Basic credentials, not yet checked; null if none.
+      String[] basicCredentials() {
+         String header = this.exchange.getRequestHeaders().getFirst("Authorization");
+         if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6))
+            return null;
+         try{
+            String decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+            int colon = decoded.indexOf(':');
+            return colon < 0 ? null : new String[] { decoded.substring(0, colon), decoded.substring(colon + 1) };
+         }catch (IllegalArgumentException e){
+            return null;
+         }//end try
+      }//end basicCredentials
+
+      // the bearer token of the request; null if none.
+      String bearerToken() {
+         String header = this.exchange.getRequestHeaders().getFirst("Authorization");
+         if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7))
+            return null;
+         return header.substring(7).trim();
+      }//end bearerToken
+
+      // the route as named in the statistics, e.g. "GET /orders/{id}".
+      String operation() {
+         String resource = segment(0);
+         if (resource == null || !RESOURCES.contains(resource) || this.path.length > 2)
+            return this.method + " (not found)";
+         return this.method + " /" + resource + (this.path.length > 1 ? "/{id}" : "");
+      }//end operation
+
+      @SuppressWarnings("unchecked")
+      Map<String, Object> body() throws IOException {
+         try (InputStream is = this.exchange.getRequestBody()) {
+            byte[] bytes = is.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES)
+               throw new HttpError(413, "Request body too large");
+            String text = new String(bytes, StandardCharsets.UTF_8).trim();
+            if (text.isEmpty())
+               return new LinkedHashMap<String, Object>();
+            Object value = Json.parse(text);
+            if (!(value instanceof Map))
+               throw new HttpError(400, "Request body must be a JSON object");
+            return (Map<String, Object>) value;
+         }//end try
+      }//end body
+   }//end Request
+
+   private final GameRental _esql;
+   private final HttpServer _server;
+   private final ExecutorService _executor;
+   private final TrackingIngestor _tracking;
+   private final OverdueEngine _overdue;
+
+   /**
+    * Creates a new server bound to a port; call start() to accept requests
+    *
+    * @param esql the database the operations run against
+    * @param port the TCP port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public GameRentalServer(GameRental esql, int port) throws IOException {
+      this._esql = esql;
+      this._server = HttpServer.create(new InetSocketAddress(port), 1024);
+      this._executor = requestExecutor();
+      this._tracking = new TrackingIngestor(esql);
+      this._overdue = new OverdueEngine(esql);
+      this._server.setExecutor(this._executor);
+      this._server.createContext("/", this::dispatch);
+   }//end GameRentalServer
+
+   /*
+    * One virtual thread per request on JDK 21 and later.  The build targets
+    * an older release, so the factory is looked up reflectively.  Older
+    * runtimes fall back to at most MAX_REQUEST_THREADS platform threads
+    * and MAX_QUEUED_REQUESTS waiting requests; a request beyond that is
+    * answered 503 by the accepting thread, without touching the database.
+    **/
+   private static ExecutorService requestExecutor() {
+      try{
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }catch (ReflectiveOperationException e){
+         ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_REQUEST_THREADS, MAX_REQUEST_THREADS,
+            60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REQUESTS), r -> {
+               Thread t = new Thread(r, "http-request");
+               t.setDaemon(true);
+               return t;
+            }, (task, executor) -> {
+               OVERLOADED.set(Boolean.TRUE);
+               try{
+                  task.run();
+               }finally{
+                  OVERLOADED.remove();
+               }//end try
+            });
+         pool.allowCoreThreadTimeOut(true);
+         return pool;
+      }//end try
+   }//end requestExecutor
+
+   /**
+    * Starts accepting requests in the background.
+    */
+   public void start() {
+      this._tracking.start();
+      this._overdue.start();
+      this._server.start();
+   }//end start
+
+   /**
+    * Stops accepting requests, giving in-flight requests a moment to finish.
+    */
+   public void stop() {
+      this._server.stop(2);
+      this._executor.shutdown();
+      this._tracking.close();
+      this._overdue.close();
+   }//end stop
+
+   /**
+    * @return the port the server listens on
+    */
+   public int port() {
+      return this._server.getAddress().getPort();
+   }//end port
+
+   private void dispatch(HttpExchange exchange) throws IOException {
+      if (OVERLOADED.get() != null) {
+         try{
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error("Server busy, try again later"));
+         }finally{
+            exchange.close();
+         }//end try
+         return;
+      }//end if
+      try{
+         Request req = new Request(exchange);
+         // reads may go to a replica; writes pin the caller to the primary.
+         // A long poll reads on the primary, which has the change it waited for.
+         String[] basic = req.basicCredentials();
+         String login = basic != null ? basic[0] : this._esql.sessions().loginOf(req.bearerToken());
+         Object result = this._esql.metrics().call(req.operation(), () -> {
+            if (!"GET".equals(req.method))
+               return this._esql.readWrite(login, () -> route(req));
+            if (req.query.containsKey("wait"))
+               return route(req);
+            return this._esql.readOnly(login, () -> route(req));
+         });
+         respond(exchange, "POST".equals(req.method) ? 201 : 200, result);
+      }catch (HttpError e){
+         respond(exchange, e.status, error(e.getMessage()));
+      }catch (IllegalArgumentException e){
+         respond(exchange, 400, error(e.getMessage()));
+      }catch (SQLException e){
+         String state = e.getSQLState() == null ? "" : e.getSQLState();
+         int status = state.startsWith("08") ? 503 : state.equals("23505") ? 409 : state.startsWith("23") ? 400 : 500;
+         respond(exchange, status, error(e.getMessage()));
+      }catch (Exception e){
+         respond(exchange, 500, error(e.getMessage()));
+      }finally{
+         exchange.close();
+      }//end try
+   }//end dispatch
+
+   private Object route(Request req) throws Exception {
+      String resource = req.segment(0);
+      String id = req.segment(1);
+      if (resource == null || req.path.length > 2)
+         throw new HttpError(404, "Not found");
+
+      switch (resource) {
+         case "users":
+            if (id == null && "POST".equals(req.method))
+               return createUser(req);
+            if (id != null && "PUT".equals(req.method))
+               return updateUser(authorize(req, "manager"), id);
+            break;
+         case "sessions":
+            if (id == null && "POST".equals(req.method))
+               return createSession(req);
+            if (id == null && "DELETE".equals(req.method)) {
+               this._esql.sessions().logout(authorize(req).bearerToken());
+               return new LinkedHashMap<String, Object>();
+            }//end if
+            break;
+         case "profile":
+            if (id == null && "GET".equals(req.method))
+               return viewProfile(authorize(req));
+            if (id == null && "PUT".equals(req.method))
+               return updateProfile(authorize(req));
+            break;
+         case "catalog":
+            if (id == null && "GET".equals(req.method))
+               return searchCatalog(req);
+            if (id != null && "GET".equals(req.method))
+               return viewGame(id);
+            if (id != null && "PUT".equals(req.method))
+               return updateCatalog(authorize(req, "manager"), id);
+            break;
+         case "orders":
+            if (id == null && "POST".equals(req.method))
+               return placeOrder(authorize(req));
+            if (id == null && "GET".equals(req.method))
+               return viewOrders(authorize(req));
+            if (id != null && "GET".equals(req.method))
+               return viewOrderInfo(authorize(req), id);
+            break;
+         case "tracking":
+            if ("events".equals(id) && "POST".equals(req.method))
+               return ingestTracking(authorize(req, "employee", "manager"));
+            if (id != null && "GET".equals(req.method))
+               return req.query.containsKey("wait")
+                  ? watchTracking(authorize(req), id)
+                  : viewTracking(authorize(req), id);
+            if (id != null && "PUT".equals(req.method))
+               return updateTracking(authorize(req, "employee", "manager"), id);
+            break;
+         case "returns":
+            if (id != null && "POST".equals(req.method))
+               return recordReturn(authorize(req, "employee", "manager"), id);
+            break;
+         case "stats":
+            if (id == null && "GET".equals(req.method)) {
+               authorize(req, "manager");
+               Map<String, List<Map<String, Object>>> stats = this._esql.metrics().snapshot();
+               Map<String, Object> journal = this._esql.journalStats();
+               if (journal != null)
+                  stats.put("journal", List.of(journal));
+               return stats;
+            }//end if
+            break;
+         case "reports":
+            if ("top-games".equals(id) && "GET".equals(req.method))
+               return topGamesReport(authorize(req, "manager"));
+            if ("genres".equals(id) && "GET".equals(req.method))
+               return genreRevenueReport(authorize(req, "manager"));
+            break;
+         default:
+            throw new HttpError(404, "Not found");
+      }//end switch
+      throw new HttpError(405, "Method not allowed");
+   }//end route
+
+   /*
+    * Checks the bearer token or Basic credentials of a request and, if
+    * roles are given, that the user holds one of them.  Neither costs a
+    * database round trip once the client's session exists.
+    **/
+   private Request authorize(Request req, String... roles) throws SQLException {
+      SessionManager.Session session;
+      String token = req.bearerToken();
+      String[] basic = req.basicCredentials();
+      if (token != null)
+         session = this._esql.sessions().get(token);
+      else if (basic != null)
+         session = this._esql.sessions().authenticate(basic[0], basic[1]);
+      else
+         throw unauthorized(req);
+      if (session == null)
+         throw unauthorized(req);
+      req.session = session;
+      req.login = session.login();
+      req.role = session.role();
+
+      if (roles.length > 0) {
+         for (String allowed : roles)
+            if (allowed.equals(req.role))
+               return req;
+         throw new HttpError(403, "This operation requires the role " + String.join(" or ", roles));
+      }//end if
+      return req;
+   }//end authorize
+
+   private static HttpError unauthorized(Request req) {
+      req.exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"GameRental\"");
+      return new HttpError(401, "Invalid username or password");
+   }//end unauthorized
+
+   private Object createSession(Request req) throws SQLException {
+      String[] basic = req.basicCredentials();
+      SessionManager.Session session = basic == null ? null : this._esql.sessions().login(basic[0], basic[1]);
+      if (session == null)
+         throw unauthorized(req);
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("token", session.token());
+      result.put("login", session.login());
+      result.put("role", session.role());
+      result.put("expiresInSeconds", TimeUnit.MILLISECONDS.toSeconds(session.expiresInMillis()));
+      return result;
+   }//end createSession
+
+   private Object createUser(Request req) throws Exception {
+      Map<String, Object> body = req.body();
+      String login = requireString(body, "login");
+      String hash = PasswordHasher.hash(requireString(body, "password"));
+      this._esql.onShardOf(login, () -> this._esql.executeUpdate(Queries.CREATE_USER, login, hash,
+         optionalString(body, "phoneNum")));
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("login", login);
+      return result;
+   }//end createUser
+
+   private Object viewProfile(Request req) {
+      return req.session.profile();
+   }//end viewProfile
+
+   private Object updateProfile(Request req) throws Exception {
+      Map<String, Object> body = req.body();
+      this._esql.onShardOf(req.login, () -> this._esql.inTransaction(() -> {
+         if (body.containsKey("password"))
+            this._esql.executeUpdate(Queries.UPDATE_PASSWORD, PasswordHasher.hash(requireString(body, "password")), req.login);
+         if (body.containsKey("phoneNum"))
+            this._esql.executeUpdate(Queries.UPDATE_PHONE_NUM, optionalString(body, "phoneNum"), req.login);
+         if (body.containsKey("favGames"))
+            this._esql.executeUpdate(Queries.UPDATE_FAV_GAMES, optionalString(body, "favGames"), req.login);
+         return null;
+      }));
+      this._esql.sessions().invalidate(req.login);
+      SessionManager.Session session = this._esql.sessions().current(req.session);
+      if (session == null)
+         throw new HttpError(404, "No such user");
+      return session.profile();
+   }//end updateProfile
+
+   private Object searchCatalog(Request req) throws SQLException {
+      CatalogCache catalog = this._esql.catalog();
+      String q = req.query.get("q");
+      String genre = req.query.get("genre");
+      String sort = req.query.getOrDefault("sort", "asc");
+      double minPrice = parseDouble(req.query.get("minPrice"), 0);
+      double maxPrice = parseDouble(req.query.get("maxPrice"), Double.MAX_VALUE);
+      int limit = Math.min(MAX_CATALOG_LIMIT, (int) parseDouble(req.query.get("limit"), DEFAULT_CATALOG_LIMIT));
+
+      List<Game> games;
+      if (q != null) {
+         // relevance order; the filters narrow the best matches
+         games = catalog.search(q, MAX_CATALOG_LIMIT);
+         games.removeIf(g -> (genre != null && !g.genre().equalsIgnoreCase(genre.trim()))
+            || g.price() < minPrice || g.price() > maxPrice);
+      } else if (genre != null) {
+         games = catalog.byGenre(genre);
+         games.removeIf(g -> g.price() < minPrice || g.price() > maxPrice);
+         games.sort((a, b) -> Double.compare(a.price(), b.price()));
+         if ("desc".equals(sort))
+            Collections.reverse(games);
+      } else if (req.query.containsKey("minPrice") || req.query.containsKey("maxPrice")) {
+         games = catalog.byPriceRange(minPrice, maxPrice);
+         if ("desc".equals(sort))
+            Collections.reverse(games);
+      } else {
+         games = catalog.sortedByPrice("desc".equals(sort));
+      }//end if
+
+      List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+      for (Game game : games.subList(0, Math.min(limit, games.size())))
+         result.add(gameToMap(game));
+      return result;
+   }//end searchCatalog
+
+   private Object viewGame(String gameID) throws SQLException {
+      Game game = this._esql.catalog().get(gameID);
+      if (game == null)
+         throw new HttpError(404, "No game with that ID");
+      return gameToMap(game);
+   }//end viewGame
+
+   private Object updateCatalog(Request req, String gameID) throws Exception {
+      Map<String, Object> body = req.body();
+      Game game = this._esql.updateCatalogEntry(gameID, requireNumber(body, "price").doubleValue(),
+         optionalString(body, "description"));
+      if (game == null)
+         throw new HttpError(404, "No game with that ID");
+      return gameToMap(game);
+   }//end updateCatalog
+
+   private Object placeOrder(Request req) throws Exception {
+      Map<String, Object> body = req.body();
+      Object items = body.get("items");
+      if (!(items instanceof List))
+         throw new HttpError(400, "items must be a list of {gameID, units}");
+      Cart cart = new Cart();
+      for (Object item : (List<?>) items) {
+         if (!(item instanceof Map))
+            throw new HttpError(400, "items must be a list of {gameID, units}");
+         @SuppressWarnings("unchecked")
+         Map<String, Object> line = (Map<String, Object>) item;
+         cart.add(requireString(line, "gameID"), requireInt(line, "units"));
+      }//end for
+      OrderReceipt receipt = this._esql.submitOrder(req.login, cart);
+
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("rentalOrderID", receipt.rentalOrderID());
+      result.put("trackingID", receipt.trackingID());
+      result.put("noOfGames", receipt.noOfGames());
+      result.put("totalPrice", receipt.totalPrice());
+      result.put("orderTimestamp", receipt.orderTimestamp());
+      result.put("dueDate", receipt.dueDate());
+      return result;
+   }//end placeOrder
+
+   private Object viewOrders(Request req) throws SQLException {
+      int limit = (int) parseDouble(req.query.get("limit"), GameRental.ORDER_PAGE_SIZE);
+      if (limit < 1 || limit > 100)
+         throw new HttpError(400, "limit must be between 1 and 100");
+      OrderPage.Key from = decodeCursor(req.query.get("cursor"));
+      boolean older = !"newer".equals(req.query.get("direction"));
+      OrderPage page = this._esql.fetchOrderPage(req.login, from, older, limit);
+
+      List<Map<String, Object>> orders = new ArrayList<Map<String, Object>>();
+      String[] columns = page.columns();
+      if (Boolean.parseBoolean(req.query.get("details"))) {
+         // the whole page in one more round trip, not one per order
+         for (OrderDetail detail : this._esql.fetchOrderDetails(req.login, req.session.isStaff(), page.rentalOrderIDs()))
+            orders.add(detail.toMap());
+      } else {
+         for (Object[] values : page.rows()) {
+            Map<String, Object> order = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < columns.length; ++i)
+               order.put(columns[i], values[i]);
+            orders.add(order);
+         }//end for
+      }//end if
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("orders", orders);
+      result.put("newer", page.hasNewer() ? encodeCursor(page.newest()) : null);
+      result.put("older", page.hasOlder() ? encodeCursor(page.oldest()) : null);
+      return result;
+   }//end viewOrders
+
+   private Object viewOrderInfo(Request req, String rentalOrderID) throws SQLException {
+      OrderDetail detail = this._esql.fetchOrderDetail(req.login, req.session.isStaff(), rentalOrderID);
+      if (detail == null)
+         throw new HttpError(404, "No rental order with that ID");
+      return detail.toMap();
+   }//end viewOrderInfo
+
+   private Object topGamesReport(Request req) throws SQLException {
+      int days = reportParam(req, "days", DEFAULT_REPORT_DAYS);
+      int limit = Math.min(MAX_CATALOG_LIMIT, reportParam(req, "limit", DEFAULT_REPORT_LIMIT));
+      return this._esql.topGamesReport(days, limit);
+   }//end topGamesReport
+
+   private Object genreRevenueReport(Request req) throws SQLException {
+      return this._esql.genreRevenueReport(reportParam(req, "days", DEFAULT_REPORT_DAYS));
+   }//end genreRevenueReport
+
+   private static int reportParam(Request req, String name, int fallback) {
+      int value = (int) parseDouble(req.query.get(name), fallback);
+      if (value <= 0)
+         throw new IllegalArgumentException(name + " must be positive");
+      return value;
+   }//end reportParam
+
+   private Object viewTracking(Request req, String trackingID) throws SQLException {
+      List<Map<String, Object>> rows = this._esql.onShardOfId(trackingID,
+         () -> this._esql.rowMaps(Queries.VIEW_TRACKING_INFO, trackingID, req.login, req.session.isStaff()));
+      if (rows.isEmpty())
+         throw new HttpError(404, "No shipment with that tracking ID");
+      return rows.get(0);
+   }//end viewTracking
+
+   /*
+    * Long poll: answers with the shipment once a change to it commits, or
+    * when the wait runs out, instead of the client polling repeatedly.
+    **/
+   private Object watchTracking(Request req, String trackingID) throws Exception {
+      long waitSeconds = Math.min(MAX_WAIT_SECONDS, (long) parseDouble(req.query.get("wait"), 0));
+      CountDownLatch changed = new CountDownLatch(1);
+      ChangeFeed.Subscription watch = this._esql.changes().subscribe("trackinginfo", change -> {
+         if (change.id == null || change.id.equals(trackingID))
+            changed.countDown();
+      });
+      try{
+         // an unknown shipment is a 404 at once
+         viewTracking(req, trackingID);
+         changed.await(waitSeconds, TimeUnit.SECONDS);
+      }finally{
+         watch.close();
+      }//end try
+      return viewTracking(req, trackingID);
+   }//end watchTracking
+
+   private Object updateTracking(Request req, String trackingID) throws Exception {
+      Map<String, Object> body = req.body();
+      int updated = this._esql.onShardOfId(trackingID, () -> this._esql.executeUpdate(Queries.UPDATE_TRACKING_INFO,
+         requireString(body, "status"), optionalString(body, "currentLocation"), optionalString(body, "courierName"),
+         optionalString(body, "additionalComments"), trackingID));
+      if (updated == 0)
+         throw new HttpError(404, "No shipment with that tracking ID");
+      return viewTracking(req, trackingID);
+   }//end updateTracking
+
+   /*
+    * Queues courier events for batched writing.  The events are applied
+    * within a flush interval; the response only confirms they were queued.
+    **/
+   private Object ingestTracking(Request req) throws Exception {
+      Object events = req.body().get("events");
+      if (!(events instanceof List))
+         throw new HttpError(400, "events must be a list of {trackingID, status, ...}");
+      int queued = 0;
+      for (Object item : (List<?>) events) {
+         if (!(item instanceof Map))
+            throw new HttpError(400, "events must be a list of {trackingID, status, ...}");
+         @SuppressWarnings("unchecked")
+         Map<String, Object> e = (Map<String, Object>) item;
+         String eventTime = optionalString(e, "eventTime");
+         this._tracking.submit(new TrackingEvent(requireString(e, "trackingID"), requireString(e, "status"),
+            optionalString(e, "currentLocation"), optionalString(e, "courierName"),
+            optionalString(e, "additionalComments"),
+            eventTime == null ? new Timestamp(System.currentTimeMillis()) : Timestamp.valueOf(eventTime)));
+         ++queued;
+      }//end for
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("queued", queued);
+      return result;
+   }//end ingestTracking
+
+   private Object recordReturn(Request req, String rentalOrderID) throws SQLException {
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("rentalOrderID", rentalOrderID);
+      result.put("late", this._overdue.recordReturn(rentalOrderID));
+      return result;
+   }//end recordReturn
+
+   private Object updateUser(Request req, String login) throws Exception {
+      Map<String, Object> body = req.body();
+      String role = requireString(body, "role");
+      int numOverDueGames = requireInt(body, "numOverDueGames");
+      int updated = this._esql.onShardOf(login,
+         () -> this._esql.executeUpdate(Queries.UPDATE_USER, role, numOverDueGames, login));
+      if (updated == 0)
+         throw new HttpError(404, "No such user");
+      this._esql.sessions().invalidate(login);
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      result.put("login", login);
+      return result;
+   }//end updateUser
+
+   private static Map<String, Object> gameToMap(Game game) {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      Object[] values = game.values();
+      for (int i = 0; i < Game.COLUMNS.length; ++i)
+         map.put(Game.COLUMNS[i], values[i]);
+      return map;
+   }//end gameToMap
+
+   private static String encodeCursor(OrderPage.Key key) {
+      String raw = key.orderTimestamp() + "|" + key.rentalOrderID();
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+   }//end encodeCursor
+
+   private static OrderPage.Key decodeCursor(String cursor) {
+      if (cursor == null || cursor.isEmpty())
+         return null;
+      try{
+         String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+         int bar = raw.indexOf('|');
+         return new OrderPage.Key(Timestamp.valueOf(raw.substring(0, bar)), raw.substring(bar + 1));
+      }catch (RuntimeException e){
+         throw new HttpError(400, "Invalid cursor");
+      }//end try
+   }//end decodeCursor
+
+   private static String requireString(Map<String, Object> body, String field) {
+      Object value = body.get(field);
+      if (value == null || value.toString().isEmpty())
+         throw new HttpError(400, "Missing field: " + field);
+      return value.toString();
+   }//end requireString
+
+   private static String optionalString(Map<String, Object> body, String field) {
+      Object value = body.get(field);
+      return value == null ? null : value.toString();
+   }//end optionalString
+
+   private static BigDecimal requireNumber(Map<String, Object> body, String field) {
+      Object value = body.get(field);
+      if (!(value instanceof BigDecimal))
+         throw new HttpError(400, "Missing or non-numeric field: " + field);
+      return (BigDecimal) value;
+   }//end requireNumber
+
+   private static int requireInt(Map<String, Object> body, String field) {
+      try{
+         return requireNumber(body, field).intValueExact();
+      }catch (ArithmeticException e){
+         throw new HttpError(400, "Not a whole number in range: " + field);
+      }//end try
+   }//end requireInt
+
+   private static double parseDouble(String value, double fallback) {
+      if (value == null || value.isEmpty())
+         return fallback;
+      return Double.parseDouble(value);
+   }//end parseDouble
+
+   private static Map<String, String> parseQuery(String raw) {
+      Map<String, String> query = new LinkedHashMap<String, String>();
+      if (raw == null || raw.isEmpty())
+         return query;
+      for (String pair : raw.split("&")) {
+         int eq = pair.indexOf('=');
+         String key = eq < 0 ? pair : pair.substring(0, eq);
+         String value = eq < 0 ? "" : pair.substring(eq + 1);
+         query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+      }//end for
+      return query;
+   }//end parseQuery
+
+   private static Map<String, Object> error(String message) {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      map.put("error", message == null ? "Internal error" : message);
+      return map;
+   }//end error
+
+   private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+      byte[] bytes = Json.toJson(body).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+         os.write(bytes);
+      }//end try
+   }//end respond
+
+}//end GameRentalServer
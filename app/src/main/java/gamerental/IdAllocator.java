@@ -0,0 +1,92 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands out unique ids from a PostgreSQL sequence in blocks.
+ * The sequence increments by the block size, so one nextval() reserves a
+ * whole block of ids for this process; other processes reserve disjoint
+ * blocks from the same sequence and can never collide with it.
+ *
+ * Ids within a block are handed out with a single atomic increment, so
+ * threads only meet on the database once per block.  Ids left unused
+ * when the process stops are skipped, never reused.
+ *
+ */
+public class IdAllocator {
+
+   /*
+    * A reserved range of ids.  next may run past end when threads race
+    * for the last ids; those threads fetch the following block.
+    **/
+   private static final class Block {
+      final AtomicLong next;
+      final long end;
+
+      Block(long first, long end) {
+         this.next = new AtomicLong(first);
+         this.end = end;
+      }//end Block
+   }//end Block
+
+   // reserves the next block and reports its size in one round trip.
+   private static final String NEXT_BLOCK =
+      "SELECT nextval(s.seqrelid), s.seqincrement FROM pg_sequence s WHERE s.seqrelid = ?::regclass";
+
+   private final GameRental _esql;
+   private final String _sequence;
+   private final String _prefix;
+   private volatile Block _block = new Block(0, 0);
+
+   /**
+    * Creates a new allocator; no block is reserved until the first id
+    *
+    * @param esql the database holding the sequence
+    * @param sequence the sequence name; its increment is the block size
+    * @param prefix prepended to every id by nextId()
+    */
+   public IdAllocator(GameRental esql, String sequence, String prefix) {
+      this._esql = esql;
+      this._sequence = sequence;
+      this._prefix = prefix;
+   }//end IdAllocator
+
+   /**
+    * @return a unique number from the sequence
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public long next() throws SQLException {
+      while (true) {
+         Block block = this._block;
+         long id = block.next.getAndIncrement();
+         if (id < block.end)
+            return id;
+         synchronized (this) {
+            // only the first thread to find the block empty reserves another
+            if (this._block == block)
+               this._block = reserve();
+         }//end synchronized
+      }//end while
+   }//end next
+
+   /**
+    * @return a unique id: the prefix followed by a number from the sequence
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public String nextId() throws SQLException {
+      return this._prefix + next();
+   }//end nextId
+
+   private Block reserve() throws SQLException {
+      long[] block = new long[2];
+      int found = this._esql.executeQueryForEach(NEXT_BLOCK, row -> {
+         block[0] = row.getLong(1);
+         block[1] = row.getLong(2);
+      }, this._sequence);
+      if (found == 0 || block[1] < 1)
+         throw new SQLException("Sequence " + this._sequence + " must exist and count upwards", "42P01");
+      return new Block(block[0], block[0] + block[1]);
+   }//end reserve
+
+}//end IdAllocator
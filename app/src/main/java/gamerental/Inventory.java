@@ -0,0 +1,233 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class reserves stock for orders without taking a row lock per
+ * order.  Each node leases stock from Catalog.unitsInStock in chunks of
+ * LEASE_CHUNK units into an in-memory counter per title, and orders draw
+ * on that counter with a compare-and-set.  The Catalog row is locked once
+ * per chunk instead of once per order, so a hot title sells at the speed
+ * of an atomic decrement on every core.
+ *
+ * Stock is never oversold: a node only sells units it has taken from the
+ * row, and the row cannot go negative.  Surplus allotments are returned
+ * every RECONCILE_INTERVAL_SECONDS and all of them on close().  If a node
+ * crashes, its unsold allotment (at most a few chunks per title) is lost
+ * rather than risk selling it twice; a restock corrects the count.
+ *
+ * Titles whose unitsInStock is NULL are not stock-tracked and never sell
+ * out.
+ *
+ */
+public class Inventory implements AutoCloseable {
+
+   // units moved from a Catalog row into a node's allotment at a time.
+   static final int LEASE_CHUNK = Integer.getInteger("gamerental.inventory.leaseChunk", 50);
+
+   // seconds between returns of surplus allotments.
+   static final long RECONCILE_INTERVAL_SECONDS = Long.getLong("gamerental.inventory.reconcileSeconds", 5L);
+
+   /*
+    * The node's allotment of one title.  tracked turns false when the
+    * title turns out to have no stock count; such entries are dropped at
+    * the next reconcile so a later restock is noticed.
+    **/
+   private static final class Stock {
+      final AtomicInteger units = new AtomicInteger();
+      volatile boolean tracked = true;
+   }//end Stock
+
+   private final GameRental _esql;
+   private final ConcurrentHashMap<String, Stock> _stock = new ConcurrentHashMap<String, Stock>();
+   private ScheduledExecutorService _reconciler = null;
+
+   /**
+    * Creates a new, empty inventory; stock is leased on first use
+    *
+    * @param esql the database holding the stock counts
+    */
+   public Inventory(GameRental esql) {
+      this._esql = esql;
+   }//end Inventory
+
+   /**
+    * Reserves every line of a cart, or nothing.
+    *
+    * @param cart the games and units to reserve
+    * @throws java.sql.SQLException when a title does not have enough
+    *         units in stock, or stock could not be leased
+    */
+   public void reserve(Cart cart) throws SQLException {
+      startReconciler();
+      List<Map.Entry<String, Integer>> reserved = new ArrayList<Map.Entry<String, Integer>>();
+      try{
+         for (Map.Entry<String, Integer> line : cart.lines().entrySet()) {
+            if (!reserve(line.getKey(), line.getValue()))
+               throw new SQLException("Order not placed: not enough units of " + line.getKey()
+                  + " in stock", "23514");
+            reserved.add(line);
+         }//end for
+      }catch (SQLException | RuntimeException e){
+         for (Map.Entry<String, Integer> line : reserved)
+            release(line.getKey(), line.getValue());
+         throw e;
+      }//end try
+   }//end reserve
+
+   /**
+    * Gives back the units of a cart reserved for an order that was not placed.
+    *
+    * @param cart the games and units to give back
+    */
+   public void release(Cart cart) {
+      for (Map.Entry<String, Integer> line : cart.lines().entrySet())
+         release(line.getKey(), line.getValue());
+   }//end release
+
+   /*
+    * Takes units from the title's allotment, leasing more from the
+    * database when it runs short.  Only one thread per title leases at a
+    * time; the others keep selling from the allotment meanwhile.
+    **/
+   private boolean reserve(String gameID, int units) throws SQLException {
+      Stock stock = this._stock.computeIfAbsent(gameID, id -> new Stock());
+      while (true) {
+         if (!stock.tracked)
+            return true;
+         int have = stock.units.get();
+         if (have >= units) {
+            if (stock.units.compareAndSet(have, have - units))
+               return true;
+            continue;
+         }//end if
+
+         synchronized (stock) {
+            have = stock.units.get();
+            if (!stock.tracked || have >= units)
+               continue;
+            int[] lease = lease(gameID, units - have + LEASE_CHUNK);
+            if (lease == null) {
+               // unknown title: the order statement rejects it
+               this._stock.remove(gameID, stock);
+               return true;
+            }//end if
+            if (lease[0] == 0) {
+               stock.tracked = false;
+               continue;
+            }//end if
+            if (stock.units.addAndGet(lease[1]) < units)
+               return false;
+         }//end synchronized
+      }//end while
+   }//end reserve
+
+   private void release(String gameID, int units) {
+      Stock stock = this._stock.get(gameID);
+      if (stock != null && stock.tracked)
+         stock.units.addAndGet(units);
+   }//end release
+
+   // returns { tracked ? 1 : 0, units taken }, or null for an unknown title.
+   private int[] lease(String gameID, int units) throws SQLException {
+      int[] lease = new int[2];
+      // committed at once: a rolled-back lease would leave units counted twice
+      int rows = this._esql.outsideTransaction(() ->
+         this._esql.executeQueryForEach(Queries.LEASE_STOCK, row -> {
+            lease[0] = Boolean.TRUE.equals(row.getObject(1)) ? 1 : 0;
+            lease[1] = row.getInt(2);
+         }, units, gameID));
+      return rows == 0 ? null : lease;
+   }//end lease
+
+   /**
+    * Adds delivered units to a title's stored stock.  A title that was
+    * not stock-tracked becomes tracked.
+    *
+    * @param gameID the title
+    * @param units the units delivered
+    * @return the units in stock not yet leased to any node, or -1 if
+    *         there is no such title
+    * @throws java.sql.SQLException when the stock could not be updated
+    */
+   public int restock(String gameID, int units) throws SQLException {
+      if (units <= 0)
+         throw new IllegalArgumentException("Restock a positive number of units");
+      int[] inStock = { -1 };
+      this._esql.executeQueryForEach(Queries.RESTOCK, row -> inStock[0] = row.getInt(1), units, gameID);
+      Stock stock = this._stock.get(gameID);
+      if (stock != null && !stock.tracked)
+         this._stock.remove(gameID, stock);
+      return inStock[0];
+   }//end restock
+
+   /*
+    * Returns allotments beyond one chunk to the database and forgets
+    * untracked titles.  The units leave the counter before the database
+    * is told, so they can never be sold and returned at once.
+    **/
+   private void reconcile() {
+      for (Map.Entry<String, Stock> entry : this._stock.entrySet()) {
+         Stock stock = entry.getValue();
+         if (!stock.tracked) {
+            this._stock.remove(entry.getKey(), stock);
+            continue;
+         }//end if
+         int have = stock.units.get();
+         if (have > 2 * LEASE_CHUNK && stock.units.compareAndSet(have, LEASE_CHUNK))
+            giveBack(entry.getKey(), stock, have - LEASE_CHUNK);
+      }//end for
+   }//end reconcile
+
+   private void giveBack(String gameID, Stock stock, int units) {
+      try{
+         this._esql.outsideTransaction(() -> this._esql.executeUpdate(Queries.RETURN_STOCK, units, gameID));
+      }catch (SQLException e){
+         // keep selling them here rather than lose them.
+         stock.units.addAndGet(units);
+         System.err.println("Could not return " + units + " units of " + gameID + " to stock: " + e.getMessage());
+      }//end try
+   }//end giveBack
+
+   private synchronized void startReconciler() {
+      if (this._reconciler != null)
+         return;
+      this._reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "inventory-reconciler");
+         t.setDaemon(true);
+         return t;
+      });
+      this._reconciler.scheduleWithFixedDelay(this::reconcile,
+         RECONCILE_INTERVAL_SECONDS, RECONCILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+   }//end startReconciler
+
+   /**
+    * Returns every unsold allotment to the database.
+    */
+   @Override
+   public synchronized void close() {
+      if (this._reconciler == null)
+         return;
+      this._reconciler.shutdown();
+      try{
+         this._reconciler.awaitTermination(10, TimeUnit.SECONDS);
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+      this._reconciler = null;
+      for (Map.Entry<String, Stock> entry : this._stock.entrySet()) {
+         int units = entry.getValue().units.getAndSet(0);
+         if (units > 0 && entry.getValue().tracked)
+            giveBack(entry.getKey(), entry.getValue(), units);
+      }//end for
+   }//end close
+
+}//end Inventory
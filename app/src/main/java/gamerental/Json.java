@@ -0,0 +1,295 @@
+package gamerental;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a small JSON encoder and decoder for the service mode.
+ * Encoding handles null, booleans, numbers, strings, maps, collections
+ * and arrays; anything else is written as its string form.  Decoding
+ * returns Map, List, String, BigDecimal, Boolean or null, and rejects
+ * documents nested deeper than MAX_DEPTH, so a request body cannot run
+ * the parser out of stack.
+ *
+ */
+public final class Json {
+
+   // the deepest nesting of arrays and objects a document may have.
+   static final int MAX_DEPTH = 64;
+
+   private Json() {
+   }//end Json
+
+   /**
+    * Appends the JSON form of a value
+    *
+    * @param out where the JSON text goes
+    * @param value the value to encode
+    * @return out, for chaining
+    */
+   public static StringBuilder write(StringBuilder out, Object value) {
+      if (value == null) {
+         out.append("null");
+      } else if (value instanceof Boolean) {
+         out.append(value.toString());
+      } else if (value instanceof BigDecimal) {
+         out.append(((BigDecimal) value).toPlainString());
+      } else if (value instanceof Double || value instanceof Float) {
+         double d = ((Number) value).doubleValue();
+         if (Double.isNaN(d) || Double.isInfinite(d))
+            out.append("null");
+         else
+            out.append(value.toString());
+      } else if (value instanceof Number) {
+         out.append(value.toString());
+      } else if (value instanceof Map) {
+         out.append('{');
+         boolean first = true;
+         for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+            if (!first)
+               out.append(',');
+            first = false;
+            quote(out, String.valueOf(e.getKey())).append(':');
+            write(out, e.getValue());
+         }//end for
+         out.append('}');
+      } else if (value instanceof Collection) {
+         out.append('[');
+         boolean first = true;
+         for (Object item : (Collection<?>) value) {
+            if (!first)
+               out.append(',');
+            first = false;
+            write(out, item);
+         }//end for
+         out.append(']');
+      } else if (value instanceof Object[]) {
+         out.append('[');
+         Object[] items = (Object[]) value;
+         for (int i = 0; i < items.length; ++i) {
+            if (i > 0)
+               out.append(',');
+            write(out, items[i]);
+         }//end for
+         out.append(']');
+      } else {
+         quote(out, value.toString());
+      }//end if
+      return out;
+   }//end write
+
+   /**
+    * @param value the value to encode
+    * @return the JSON text of the value
+    */
+   public static String toJson(Object value) {
+      return write(new StringBuilder(), value).toString();
+   }//end toJson
+
+   /**
+    * Appends a JSON string literal
+    *
+    * @param out where the JSON text goes
+    * @param s the string to quote
+    * @return out, for chaining
+    */
+   public static StringBuilder quote(StringBuilder out, String s) {
+      out.append('"');
+      for (int i = 0; i < s.length(); ++i) {
+         char c = s.charAt(i);
+         switch (c) {
+            case '"':  out.append("\\\""); break;
+            case '\\': out.append("\\\\"); break;
+            case '\n': out.append("\\n"); break;
+            case '\r': out.append("\\r"); break;
+            case '\t': out.append("\\t"); break;
+            default:
+               if (c < 0x20)
+                  out.append(String.format("\\u%04x", (int) c));
+               else
+                  out.append(c);
+         }//end switch
+      }//end for
+      return out.append('"');
+   }//end quote
+
+   /**
+    * Parses a JSON document
+    *
+    * @param text the JSON text
+    * @return the decoded value
+    * @throws java.lang.IllegalArgumentException when the text is not valid JSON
+    */
+   public static Object parse(String text) {
+      Parser parser = new Parser(text);
+      Object value = parser.value();
+      parser.skipWhitespace();
+      if (parser._pos != text.length())
+         throw parser.error("Unexpected trailing characters");
+      return value;
+   }//end parse
+
+   /**
+    * A recursive descent parser over one JSON document.
+    */
+   private static final class Parser {
+      private final String _text;
+      private int _pos = 0;
+
+      // arrays and objects open around the current position.
+      private int _depth = 0;
+
+      Parser(String text) {
+         this._text = text;
+      }//end Parser
+
+      Object value() {
+         skipWhitespace();
+         if (this._pos >= this._text.length())
+            throw error("Unexpected end of input");
+         char c = this._text.charAt(this._pos);
+         switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default:  return number();
+         }//end switch
+      }//end value
+
+      private Map<String, Object> object() {
+         Map<String, Object> map = new LinkedHashMap<String, Object>();
+         enter();
+         skipWhitespace();
+         if (peek() == '}') {
+            ++this._pos;
+            --this._depth;
+            return map;
+         }//end if
+         while (true) {
+            skipWhitespace();
+            if (peek() != '"')
+               throw error("Expected a member name");
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            map.put(key, value());
+            skipWhitespace();
+            if (peek() == ',') {
+               ++this._pos;
+               continue;
+            }//end if
+            expect('}');
+            --this._depth;
+            return map;
+         }//end while
+      }//end object
+
+      private List<Object> array() {
+         List<Object> list = new ArrayList<Object>();
+         enter();
+         skipWhitespace();
+         if (peek() == ']') {
+            ++this._pos;
+            --this._depth;
+            return list;
+         }//end if
+         while (true) {
+            list.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+               ++this._pos;
+               continue;
+            }//end if
+            expect(']');
+            --this._depth;
+            return list;
+         }//end while
+      }//end array
+
+      // steps into an array or object.
+      private void enter() {
+         if (++this._depth > MAX_DEPTH)
+            throw error("Nested deeper than " + MAX_DEPTH + " levels");
+         ++this._pos;
+      }//end enter
+
+      private String string() {
+         StringBuilder sb = new StringBuilder();
+         ++this._pos;
+         while (this._pos < this._text.length()) {
+            char c = this._text.charAt(this._pos++);
+            if (c == '"')
+               return sb.toString();
+            if (c != '\\') {
+               sb.append(c);
+               continue;
+            }//end if
+            if (this._pos >= this._text.length())
+               break;
+            char esc = this._text.charAt(this._pos++);
+            switch (esc) {
+               case 'n': sb.append('\n'); break;
+               case 'r': sb.append('\r'); break;
+               case 't': sb.append('\t'); break;
+               case 'b': sb.append('\b'); break;
+               case 'f': sb.append('\f'); break;
+               case 'u':
+                  if (this._pos + 4 > this._text.length())
+                     throw error("Bad unicode escape");
+                  sb.append((char) Integer.parseInt(this._text.substring(this._pos, this._pos + 4), 16));
+                  this._pos += 4;
+                  break;
+               default: sb.append(esc); break;
+            }//end switch
+         }//end while
+         throw error("Unterminated string");
+      }//end string
+
+      private BigDecimal number() {
+         int start = this._pos;
+         while (this._pos < this._text.length() && "+-0123456789.eE".indexOf(this._text.charAt(this._pos)) >= 0)
+            ++this._pos;
+         if (start == this._pos)
+            throw error("Unexpected character");
+         try{
+            return new BigDecimal(this._text.substring(start, this._pos));
+         }catch (NumberFormatException e){
+            throw error("Bad number");
+         }//end try
+      }//end number
+
+      private Object literal(String word, Object value) {
+         if (!this._text.startsWith(word, this._pos))
+            throw error("Unexpected literal");
+         this._pos += word.length();
+         return value;
+      }//end literal
+
+      private char peek() {
+         return this._pos < this._text.length() ? this._text.charAt(this._pos) : '\0';
+      }//end peek
+
+      private void expect(char c) {
+         if (peek() != c)
+            throw error("Expected '" + c + "'");
+         ++this._pos;
+      }//end expect
+
+      void skipWhitespace() {
+         while (this._pos < this._text.length() && Character.isWhitespace(this._text.charAt(this._pos)))
+            ++this._pos;
+      }//end skipWhitespace
+
+      IllegalArgumentException error(String message) {
+         return new IllegalArgumentException(message + " at position " + this._pos);
+      }//end error
+   }//end Parser
+
+}//end Json
@@ -0,0 +1,107 @@
+package gamerental;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a lock-free latency histogram with log-linear buckets in
+ * the style of HdrHistogram.  Every power of two is split into 64 linear
+ * sub-buckets, so any recorded value is reported within 1.6% of its true
+ * value, from nanoseconds up to about 18 minutes, in a fixed 18 KB.
+ *
+ * Recording is a few atomic increments and never allocates, so it is
+ * cheap enough to run on every statement.
+ *
+ */
+public class LatencyHistogram {
+
+   // values below 2^SUB_BITS get a bucket each; above, 2^(SUB_BITS-1) per octave.
+   private static final int SUB_BITS = 7;
+   private static final int HALF = 1 << (SUB_BITS - 1);
+
+   // the largest value tracked exactly; larger values land in the last bucket.
+   static final long MAX_NANOS = (1L << 40) - 1;
+
+   private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final LongAdder _count = new LongAdder();
+   private final LongAdder _sum = new LongAdder();
+   private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+   /**
+    * Records one observation
+    *
+    * @param nanos the latency in nanoseconds
+    */
+   public void record(long nanos) {
+      long v = Math.max(0, Math.min(nanos, MAX_NANOS));
+      this._counts.incrementAndGet(index(v));
+      this._count.increment();
+      this._sum.add(v);
+      this._max.accumulate(v);
+   }//end record
+
+   /**
+    * @return the number of recorded observations
+    */
+   public long count() {
+      return this._count.sum();
+   }//end count
+
+   /**
+    * @return the mean latency in nanoseconds, 0 when empty
+    */
+   public double mean() {
+      long n = count();
+      return n == 0 ? 0 : (double) this._sum.sum() / n;
+   }//end mean
+
+   /**
+    * @return the largest recorded latency in nanoseconds
+    */
+   public long max() {
+      return this._max.get();
+   }//end max
+
+   /**
+    * @param percentile the percentile, between 0 and 100
+    * @return the latency in nanoseconds at or below which that share of
+    *         the observations fall, 0 when empty
+    */
+   public long percentile(double percentile) {
+      long total = count();
+      if (total == 0)
+         return 0;
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+         seen += this._counts.get(i);
+         if (seen >= rank)
+            return Math.min(highestValue(i), max());
+      }//end for
+      return max();
+   }//end percentile
+
+   /*
+    * Values below 2^SUB_BITS map to themselves.  Above, the shift drops
+    * all but the top SUB_BITS bits, which select one of the HALF upper
+    * sub-buckets of the value's octave.
+    **/
+   static int index(long v) {
+      if (v < (1L << SUB_BITS))
+         return (int) v;
+      int shift = 64 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+      return shift * HALF + (int) (v >>> shift);
+   }//end index
+
+   static long highestValue(int index) {
+      if (index < (1 << SUB_BITS))
+         return index;
+      int shift = index / HALF - 1;
+      long lowest = (long) (index - shift * HALF) << shift;
+      return lowest + (1L << shift) - 1;
+   }//end highestValue
+
+}//end LatencyHistogram
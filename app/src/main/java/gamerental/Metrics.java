@@ -0,0 +1,286 @@
+package gamerental;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class records where time goes: a latency histogram, row count and
+ * error count for every menu or service operation, for every statement
+ * shape and for waits on the connection pool.
+ *
+ * Statements are grouped by their shape, the SQL text with literals
+ * replaced by '?', so bound values never reach the statistics or the
+ * slow-query log.  Rows and errors of the statements a thread runs are
+ * also charged to the operation it is timing.
+ *
+ * Every series is registered with the platform MBean server as
+ * gamerental:type=&lt;kind&gt;,name=&lt;name&gt;.
+ *
+ */
+public class Metrics {
+
+   // statements at least this slow are logged; a negative value disables the log.
+   static final long SLOW_QUERY_MILLIS = Long.getLong("gamerental.slowQueryMillis", 200L);
+
+   // the kinds of series.
+   static final String OPERATION = "operation";
+   static final String STATEMENT = "statement";
+   static final String POOL = "pool";
+
+   // SQL texts whose shape is remembered; beyond this shapes are recomputed.
+   private static final int MAX_CACHED_SQL = 10000;
+
+   // a quoted string literal, or a number that is not part of an identifier.
+   private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|(?<![\\w$])\\d+(?:\\.\\d+)?(?![\\w$])");
+   private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+   /**
+    * Work timed as one operation.
+    */
+   public interface Timed<T> {
+      T run() throws Exception;
+   }//end Timed
+
+   /*
+    * The operation the current thread is timing.  Time spent waiting for
+    * the user is excluded from its latency.
+    **/
+   private static final class Context {
+      final Context outer;
+      long rows = 0;
+      long errors = 0;
+      long excludedNanos = 0;
+
+      Context(Context outer) {
+         this.outer = outer;
+      }//end Context
+   }//end Context
+
+   private static final ThreadLocal<Context> CURRENT = new ThreadLocal<Context>();
+
+   private final ConcurrentHashMap<String, OperationStats> _operations = new ConcurrentHashMap<String, OperationStats>();
+   private final ConcurrentHashMap<String, OperationStats> _statements = new ConcurrentHashMap<String, OperationStats>();
+   private final ConcurrentHashMap<String, OperationStats> _pool = new ConcurrentHashMap<String, OperationStats>();
+
+   // SQL text to the statistics of its shape.
+   private final ConcurrentHashMap<String, OperationStats> _bySql = new ConcurrentHashMap<String, OperationStats>();
+
+   private final List<ObjectName> _registered = new ArrayList<ObjectName>();
+
+   /**
+    * @param sql a SQL text
+    * @return the text with literals replaced by '?' and whitespace collapsed
+    */
+   static String shape(String sql) {
+      String shape = LITERAL.matcher(sql).replaceAll("?");
+      return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+   }//end shape
+
+   /**
+    * Times a piece of work as one operation.
+    *
+    * @param operation the operation name
+    * @param work the work
+    */
+   public void time(String operation, Runnable work) {
+      Context ctx = begin();
+      long start = System.nanoTime();
+      boolean failed = true;
+      try{
+         work.run();
+         failed = false;
+      }finally{
+         end(operation, ctx, start, failed);
+      }//end try
+   }//end time
+
+   /**
+    * Times a piece of work that returns a value as one operation.
+    *
+    * @param operation the operation name
+    * @param work the work
+    * @return the result of the work
+    * @throws java.lang.Exception what the work throws
+    */
+   public <T> T call(String operation, Timed<T> work) throws Exception {
+      Context ctx = begin();
+      long start = System.nanoTime();
+      boolean failed = true;
+      try{
+         T result = work.run();
+         failed = false;
+         return result;
+      }finally{
+         end(operation, ctx, start, failed);
+      }//end try
+   }//end call
+
+   private static Context begin() {
+      Context ctx = new Context(CURRENT.get());
+      CURRENT.set(ctx);
+      return ctx;
+   }//end begin
+
+   private void end(String operation, Context ctx, long start, boolean failed) {
+      long nanos = System.nanoTime() - start - ctx.excludedNanos;
+      if (ctx.outer == null) {
+         CURRENT.remove();
+      } else {
+         CURRENT.set(ctx.outer);
+         ctx.outer.excludedNanos += ctx.excludedNanos;
+      }//end if
+      series(this._operations, OPERATION, operation).record(nanos, ctx.rows, failed || ctx.errors > 0);
+   }//end end
+
+   /**
+    * Leaves time out of the operation the current thread is timing, e.g.
+    * while it waits for keyboard input.
+    *
+    * @param nanos the time to leave out
+    */
+   static void exclude(long nanos) {
+      Context ctx = CURRENT.get();
+      if (ctx != null)
+         ctx.excludedNanos += nanos;
+   }//end exclude
+
+   /**
+    * Records one statement execution, and logs it if it was slow.
+    *
+    * @param sql the SQL text
+    * @param nanos how long it ran
+    * @param rows the rows it returned or changed
+    * @param failed whether it ended with an error
+    */
+   public void recordStatement(String sql, long nanos, long rows, boolean failed) {
+      OperationStats stats = this._bySql.get(sql);
+      if (stats == null) {
+         stats = series(this._statements, STATEMENT, shape(sql));
+         if (this._bySql.size() < MAX_CACHED_SQL)
+            this._bySql.put(sql, stats);
+      }//end if
+      stats.record(nanos, rows, failed);
+
+      Context ctx = CURRENT.get();
+      if (ctx != null) {
+         ctx.rows += rows;
+         if (failed)
+            ++ctx.errors;
+      }//end if
+
+      if (SLOW_QUERY_MILLIS >= 0 && nanos >= SLOW_QUERY_MILLIS * 1000000L)
+         System.err.printf("Slow query: %.1f ms, %d row(s)%s: %s%n", nanos / 1e6, rows,
+            failed ? ", failed" : "", stats.getName());
+   }//end recordStatement
+
+   /**
+    * Records one wait for a pooled connection.
+    *
+    * @param nanos how long the wait took
+    * @param failed whether it timed out
+    */
+   public void recordBorrow(long nanos, boolean failed) {
+      series(this._pool, POOL, "borrow").record(nanos, 0, failed);
+   }//end recordBorrow
+
+   private OperationStats series(ConcurrentHashMap<String, OperationStats> map, String kind, String name) {
+      OperationStats stats = map.get(name);
+      if (stats != null)
+         return stats;
+      OperationStats created = new OperationStats(kind, name);
+      stats = map.putIfAbsent(name, created);
+      if (stats != null)
+         return stats;
+      register(created);
+      return created;
+   }//end series
+
+   private void register(OperationStats stats) {
+      try{
+         ObjectName name = new ObjectName("gamerental:type=" + stats.getKind() + ",name=" + ObjectName.quote(stats.getName()));
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         server.registerMBean(stats, name);
+         synchronized (this._registered) {
+            this._registered.add(name);
+         }//end synchronized
+      }catch (JMException e){
+         // another instance registered the name first; still recorded here.
+      }//end try
+   }//end register
+
+   /**
+    * @return every series, grouped by kind and sorted by name
+    */
+   public Map<String, List<Map<String, Object>>> snapshot() {
+      Map<String, List<Map<String, Object>>> snapshot = new LinkedHashMap<String, List<Map<String, Object>>>();
+      snapshot.put(OPERATION, toMaps(this._operations.values()));
+      snapshot.put(POOL, toMaps(this._pool.values()));
+      snapshot.put(STATEMENT, toMaps(this._statements.values()));
+      return snapshot;
+   }//end snapshot
+
+   private static List<Map<String, Object>> toMaps(Collection<OperationStats> series) {
+      List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>();
+      for (OperationStats stats : sorted(series))
+         maps.add(stats.toMap());
+      return maps;
+   }//end toMaps
+
+   private static Collection<OperationStats> sorted(Collection<OperationStats> series) {
+      TreeMap<String, OperationStats> byName = new TreeMap<String, OperationStats>();
+      for (OperationStats stats : series)
+         byName.put(stats.getName(), stats);
+      return byName.values();
+   }//end sorted
+
+   /**
+    * Prints every series as a table.
+    *
+    * @param out where to print
+    */
+   public void dump(PrintStream out) {
+      String format = "%-10s %-48s %8s %6s %9s %9s %9s %9s %9s %9s%n";
+      out.printf(format, "kind", "name", "count", "errors", "rows", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+      for (Collection<OperationStats> series : List.of(this._operations.values(), this._pool.values(), this._statements.values()))
+         for (OperationStats s : sorted(series)) {
+            String name = s.getName().length() > 48 ? s.getName().substring(0, 45) + "..." : s.getName();
+            out.printf(format, s.getKind(), name, s.getCount(), s.getErrors(), s.getRows(),
+               millis(s.getMeanMillis()), millis(s.getP50Millis()), millis(s.getP99Millis()),
+               millis(s.getP999Millis()), millis(s.getMaxMillis()));
+         }//end for
+      out.flush();
+   }//end dump
+
+   private static String millis(double ms) {
+      return String.format("%.3f", ms);
+   }//end millis
+
+   /**
+    * Unregisters every series from JMX.
+    */
+   public void close() {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      synchronized (this._registered) {
+         for (ObjectName name : this._registered) {
+            try{
+               server.unregisterMBean(name);
+            }catch (JMException e){
+               // ignored.
+            }//end try
+         }//end for
+         this._registered.clear();
+      }//end synchronized
+   }//end close
+
+}//end Metrics
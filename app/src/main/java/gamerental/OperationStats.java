@@ -0,0 +1,119 @@
+package gamerental;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class accumulates the latency histogram, row count and error
+ * count of one operation, statement shape or pool activity.  It is safe
+ * to record from any number of threads.
+ *
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+   private static final double NANOS_PER_MILLI = 1e6;
+
+   private final String _kind;
+   private final String _name;
+   private final LatencyHistogram _latency = new LatencyHistogram();
+   private final LongAdder _errors = new LongAdder();
+   private final LongAdder _rows = new LongAdder();
+
+   /**
+    * Creates new, empty statistics
+    *
+    * @param kind operation, statement or pool
+    * @param name what is measured
+    */
+   public OperationStats(String kind, String name) {
+      this._kind = kind;
+      this._name = name;
+   }//end OperationStats
+
+   /**
+    * Records one execution
+    *
+    * @param nanos how long it took
+    * @param rows the rows it returned or changed
+    * @param failed whether it ended with an error
+    */
+   public void record(long nanos, long rows, boolean failed) {
+      this._latency.record(nanos);
+      if (rows > 0)
+         this._rows.add(rows);
+      if (failed)
+         this._errors.increment();
+   }//end record
+
+   /**
+    * @return the latency histogram
+    */
+   public LatencyHistogram latency() {
+      return this._latency;
+   }//end latency
+
+   public String getKind() {
+      return this._kind;
+   }//end getKind
+
+   public String getName() {
+      return this._name;
+   }//end getName
+
+   public long getCount() {
+      return this._latency.count();
+   }//end getCount
+
+   public long getErrors() {
+      return this._errors.sum();
+   }//end getErrors
+
+   public long getRows() {
+      return this._rows.sum();
+   }//end getRows
+
+   public double getMeanMillis() {
+      return this._latency.mean() / NANOS_PER_MILLI;
+   }//end getMeanMillis
+
+   public double getP50Millis() {
+      return this._latency.percentile(50) / NANOS_PER_MILLI;
+   }//end getP50Millis
+
+   public double getP90Millis() {
+      return this._latency.percentile(90) / NANOS_PER_MILLI;
+   }//end getP90Millis
+
+   public double getP99Millis() {
+      return this._latency.percentile(99) / NANOS_PER_MILLI;
+   }//end getP99Millis
+
+   public double getP999Millis() {
+      return this._latency.percentile(99.9) / NANOS_PER_MILLI;
+   }//end getP999Millis
+
+   public double getMaxMillis() {
+      return this._latency.max() / NANOS_PER_MILLI;
+   }//end getMaxMillis
+
+   /**
+    * @return the statistics as a map, for JSON output
+    */
+   public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      map.put("kind", this._kind);
+      map.put("name", this._name);
+      map.put("count", getCount());
+      map.put("errors", getErrors());
+      map.put("rows", getRows());
+      map.put("meanMillis", getMeanMillis());
+      map.put("p50Millis", getP50Millis());
+      map.put("p90Millis", getP90Millis());
+      map.put("p99Millis", getP99Millis());
+      map.put("p999Millis", getP999Millis());
+      map.put("maxMillis", getMaxMillis());
+      return map;
+   }//end toMap
+
+}//end OperationStats
@@ -0,0 +1,32 @@
+package gamerental;
+
+/**
+ * The JMX view of the statistics of one operation, statement shape or
+ * pool activity.  Latencies are in milliseconds.
+ *
+ */
+public interface OperationStatsMXBean {
+
+   String getKind();
+
+   String getName();
+
+   long getCount();
+
+   long getErrors();
+
+   long getRows();
+
+   double getMeanMillis();
+
+   double getP50Millis();
+
+   double getP90Millis();
+
+   double getP99Millis();
+
+   double getP999Millis();
+
+   double getMaxMillis();
+
+}//end OperationStatsMXBean
@@ -0,0 +1,159 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is everything about one rental order: its RentalOrder row,
+ * its games with their catalog titles and prices, and its latest
+ * TrackingInfo row.  Details are read by Queries.ORDER_DETAILS, one row
+ * per game, and put back together by a Collector.
+ *
+ */
+public class OrderDetail {
+
+   // the columns of each part, as named in the ORDER_DETAILS result.
+   public static final String[] ORDER_COLUMNS = {
+      "rentalorderid", "login", "noofgames", "totalprice", "ordertimestamp", "duedate", "returneddate"
+   };
+   public static final String[] LINE_COLUMNS = {
+      "gameid", "gamename", "price", "unitsordered"
+   };
+   public static final String[] TRACKING_COLUMNS = {
+      "trackingid", "status", "currentlocation", "couriername", "lastupdatedate", "additionalcomments"
+   };
+
+   // newest order first, ties by id, as ORDER_DETAILS sorts them.
+   static final Comparator<OrderDetail> NEWEST_FIRST = Comparator
+      .comparing(OrderDetail::orderTimestamp, Comparator.nullsLast(Comparator.<java.util.Date>reverseOrder()))
+      .thenComparing(OrderDetail::rentalOrderID, Comparator.reverseOrder());
+
+   private final Object[] _order;
+   private final List<Object[]> _lines = new ArrayList<Object[]>();
+   private final Object[] _tracking;
+
+   private OrderDetail(Object[] order, Object[] tracking) {
+      this._order = order;
+      this._tracking = tracking;
+   }//end OrderDetail
+
+   /**
+    * Gathers the rows of an ORDER_DETAILS query into one OrderDetail per
+    * order, in the order the query returned them.
+    */
+   static final class Collector implements RowHandler {
+      private final LinkedHashMap<String, OrderDetail> _details = new LinkedHashMap<String, OrderDetail>();
+
+      @Override
+      public void handle(Row row) throws SQLException {
+         String rentalOrderID = row.getString("rentalorderid");
+         OrderDetail detail = this._details.get(rentalOrderID);
+         if (detail == null) {
+            Object[] tracking = row.getObject("trackingid") == null ? null : values(row, TRACKING_COLUMNS);
+            detail = new OrderDetail(values(row, ORDER_COLUMNS), tracking);
+            this._details.put(rentalOrderID, detail);
+         }//end if
+         // an order with no games still has one row, with a null game
+         if (row.getObject("gameid") != null)
+            detail._lines.add(values(row, LINE_COLUMNS));
+      }//end handle
+
+      /**
+       * @return the orders read, in query order
+       */
+      List<OrderDetail> details() {
+         return new ArrayList<OrderDetail>(this._details.values());
+      }//end details
+   }//end Collector
+
+   private static Object[] values(Row row, String[] columns) throws SQLException {
+      Object[] values = new Object[columns.length];
+      for (int i = 0; i < columns.length; ++i)
+         values[i] = row.getObject(columns[i]);
+      return values;
+   }//end values
+
+   public String rentalOrderID() {
+      return (String) this._order[0];
+   }//end rentalOrderID
+
+   /**
+    * @return when the order was placed
+    */
+   public java.util.Date orderTimestamp() {
+      return (java.util.Date) this._order[4];
+   }//end orderTimestamp
+
+   /**
+    * @return the RentalOrder values, in ORDER_COLUMNS order
+    */
+   public Object[] order() {
+      return this._order.clone();
+   }//end order
+
+   /**
+    * @return the games of the order, each in LINE_COLUMNS order
+    */
+   public List<Object[]> lines() {
+      return Collections.unmodifiableList(this._lines);
+   }//end lines
+
+   /**
+    * @return the latest tracking values in TRACKING_COLUMNS order, or
+    *         null if the order has no shipment
+    */
+   public Object[] tracking() {
+      return this._tracking == null ? null : this._tracking.clone();
+   }//end tracking
+
+   /**
+    * Prints the order, its games and its shipment as three tables.
+    */
+   public void print() {
+      ResultPrinter printer = new ResultPrinter();
+      printer.header(ORDER_COLUMNS);
+      printer.row(this._order);
+      printer.flush();
+      if (!this._lines.isEmpty()) {
+         printer = new ResultPrinter();
+         printer.header(LINE_COLUMNS);
+         for (Object[] line : this._lines)
+            printer.row(line);
+         printer.flush();
+      }//end if
+      if (this._tracking == null) {
+         System.out.println("No shipment for this order.");
+      } else {
+         printer = new ResultPrinter();
+         printer.header(TRACKING_COLUMNS);
+         printer.row(this._tracking);
+         printer.flush();
+      }//end if
+   }//end print
+
+   /**
+    * @return the order as nested maps, for JSON
+    */
+   public Map<String, Object> toMap() {
+      Map<String, Object> map = toMap(ORDER_COLUMNS, this._order);
+      List<Map<String, Object>> games = new ArrayList<Map<String, Object>>();
+      for (Object[] line : this._lines)
+         games.add(toMap(LINE_COLUMNS, line));
+      map.put("games", games);
+      map.put("tracking", this._tracking == null ? null : toMap(TRACKING_COLUMNS, this._tracking));
+      return map;
+   }//end toMap
+
+   private static Map<String, Object> toMap(String[] columns, Object[] values) {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      for (int i = 0; i < columns.length; ++i)
+         map.put(columns[i], values[i]);
+      return map;
+   }//end toMap
+
+}//end OrderDetail
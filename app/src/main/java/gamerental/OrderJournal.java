@@ -0,0 +1,788 @@
+package gamerental;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a write-ahead journal in front of order placement.  An
+ * order is appended to a memory-mapped file on local disk and
+ * acknowledged once the append is forced to disk; a drainer thread then
+ * writes the journaled orders to their shards, DRAIN_BATCH orders per
+ * statement.  Order latency therefore does not depend on the database,
+ * and a burst of orders, or a database that is briefly unreachable, is
+ * absorbed by the journal instead of failing orders.
+ *
+ * Appends are group-committed: one flusher thread forces everything
+ * appended since its previous force, so concurrent orders share one
+ * force instead of paying for one each.
+ *
+ * The journal is a directory of segment files of SEGMENT_BYTES each.  A
+ * record is its length, the CRC32 of its payload and the payload; a zero
+ * length ends a segment.  A segment is deleted once every order in it is
+ * in the database.  On open, every remaining record is replayed: the
+ * drain statement skips orders already written, so an order written
+ * before a crash is never written twice.  A torn record at the end of
+ * the last segment was never acknowledged and is dropped.
+ *
+ * Orders are read back from the database only once drained, normally
+ * within milliseconds.  Only one process may use a journal directory.
+ *
+ */
+public class OrderJournal implements AutoCloseable {
+
+   // size of each segment file.
+   static final int SEGMENT_BYTES = Integer.getInteger("gamerental.journal.segmentBytes", 64 << 20);
+
+   // orders written to the database per drain statement.
+   static final int DRAIN_BATCH = Integer.getInteger("gamerental.journal.drainBatch", 500);
+
+   // wait before retrying a drain that failed, e.g. while the database is down.
+   static final long RETRY_MILLIS = Long.getLong("gamerental.journal.retryMillis", 1000L);
+
+   // how long close() waits for the drainer to catch up.
+   static final long CLOSE_TIMEOUT_MILLIS = Long.getLong("gamerental.journal.closeTimeoutMillis", 30000L);
+
+   // drain rounds an order failing a constraint is retried before it is set aside.
+   static final int REJECT_ATTEMPTS = Integer.getInteger("gamerental.journal.rejectAttempts", 5);
+
+   // length and CRC32 in front of every payload.
+   static final int HEADER_BYTES = 8;
+
+   // the file in the journal directory that orders the database rejects are kept in.
+   static final String DEAD_LETTER_FILE = "rejected.tsv";
+
+   /**
+    * One order as journaled: what the customer was quoted, so the
+    * database gets exactly the order that was acknowledged.
+    */
+   static final class Entry {
+      final String rentalOrderID;
+      final String trackingID;
+      final String login;
+      final long orderMillis;
+      final String[] gameIDs;
+      final int[] units;
+      final BigDecimal[] prices;
+
+      Entry(String rentalOrderID, String trackingID, String login, long orderMillis,
+            String[] gameIDs, int[] units, BigDecimal[] prices) {
+         this.rentalOrderID = rentalOrderID;
+         this.trackingID = trackingID;
+         this.login = login;
+         this.orderMillis = orderMillis;
+         this.gameIDs = gameIDs;
+         this.units = units;
+         this.prices = prices;
+      }//end Entry
+
+      int noOfGames() {
+         int games = 0;
+         for (int u : this.units)
+            games += u;
+         return games;
+      }//end noOfGames
+
+      BigDecimal totalPrice() {
+         BigDecimal total = BigDecimal.ZERO;
+         for (int i = 0; i < this.units.length; ++i)
+            total = total.add(this.prices[i].multiply(BigDecimal.valueOf(this.units[i])));
+         return total;
+      }//end totalPrice
+
+      /**
+       * @return the games and units the order reserved
+       */
+      Cart cart() {
+         Cart cart = new Cart();
+         for (int i = 0; i < this.gameIDs.length; ++i)
+            cart.add(this.gameIDs[i], this.units[i]);
+         return cart;
+      }//end cart
+
+      /**
+       * @return the receipt the customer is given for this order
+       */
+      OrderReceipt receipt() {
+         // the same wall times DRAIN_ORDERS stores: the session time zone is the JVM's
+         Instant instant = Instant.ofEpochMilli(this.orderMillis);
+         LocalDateTime ordered = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+         return new OrderReceipt(this.rentalOrderID, this.trackingID, noOfGames(), totalPrice().doubleValue(),
+            Timestamp.valueOf(ordered).toString(), Timestamp.valueOf(ordered.plusDays(7)).toString());
+      }//end receipt
+
+      byte[] encode() {
+         try{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(this.rentalOrderID);
+            out.writeUTF(this.trackingID);
+            out.writeUTF(this.login);
+            out.writeLong(this.orderMillis);
+            out.writeInt(this.gameIDs.length);
+            for (int i = 0; i < this.gameIDs.length; ++i) {
+               out.writeUTF(this.gameIDs[i]);
+               out.writeInt(this.units[i]);
+               out.writeUTF(this.prices[i].toPlainString());
+            }//end for
+            out.flush();
+            return bytes.toByteArray();
+         }catch (IOException e){
+            // a ByteArrayOutputStream does not fail.
+            throw new UncheckedIOException(e);
+         }//end try
+      }//end encode
+
+      static Entry decode(byte[] payload) throws IOException {
+         DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+         String rentalOrderID = in.readUTF();
+         String trackingID = in.readUTF();
+         String login = in.readUTF();
+         long orderMillis = in.readLong();
+         int lines = in.readInt();
+         String[] gameIDs = new String[lines];
+         int[] units = new int[lines];
+         BigDecimal[] prices = new BigDecimal[lines];
+         for (int i = 0; i < lines; ++i) {
+            gameIDs[i] = in.readUTF();
+            units[i] = in.readInt();
+            prices[i] = new BigDecimal(in.readUTF());
+         }//end for
+         return new Entry(rentalOrderID, trackingID, login, orderMillis, gameIDs, units, prices);
+      }//end decode
+
+      @Override
+      public String toString() {
+         StringBuilder games = new StringBuilder();
+         for (int i = 0; i < this.gameIDs.length; ++i)
+            games.append(i == 0 ? "" : ", ").append(this.units[i]).append(" x ").append(this.gameIDs[i]);
+         return this.rentalOrderID + " of " + this.login + " (" + games + ")";
+      }//end toString
+   }//end Entry
+
+   /**
+    * Where drained orders go.  Only the drainer thread calls it.
+    */
+   interface Sink {
+      // the shard an order is written to.
+      int shardOf(Entry order);
+
+      // writes orders to one shard, skipping those already there.
+      void write(int shard, List<Entry> orders) throws SQLException;
+
+      // gives back what a rejected order held.
+      void reject(Entry order);
+   }//end Sink
+
+   /*
+    * One segment file, mapped whole.  Its records start at offset 0.
+    **/
+   private static final class Segment {
+      final long index;
+      final Path path;
+      final FileChannel channel;
+      final MappedByteBuffer buffer;
+
+      Segment(long index, Path path, int size) throws IOException {
+         this.index = index;
+         this.path = path;
+         this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+         this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }//end Segment
+   }//end Segment
+
+   private final Sink _sink;
+   private final Path _directory;
+   private final int _segmentBytes;
+   private final long _retryMillis;
+   private final long _closeTimeoutMillis;
+   private final FileChannel _lockFile;
+   private final FileLock _lock;
+
+   // guards everything below; appenders wait on _forced, the flusher on _appended.
+   private final ReentrantLock _mutex = new ReentrantLock();
+   private final Condition _appended = this._mutex.newCondition();
+   private final Condition _forced = this._mutex.newCondition();
+
+   // every segment not yet drained, oldest first; the last is appended to.
+   private final TreeMap<Long, Segment> _segments = new TreeMap<Long, Segment>();
+
+   /*
+    * Positions in the journal as a whole: segment index * segment size
+    * plus the offset in the segment.  drained <= durable <= written.
+    **/
+   private long _written;
+   private long _durable;
+   private long _drained;
+   private IOException _failure = null;
+   private boolean _closed = false;
+
+   private final LongAdder _appends = new LongAdder();
+   private final LongAdder _forces = new LongAdder();
+   private final LongAdder _drainedOrders = new LongAdder();
+   private final LongAdder _rejected = new LongAdder();
+
+   // constraint failures so far of the orders still being retried, by order id; drainer only.
+   private final Map<String, Integer> _attempts = new HashMap<String, Integer>();
+
+   // ids of the orders in DEAD_LETTER_FILE, which replay skips; drainer only after open.
+   private final Set<String> _setAside = new HashSet<String>();
+   private final long _replayed;
+
+   private final Thread _flusher;
+   private final Thread _drainer;
+
+   /**
+    * Opens the journal, finding the orders that were journaled but not yet
+    * drained, and starts writing them to the database
+    *
+    * @param esql the database orders are drained to
+    * @param directory where the segment files are kept; created if missing
+    * @throws java.io.IOException when the journal cannot be opened, or
+    *         another process is using it
+    */
+   public OrderJournal(GameRental esql, Path directory) throws IOException {
+      this(directory, new DatabaseSink(esql), SEGMENT_BYTES, RETRY_MILLIS, CLOSE_TIMEOUT_MILLIS);
+   }//end OrderJournal
+
+   /*
+    * Opens a journal draining to any sink, with its own segment size and
+    * timings in place of the system properties.
+    **/
+   OrderJournal(Path directory, Sink sink, int segmentBytes, long retryMillis, long closeTimeoutMillis)
+         throws IOException {
+      this._sink = sink;
+      this._directory = directory;
+      this._segmentBytes = segmentBytes;
+      this._retryMillis = retryMillis;
+      this._closeTimeoutMillis = closeTimeoutMillis;
+      Files.createDirectories(directory);
+      this._lockFile = FileChannel.open(directory.resolve("journal.lock"), StandardOpenOption.CREATE,
+         StandardOpenOption.WRITE);
+      this._lock = this._lockFile.tryLock();
+      if (this._lock == null) {
+         this._lockFile.close();
+         throw new IOException("The order journal " + directory + " is in use by another process");
+      }//end if
+
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "orders-*.journal")) {
+         for (Path file : files) {
+            String name = file.getFileName().toString();
+            long index = Long.parseLong(name.substring("orders-".length(), name.length() - ".journal".length()));
+            this._segments.put(index, new Segment(index, file, segmentBytes));
+         }//end for
+      }//end try
+      if (this._segments.isEmpty())
+         this._segments.put(0L, openSegment(0));
+
+      long replayed = 0;
+      for (Segment segment : this._segments.values())
+         replayed += recover(segment, segment == this._segments.lastEntry().getValue());
+      this._replayed = replayed;
+      readSetAside();
+      this._drained = this._segments.firstKey() * this._segmentBytes;
+      this._durable = this._written;
+      if (replayed > 0)
+         System.out.println("Replaying " + replayed + " journaled order(s) from " + directory);
+
+      this._flusher = new Thread(this::flushLoop, "order-journal-flusher");
+      this._flusher.setDaemon(true);
+      this._flusher.start();
+      this._drainer = new Thread(this::drainLoop, "order-journal-drainer");
+      this._drainer.setDaemon(true);
+      this._drainer.start();
+   }//end OrderJournal
+
+   private Segment openSegment(long index) throws IOException {
+      return new Segment(index, this._directory.resolve(String.format("orders-%016d.journal", index)),
+         this._segmentBytes);
+   }//end openSegment
+
+   /*
+    * Reads the ids of the orders already set aside, so an order rejected
+    * before a restart is not rejected, and its stock released, again.
+    **/
+   private void readSetAside() throws IOException {
+      Path file = this._directory.resolve(DEAD_LETTER_FILE);
+      if (!Files.exists(file))
+         return;
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+         String[] fields = line.split("\t", 3);
+         if (fields.length > 1)
+            this._setAside.add(fields[1]);
+      }//end for
+   }//end readSetAside
+
+   /*
+    * Counts the intact records of a segment.  For the last segment, also
+    * sets where appending resumes and clears whatever a crash left
+    * behind it, so a later append cannot run into it.
+    **/
+   private long recover(Segment segment, boolean last) throws IOException {
+      long records = 0;
+      int offset = 0;
+      int length;
+      while ((length = recordLength(segment, offset)) > 0) {
+         ++records;
+         offset += HEADER_BYTES + length;
+      }//end while
+      if (last) {
+         this._written = segment.index * this._segmentBytes + offset;
+         int end = this._segmentBytes;
+         while (end > offset && segment.buffer.get(end - 1) == 0)
+            --end;
+         if (end > offset) {
+            for (int i = offset; i < end; ++i)
+               segment.buffer.put(i, (byte) 0);
+            segment.buffer.force(offset, end - offset);
+            System.err.println("Dropped a torn record at the end of " + segment.path);
+         }//end if
+      }//end if
+      return records;
+   }//end recover
+
+   /*
+    * The payload length of an intact record at offset, or 0 at the end of
+    * the segment's records.
+    **/
+   private static int recordLength(Segment segment, int offset) {
+      int size = segment.buffer.capacity();
+      if (offset > size - HEADER_BYTES)
+         return 0;
+      int length = segment.buffer.getInt(offset);
+      if (length <= 0 || length > size - HEADER_BYTES - offset)
+         return 0;
+      byte[] payload = new byte[length];
+      segment.buffer.get(offset + HEADER_BYTES, payload);
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      return (int) crc.getValue() == segment.buffer.getInt(offset + 4) ? length : 0;
+   }//end recordLength
+
+   /**
+    * Appends an order and waits until it is on disk.
+    *
+    * @param entry the order
+    * @throws java.io.IOException when the journal could not be written;
+    *         the order was not taken
+    */
+   void append(Entry entry) throws IOException {
+      byte[] payload = entry.encode();
+      int size = HEADER_BYTES + payload.length;
+      if (size > this._segmentBytes)
+         throw new IOException("Order " + entry.rentalOrderID + " is too large for the journal");
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+
+      this._mutex.lock();
+      try{
+         if (this._closed)
+            throw new IOException("The order journal is closed");
+         if (this._failure != null)
+            throw this._failure;
+         Segment segment = this._segments.lastEntry().getValue();
+         int offset = (int) (this._written - segment.index * this._segmentBytes);
+         if (offset + size > this._segmentBytes) {
+            // the zeros after the last record end the full segment
+            segment = openSegment(segment.index + 1);
+            this._segments.put(segment.index, segment);
+            offset = 0;
+         }//end if
+         // the length goes last, so a record is never seen before it is whole
+         segment.buffer.putInt(offset + 4, (int) crc.getValue());
+         segment.buffer.put(offset + HEADER_BYTES, payload);
+         segment.buffer.putInt(offset, payload.length);
+         this._written = segment.index * this._segmentBytes + offset + size;
+         this._appends.increment();
+
+         long target = this._written;
+         this._appended.signal();
+         while (this._durable < target && this._failure == null)
+            this._forced.awaitUninterruptibly();
+         if (this._durable < target)
+            throw this._failure;
+      }finally{
+         this._mutex.unlock();
+      }//end try
+   }//end append
+
+   /*
+    * Forces everything appended since the previous force, as one group,
+    * then wakes every appender it covered.
+    **/
+   private void flushLoop() {
+      while (true) {
+         long from, to;
+         List<Segment> dirty = new ArrayList<Segment>();
+         this._mutex.lock();
+         try{
+            while (this._durable == this._written && !this._closed)
+               this._appended.awaitUninterruptibly();
+            if (this._durable == this._written)
+               return;
+            from = this._durable;
+            to = this._written;
+            long first = from / this._segmentBytes, last = (to - 1) / this._segmentBytes;
+            dirty.addAll(this._segments.subMap(first, true, last, true).values());
+         }finally{
+            this._mutex.unlock();
+         }//end try
+
+         // appenders keep writing past 'to' meanwhile; they join the next group
+         IOException failure = null;
+         try{
+            for (Segment segment : dirty) {
+               long start = segment.index * this._segmentBytes;
+               int begin = (int) Math.max(0, from - start);
+               int end = (int) Math.min(this._segmentBytes, to - start);
+               segment.buffer.force(begin, end - begin);
+            }//end for
+            this._forces.increment();
+         }catch (UncheckedIOException e){
+            failure = e.getCause();
+         }//end try
+
+         this._mutex.lock();
+         try{
+            if (failure != null) {
+               // the disk is failing; no order is taken from now on
+               this._failure = failure;
+               System.err.println("The order journal could not be forced to disk: " + failure.getMessage());
+            } else {
+               this._durable = to;
+            }//end if
+            this._forced.signalAll();
+            if (failure != null)
+               return;
+         }finally{
+            this._mutex.unlock();
+         }//end try
+      }//end while
+   }//end flushLoop
+
+   /*
+    * Writes durable orders to the database, oldest first, and deletes the
+    * segments left behind.  A failed batch is retried until it succeeds.
+    **/
+   private void drainLoop() {
+      while (true) {
+         long from, to;
+         this._mutex.lock();
+         try{
+            while (this._drained == this._durable && !this._closed)
+               this._forced.awaitUninterruptibly();
+            if (this._drained == this._durable)
+               return;
+            from = this._drained;
+            to = this._durable;
+         }finally{
+            this._mutex.unlock();
+         }//end try
+
+         List<Entry> batch = new ArrayList<Entry>();
+         long next = read(from, to, batch);
+         try{
+            if (!batch.isEmpty())
+               write(batch);
+         }catch (SQLException | RuntimeException e){
+            System.err.println("Could not drain " + batch.size() + " journaled order(s), will retry: "
+               + e.getMessage());
+            try{
+               Thread.sleep(this._retryMillis);
+            }catch (InterruptedException ie){
+               return;
+            }//end try
+            continue;
+         }//end try
+
+         this._mutex.lock();
+         try{
+            this._drained = next;
+            // drained segments before the one being appended to are done
+            while (this._segments.firstKey() < next / this._segmentBytes && this._segments.size() > 1) {
+               Segment done = this._segments.pollFirstEntry().getValue();
+               try{
+                  done.channel.close();
+                  Files.deleteIfExists(done.path);
+               }catch (IOException e){
+                  System.err.println("Could not delete " + done.path + ": " + e.getMessage());
+               }//end try
+            }//end while
+            this._forced.signalAll();
+         }finally{
+            this._mutex.unlock();
+         }//end try
+      }//end while
+   }//end drainLoop
+
+   /*
+    * Reads up to DRAIN_BATCH records between two positions.
+    *
+    * @return the position after the last record read
+    **/
+   private long read(long from, long to, List<Entry> batch) {
+      long position = from;
+      while (position < to && batch.size() < DRAIN_BATCH) {
+         Segment segment;
+         this._mutex.lock();
+         try{
+            segment = this._segments.get(position / this._segmentBytes);
+         }finally{
+            this._mutex.unlock();
+         }//end try
+         int offset = (int) (position % this._segmentBytes);
+         int length = recordLength(segment, offset);
+         if (length == 0) {
+            // the end of a full segment; appending went on in the next one
+            position = (segment.index + 1) * this._segmentBytes;
+            continue;
+         }//end if
+         byte[] payload = new byte[length];
+         segment.buffer.get(offset + HEADER_BYTES, payload);
+         try{
+            batch.add(Entry.decode(payload));
+         }catch (IOException e){
+            // the CRC matched, so this is a bug, not a torn write; keep going
+            System.err.println("Skipped an unreadable journal record in " + segment.path + ": " + e.getMessage());
+         }//end try
+         position += HEADER_BYTES + length;
+      }//end while
+      return position;
+   }//end read
+
+   /*
+    * Writes a batch, one statement per shard.  When a shard's statement
+    * violates a constraint, its orders are written one by one.  An order
+    * that still fails is retried with the next REJECT_ATTEMPTS drain
+    * rounds, which rides out e.g. a shard's copy of a new catalog title
+    * arriving late, and is then set aside as rejected.
+    **/
+   private void write(List<Entry> batch) throws SQLException {
+      Map<Integer, List<Entry>> byShard = new TreeMap<Integer, List<Entry>>();
+      for (Entry entry : batch)
+         if (!this._setAside.contains(entry.rentalOrderID))
+            byShard.computeIfAbsent(this._sink.shardOf(entry), s -> new ArrayList<Entry>()).add(entry);
+      for (Map.Entry<Integer, List<Entry>> shard : byShard.entrySet()) {
+         try{
+            writeShard(shard.getKey(), shard.getValue());
+            continue;
+         }catch (SQLException e){
+            if (!isConstraintViolation(e))
+               throw e;
+         }//end try
+         for (Entry entry : shard.getValue()) {
+            try{
+               writeShard(shard.getKey(), List.of(entry));
+               this._attempts.remove(entry.rentalOrderID);
+            }catch (SQLException e){
+               if (!isConstraintViolation(e))
+                  throw e;
+               int attempts = this._attempts.merge(entry.rentalOrderID, 1, Integer::sum);
+               if (attempts < REJECT_ATTEMPTS)
+                  throw e;
+               this._attempts.remove(entry.rentalOrderID);
+               reject(entry, e);
+            }//end try
+         }//end for
+      }//end for
+   }//end write
+
+   private static boolean isConstraintViolation(SQLException e) {
+      return e.getSQLState() != null && e.getSQLState().startsWith("23");
+   }//end isConstraintViolation
+
+   /*
+    * Sets aside an acknowledged order the database will not take: it is
+    * appended to DEAD_LETTER_FILE for an operator to settle with the
+    * customer, and the stock it reserved is given back.  Replay skips
+    * the orders in that file, so each is given back once; one that could
+    * not be written there keeps its stock and is rejected again on a
+    * later replay.
+    **/
+   private void reject(Entry entry, SQLException e) {
+      this._rejected.increment();
+      this._setAside.add(entry.rentalOrderID);
+      StringBuilder line = new StringBuilder();
+      line.append(new Timestamp(System.currentTimeMillis())).append('\t')
+         .append(entry.rentalOrderID).append('\t').append(entry.trackingID).append('\t')
+         .append(entry.login).append('\t').append(entry.orderMillis).append('\t');
+      for (int i = 0; i < entry.gameIDs.length; ++i)
+         line.append(i == 0 ? "" : " ").append(entry.gameIDs[i]).append(':').append(entry.units[i])
+            .append(':').append(entry.prices[i].toPlainString());
+      line.append('\t').append(e.getSQLState()).append('\t')
+         .append(String.valueOf(e.getMessage()).replace('\t', ' ').replace('\n', ' ')).append('\n');
+      Path file = this._directory.resolve(DEAD_LETTER_FILE);
+      try{
+         Files.write(file, line.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+         this._sink.reject(entry);
+         System.err.println("Rejected journaled order " + entry + ", set aside in " + file + ": " + e.getMessage());
+      }catch (IOException io){
+         // the journal record may go with its segment; this line is all that is left
+         System.err.println("Rejected journaled order " + entry + " (" + line.toString().trim()
+            + ") could not be written to " + file + ", its stock stays reserved: " + io.getMessage());
+      }//end try
+   }//end reject
+
+   /**
+    * @return the acknowledged orders the database rejected, which are in
+    *         DEAD_LETTER_FILE
+    */
+   public long rejected() {
+      return this._rejected.sum();
+   }//end rejected
+
+   private void writeShard(int shard, List<Entry> orders) throws SQLException {
+      this._sink.write(shard, orders);
+      this._drainedOrders.add(orders.size());
+   }//end writeShard
+
+   /*
+    * Drains to the shards' primaries with DRAIN_ORDERS and releases the
+    * stock of rejected orders.
+    **/
+   private static final class DatabaseSink implements Sink {
+      private final GameRental _esql;
+
+      DatabaseSink(GameRental esql) {
+         this._esql = esql;
+      }//end DatabaseSink
+
+      @Override
+      public int shardOf(Entry order) {
+         return this._esql.shards().shardOfId(order.rentalOrderID);
+      }//end shardOf
+
+      @Override
+      public void write(int shard, List<Entry> orders) throws SQLException {
+         int n = orders.size();
+         String[] ids = new String[n], trackingIDs = new String[n], logins = new String[n];
+         int[] games = new int[n];
+         long[] orderMillis = new long[n];
+         String[] totals = new String[n];
+         List<String> lineIDs = new ArrayList<String>(), gameIDs = new ArrayList<String>();
+         List<String> prices = new ArrayList<String>();
+         List<Integer> units = new ArrayList<Integer>();
+         for (int i = 0; i < n; ++i) {
+            Entry e = orders.get(i);
+            ids[i] = e.rentalOrderID;
+            trackingIDs[i] = e.trackingID;
+            logins[i] = e.login;
+            orderMillis[i] = e.orderMillis;
+            games[i] = e.noOfGames();
+            totals[i] = e.totalPrice().toPlainString();
+            for (int l = 0; l < e.gameIDs.length; ++l) {
+               lineIDs.add(e.rentalOrderID);
+               gameIDs.add(e.gameIDs[l]);
+               units.add(e.units[l]);
+               prices.add(e.prices[l].toPlainString());
+            }//end for
+         }//end for
+         int[] lineUnits = new int[units.size()];
+         for (int i = 0; i < lineUnits.length; ++i)
+            lineUnits[i] = units.get(i);
+         this._esql.onShard(shard, () -> this._esql.executeUpdate(Queries.DRAIN_ORDERS,
+            ids, logins, games, totals, orderMillis,
+            lineIDs.toArray(new String[0]), gameIDs.toArray(new String[0]), lineUnits, prices.toArray(new String[0]),
+            trackingIDs, ids));
+      }//end write
+
+      @Override
+      public void reject(Entry order) {
+         this._esql.inventory().release(order.cart());
+      }//end reject
+   }//end DatabaseSink
+
+   /**
+    * @return orders appended, forces, orders drained, orders the database
+    *         rejected, orders replayed at open and orders not yet drained
+    */
+   public Map<String, Object> stats() {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      stats.put("appended", this._appends.sum());
+      stats.put("forces", this._forces.sum());
+      stats.put("drained", this._drainedOrders.sum());
+      stats.put("rejected", this._rejected.sum());
+      stats.put("replayed", this._replayed);
+      this._mutex.lock();
+      try{
+         stats.put("pendingBytes", this._durable - this._drained);
+      }finally{
+         this._mutex.unlock();
+      }//end try
+      return stats;
+   }//end stats
+
+   /**
+    * Stops taking orders and waits up to CLOSE_TIMEOUT_MILLIS for the
+    * journaled ones to be drained.  Orders still in the journal then are
+    * replayed when it is next opened.
+    */
+   @Override
+   public void close() {
+      this._mutex.lock();
+      try{
+         if (this._closed)
+            return;
+         this._closed = true;
+         this._appended.signalAll();
+         this._forced.signalAll();
+      }finally{
+         this._mutex.unlock();
+      }//end try
+      try{
+         this._flusher.join(this._closeTimeoutMillis);
+         this._drainer.join(this._closeTimeoutMillis);
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+      if (this._drainer.isAlive()) {
+         this._drainer.interrupt();
+         System.err.println("Order journal closed with orders not yet drained; they are replayed on next start");
+      }//end if
+      try{
+         this._mutex.lock();
+         try{
+            for (Segment segment : this._segments.values())
+               segment.channel.close();
+         }finally{
+            this._mutex.unlock();
+         }//end try
+         this._lock.release();
+         this._lockFile.close();
+      }catch (IOException e){
+         // ignored.
+      }//end try
+   }//end close
+
+}//end OrderJournal
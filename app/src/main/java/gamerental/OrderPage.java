@@ -0,0 +1,149 @@
+package gamerental;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds one page of a customer's RentalOrder history, newest
+ * order first, together with the keyset cursors needed to fetch the
+ * pages before and after it.
+ *
+ * Pages are addressed by the (orderTimestamp, rentalOrderID) of their
+ * boundary rows rather than by an offset, so fetching any page is a
+ * single index range scan no matter how deep into the history it is.
+ *
+ */
+public class OrderPage {
+
+   /**
+    * The position of an order in the history ordering.
+    */
+   public static final class Key {
+      private final Timestamp _orderTimestamp;
+      private final String _rentalOrderID;
+
+      public Key(Timestamp orderTimestamp, String rentalOrderID) {
+         this._orderTimestamp = orderTimestamp;
+         this._rentalOrderID = rentalOrderID;
+      }//end Key
+
+      public Timestamp orderTimestamp() {
+         return this._orderTimestamp;
+      }//end orderTimestamp
+
+      public String rentalOrderID() {
+         return this._rentalOrderID;
+      }//end rentalOrderID
+   }//end Key
+
+   private final String[] _columns;
+   private final List<Object[]> _rows;
+   private final Key _newest;
+   private final Key _oldest;
+   private final boolean _hasNewer;
+   private final boolean _hasOlder;
+
+   /**
+    * Creates a new page
+    *
+    * @param columns the RentalOrder column names
+    * @param rows the orders on the page, newest first
+    * @param newest the key of the first row, or null for an empty page
+    * @param oldest the key of the last row, or null for an empty page
+    * @param hasNewer whether newer orders exist before this page
+    * @param hasOlder whether older orders exist after this page
+    */
+   OrderPage(String[] columns, List<Object[]> rows, Key newest, Key oldest,
+             boolean hasNewer, boolean hasOlder) {
+      this._columns = columns;
+      this._rows = Collections.unmodifiableList(rows);
+      this._newest = newest;
+      this._oldest = oldest;
+      this._hasNewer = hasNewer;
+      this._hasOlder = hasOlder;
+   }//end OrderPage
+
+   /**
+    * Builds a page from the rows of a page query, which asks for one row
+    * more than a page so that it tells whether anything lies beyond.
+    *
+    * @param columns the RentalOrder column names
+    * @param rows the rows read, in query order; trimmed to the page
+    * @param keys the key of each row read, in the same order; trimmed too
+    * @param pageSize the orders per page
+    * @param fromCursor whether the query started from a cursor rather
+    *        than at the newest order
+    * @param older whether the query read older orders, newest first,
+    *        rather than newer orders, oldest first
+    * @return the page, newest first
+    */
+   static OrderPage of(String[] columns, List<Object[]> rows, List<Key> keys, int pageSize,
+                       boolean fromCursor, boolean older) {
+      boolean more = rows.size() > pageSize;
+      if (more) {
+         rows.subList(pageSize, rows.size()).clear();
+         keys.subList(pageSize, keys.size()).clear();
+      }//end if
+      if (!older) {
+         Collections.reverse(rows);
+         Collections.reverse(keys);
+      }//end if
+      Key newest = keys.isEmpty() ? null : keys.get(0);
+      Key oldest = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+      // the cursor row itself lies on the side the query moved away from
+      boolean hasNewer = older ? fromCursor : more;
+      boolean hasOlder = older ? more : true;
+      return new OrderPage(columns, rows, newest, oldest, hasNewer, hasOlder);
+   }//end of
+
+   public String[] columns() {
+      return this._columns.clone();
+   }//end columns
+
+   public List<Object[]> rows() {
+      return this._rows;
+   }//end rows
+
+   /**
+    * @return the ids of the orders on the page, in page order
+    */
+   public List<String> rentalOrderIDs() {
+      List<String> ids = new ArrayList<String>(this._rows.size());
+      for (int i = 0; i < this._columns.length; ++i) {
+         if (!this._columns[i].equalsIgnoreCase("rentalOrderID"))
+            continue;
+         for (Object[] row : this._rows)
+            ids.add((String) row[i]);
+      }//end for
+      return ids;
+   }//end rentalOrderIDs
+
+   public boolean isEmpty() {
+      return this._rows.isEmpty();
+   }//end isEmpty
+
+   /**
+    * @return the cursor for fetching the previous (newer) page
+    */
+   public Key newest() {
+      return this._newest;
+   }//end newest
+
+   /**
+    * @return the cursor for fetching the next (older) page
+    */
+   public Key oldest() {
+      return this._oldest;
+   }//end oldest
+
+   public boolean hasNewer() {
+      return this._hasNewer;
+   }//end hasNewer
+
+   public boolean hasOlder() {
+      return this._hasOlder;
+   }//end hasOlder
+
+}//end OrderPage
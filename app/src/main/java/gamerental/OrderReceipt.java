@@ -0,0 +1,67 @@
+package gamerental;
+
+/**
+ * This class holds the keys and totals the database generated for a
+ * placed rental order.
+ *
+ */
+public class OrderReceipt {
+
+   private final String _rentalOrderID;
+   private final String _trackingID;
+   private final int _noOfGames;
+   private final double _totalPrice;
+   private final String _orderTimestamp;
+   private final String _dueDate;
+
+   /**
+    * Creates a new receipt
+    *
+    * @param rentalOrderID the id of the inserted RentalOrder row
+    * @param trackingID the id of the inserted TrackingInfo row
+    * @param noOfGames the total number of units ordered
+    * @param totalPrice the price of all units together
+    * @param orderTimestamp when the order was placed
+    * @param dueDate when the games are due back
+    */
+   public OrderReceipt(String rentalOrderID, String trackingID, int noOfGames,
+                       double totalPrice, String orderTimestamp, String dueDate) {
+      this._rentalOrderID = rentalOrderID;
+      this._trackingID = trackingID;
+      this._noOfGames = noOfGames;
+      this._totalPrice = totalPrice;
+      this._orderTimestamp = orderTimestamp;
+      this._dueDate = dueDate;
+   }//end OrderReceipt
+
+   public String rentalOrderID() {
+      return this._rentalOrderID;
+   }//end rentalOrderID
+
+   public String trackingID() {
+      return this._trackingID;
+   }//end trackingID
+
+   public int noOfGames() {
+      return this._noOfGames;
+   }//end noOfGames
+
+   public double totalPrice() {
+      return this._totalPrice;
+   }//end totalPrice
+
+   public String orderTimestamp() {
+      return this._orderTimestamp;
+   }//end orderTimestamp
+
+   public String dueDate() {
+      return this._dueDate;
+   }//end dueDate
+
+   @Override
+   public String toString() {
+      return String.format("Order %s: %d game(s), total $%.2f, due %s, tracking ID %s",
+         this._rentalOrderID, this._noOfGames, this._totalPrice, this._dueDate, this._trackingID);
+   }//end toString
+
+}//end OrderReceipt
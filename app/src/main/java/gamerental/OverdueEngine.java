@@ -0,0 +1,138 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps Users.numOverDueGames in step with RentalOrder.dueDate.
+ * Each run reads only the unreturned orders that are due and not yet
+ * counted, through a partial index on dueDate, and adds their games to
+ * their owners' counts with set-based statements.  An order written
+ * with a due date already past, e.g. by an import, is counted by the
+ * next run.  Recording a return
+ * takes a counted order's games off again.  Nothing is ever recomputed
+ * from the full order history.
+ *
+ * The watermark is a database row locked by each run, so any number of
+ * nodes may run the engine, and an order is marked once counted, so
+ * every order is counted exactly once.
+ *
+ */
+public class OverdueEngine implements AutoCloseable {
+
+   // seconds between scheduled runs.
+   static final long INTERVAL_SECONDS = Long.getLong("gamerental.overdue.intervalSeconds", 60L);
+
+   /**
+    * What one run changed.
+    */
+   public static final class Run {
+      public final long orders;
+      public final long users;
+
+      Run(long orders, long users) {
+         this.orders = orders;
+         this.users = users;
+      }//end Run
+
+      @Override
+      public String toString() {
+         return this.orders + " newly overdue order(s) for " + this.users + " user(s)";
+      }//end toString
+   }//end Run
+
+   private final GameRental _esql;
+   private ScheduledExecutorService _scheduler = null;
+
+   /**
+    * Creates a new engine; call start() to run it on a schedule
+    *
+    * @param esql the database to maintain
+    */
+   public OverdueEngine(GameRental esql) {
+      this._esql = esql;
+   }//end OverdueEngine
+
+   /**
+    * Counts the orders that are due and not yet counted, on every shard;
+    * each shard keeps its own watermark.
+    *
+    * @return what the run changed
+    * @throws java.sql.SQLException when the run failed on a shard;
+    *         nothing is changed there
+    */
+   public Run runOnce() throws SQLException {
+      long orders = 0, users = 0;
+      for (long[] counts : this._esql.onEveryShard(() -> {
+         long[] shard = new long[2];
+         this._esql.executeQueryForEach(Queries.COUNT_NEWLY_OVERDUE, row -> {
+            shard[0] = row.getLong(1);
+            shard[1] = row.getLong(2);
+         });
+         return shard;
+      })) {
+         orders += counts[0];
+         users += counts[1];
+      }//end for
+      return new Run(orders, users);
+   }//end runOnce
+
+   /**
+    * Records that a rental order was returned.
+    *
+    * @param rentalOrderID the returned order
+    * @return true if the order was overdue, false if it was on time
+    * @throws java.lang.IllegalArgumentException when the order does not
+    *         exist or was already returned
+    * @throws java.sql.SQLException when the return could not be recorded
+    */
+   public boolean recordReturn(String rentalOrderID) throws SQLException {
+      Boolean[] late = { null };
+      this._esql.onShardOfId(rentalOrderID, () -> this._esql.executeQueryForEach(Queries.RECORD_RETURN,
+         row -> late[0] = Boolean.TRUE.equals(row.getObject(2)), rentalOrderID));
+      if (late[0] == null)
+         throw new IllegalArgumentException("No unreturned order " + rentalOrderID);
+      return late[0];
+   }//end recordReturn
+
+   /**
+    * Runs the engine every INTERVAL_SECONDS on a background thread.
+    */
+   public synchronized void start() {
+      if (this._scheduler != null)
+         return;
+      this._scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "overdue-engine");
+         t.setDaemon(true);
+         return t;
+      });
+      this._scheduler.scheduleWithFixedDelay(() -> {
+         try{
+            Run run = runOnce();
+            if (run.orders > 0)
+               System.out.println("Overdue engine: " + run);
+         }catch (SQLException e){
+            System.err.println("Overdue engine run failed: " + e.getMessage());
+         }//end try
+      }, 0, INTERVAL_SECONDS, TimeUnit.SECONDS);
+   }//end start
+
+   /**
+    * Stops the schedule; a run in progress finishes first.
+    */
+   @Override
+   public synchronized void close() {
+      if (this._scheduler == null)
+         return;
+      this._scheduler.shutdown();
+      try{
+         this._scheduler.awaitTermination(10, TimeUnit.SECONDS);
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }//end try
+      this._scheduler = null;
+   }//end close
+
+}//end OverdueEngine
@@ -0,0 +1,109 @@
+package gamerental;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * This class hashes the passwords stored in Users.password with
+ * PBKDF2-HMAC-SHA512 and a random salt per password.  A stored hash reads
+ *
+ *    pbkdf2-sha512$<iterations>$<salt>$<hash>
+ *
+ * with the salt and hash in Base64.  Rows written before passwords were
+ * hashed still hold the plain password; verify() accepts those, and
+ * needsRehash() tells the caller to replace them, and hashes made with
+ * fewer than ITERATIONS iterations, with a fresh hash.
+ *
+ */
+final class PasswordHasher {
+
+   // PBKDF2 rounds for new hashes; raising it upgrades stored hashes on login.
+   static final int ITERATIONS = Integer.getInteger("gamerental.password.iterations", 210000);
+
+   static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+   static final String PREFIX = "pbkdf2-sha512$";
+   static final int SALT_BYTES = 16;
+   static final int HASH_BYTES = 64;
+
+   private static final SecureRandom RANDOM = new SecureRandom();
+
+   // verified against when a login does not exist, so it takes as long as one that does.
+   private static final String DUMMY_HASH = hash("");
+
+   private PasswordHasher() {
+   }//end PasswordHasher
+
+   /**
+    * @param password the plain password
+    * @return the salted hash to store
+    */
+   static String hash(String password) {
+      byte[] salt = new byte[SALT_BYTES];
+      RANDOM.nextBytes(salt);
+      Base64.Encoder b64 = Base64.getEncoder();
+      return PREFIX + ITERATIONS + "$" + b64.encodeToString(salt) + "$"
+         + b64.encodeToString(pbkdf2(password, salt, ITERATIONS));
+   }//end hash
+
+   /**
+    * Checks a password in constant time for its length.
+    *
+    * @param password the plain password given
+    * @param stored the Users.password value, or null if there is no such
+    *        user
+    * @return whether the password matches
+    */
+   static boolean verify(String password, String stored) {
+      if (stored == null) {
+         verify(password, DUMMY_HASH);
+         return false;
+      }//end if
+      if (!stored.startsWith(PREFIX))
+         return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+      String[] parts = stored.split("\\$");
+      if (parts.length != 4)
+         return false;
+      try{
+         int iterations = Integer.parseInt(parts[1]);
+         byte[] salt = Base64.getDecoder().decode(parts[2]);
+         byte[] expected = Base64.getDecoder().decode(parts[3]);
+         return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+      }catch (IllegalArgumentException e){
+         // a malformed hash matches no password.
+         return false;
+      }//end try
+   }//end verify
+
+   /**
+    * @param stored a Users.password value that verified
+    * @return whether it is plain text or weaker than a new hash would be
+    */
+   static boolean needsRehash(String stored) {
+      if (!stored.startsWith(PREFIX))
+         return true;
+      String[] parts = stored.split("\\$");
+      try{
+         return parts.length != 4 || Integer.parseInt(parts[1]) < ITERATIONS;
+      }catch (NumberFormatException e){
+         return true;
+      }//end try
+   }//end needsRehash
+
+   private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+      PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BYTES * 8);
+      try{
+         return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+      }catch (GeneralSecurityException e){
+         // every Java SE runtime provides PBKDF2WithHmacSHA512.
+         throw new IllegalStateException(e);
+      }finally{
+         spec.clearPassword();
+      }//end try
+   }//end pbkdf2
+
+}//end PasswordHasher
@@ -0,0 +1,301 @@
+package gamerental;
+
+/**
+ * This class holds the SQL text of every statement the application
+ * issues for its menu operations.  Keeping the statements in one place
+ * lets the prepared statement cache share them across call sites and lets
+ * QueryPlanChecker verify the plan of exactly what production runs.
+ *
+ */
+public final class Queries {
+
+   private Queries() {
+   }//end Queries
+
+   // 1. Create user
+   static final String CREATE_USER =
+      "INSERT INTO Users(login, password, role, phoneNum, numOverDueGames) VALUES(?, ?, 'customer', ?, 0)";
+
+   // 2. and 3. Log in and view profile: the password hash, role and profile of a session
+   static final String VIEW_PROFILE =
+      "SELECT * FROM Users WHERE login = ?";
+
+   // Replaces a plain or outdated password hash after a login verified it
+   static final String UPGRADE_PASSWORD =
+      "UPDATE Users SET password = ? WHERE login = ? AND password = ?";
+
+   // 4. Update profile, one statement per editable column
+   static final String UPDATE_PASSWORD =
+      "Update Users SET password = ? WHERE login = ?";
+   static final String UPDATE_PHONE_NUM =
+      "Update Users SET phoneNum = ? WHERE login = ?";
+   static final String UPDATE_FAV_GAMES =
+      "Update Users SET favGames = ? WHERE login = ?";
+
+   // 5. View catalog: loads the in-memory CatalogCache, a deliberate full scan
+   static final String LOAD_CATALOG =
+      "SELECT * FROM Catalog";
+
+   // Re-reads one cached game after another node changed it
+   static final String LOAD_GAME =
+      "SELECT * FROM Catalog WHERE gameID = ?";
+
+   /*
+    * 6. Place order.  Prices every line of a cart from Catalog and writes
+    * the RentalOrder, GamesInOrder and TrackingInfo rows in a single
+    * statement, so the whole order is one round trip and one implicit
+    * transaction.  The same statement adds the order to the daily game and
+    * genre rollups.  The HAVING clause inserts nothing unless every gameID
+    * exists in the catalog.
+    **/
+   static final String PLACE_ORDER =
+      "WITH items AS ("
+      + " SELECT c.gameID, c.genre, i.units, c.price"
+      + " FROM unnest(?::text[], ?::int[]) AS i(gameID, units)"
+      + " JOIN Catalog c ON c.gameID = i.gameID"
+      + "), ord AS ("
+      + " INSERT INTO RentalOrder (rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate)"
+      + " SELECT ?, ?, sum(units), sum(units * price), now(), now() + interval '7 days'"
+      + " FROM items HAVING count(*) = ?"
+      + " RETURNING rentalOrderID, noOfGames, totalPrice, orderTimestamp, dueDate"
+      + "), lines AS ("
+      + " INSERT INTO GamesInOrder (rentalOrderID, gameID, unitsOrdered)"
+      + " SELECT ord.rentalOrderID, items.gameID, items.units FROM ord, items"
+      + "), game_rollup AS ("
+      + " INSERT INTO game_daily_rentals AS r (day, gameID, slot, orders, units, revenue)"
+      + " SELECT ord.orderTimestamp::date, items.gameID, pg_backend_pid() % 8, 1, items.units, items.units * items.price"
+      + " FROM ord, items"
+      + " ON CONFLICT (day, gameID, slot) DO UPDATE SET orders = r.orders + 1,"
+      + " units = r.units + EXCLUDED.units, revenue = r.revenue + EXCLUDED.revenue"
+      + "), genre_rollup AS ("
+      + " INSERT INTO genre_daily_rentals AS r (day, genre, slot, orders, units, revenue)"
+      + " SELECT ord.orderTimestamp::date, coalesce(items.genre, ''), pg_backend_pid() % 8, 1,"
+      + " sum(items.units), sum(items.units * items.price)"
+      + " FROM ord, items GROUP BY ord.orderTimestamp, coalesce(items.genre, '')"
+      + " ON CONFLICT (day, genre, slot) DO UPDATE SET orders = r.orders + 1,"
+      + " units = r.units + EXCLUDED.units, revenue = r.revenue + EXCLUDED.revenue"
+      + "), track AS ("
+      + " INSERT INTO TrackingInfo (trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate)"
+      + " SELECT ?, ord.rentalOrderID, 'Pending', 'Warehouse', 'Courier Service', now() FROM ord"
+      + " RETURNING trackingID"
+      + ")"
+      + " SELECT ord.rentalOrderID, track.trackingID, ord.noOfGames, ord.totalPrice,"
+      + " ord.orderTimestamp, ord.dueDate FROM ord, track";
+
+   /*
+    * Writes a batch of journaled orders, one array per column for the
+    * orders, their lines and their shipments.  Order times are bound as
+    * epoch milliseconds and stored as wall time in the session time zone,
+    * as now() is for PLACE_ORDER.  Orders already written are skipped
+    * along with their lines, rollups and shipment, so a batch replayed
+    * after a crash writes each order once.
+    **/
+   static final String DRAIN_ORDERS =
+      "WITH ord AS ("
+      + " INSERT INTO RentalOrder (rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate)"
+      + " SELECT o.id, o.login, o.games, o.total, to_timestamp(o.ms / 1000.0)::timestamp,"
+      + " to_timestamp(o.ms / 1000.0)::timestamp + interval '7 days'"
+      + " FROM unnest(?::text[], ?::text[], ?::int[], ?::numeric[], ?::bigint[]) AS o(id, login, games, total, ms)"
+      + " ON CONFLICT (rentalOrderID) DO NOTHING"
+      + " RETURNING rentalOrderID, orderTimestamp"
+      + "), items AS ("
+      + " SELECT ord.rentalOrderID, ord.orderTimestamp, l.gameID, l.units, l.price, c.genre"
+      + " FROM unnest(?::text[], ?::text[], ?::int[], ?::numeric[]) AS l(id, gameID, units, price)"
+      + " JOIN ord ON ord.rentalOrderID = l.id"
+      + " LEFT JOIN Catalog c ON c.gameID = l.gameID"
+      + "), lines AS ("
+      + " INSERT INTO GamesInOrder (rentalOrderID, gameID, unitsOrdered)"
+      + " SELECT rentalOrderID, gameID, units FROM items"
+      + "), game_rollup AS ("
+      + " INSERT INTO game_daily_rentals AS r (day, gameID, slot, orders, units, revenue)"
+      + " SELECT orderTimestamp::date, gameID, pg_backend_pid() % 8, count(DISTINCT rentalOrderID),"
+      + " sum(units), sum(units * price)"
+      + " FROM items GROUP BY orderTimestamp::date, gameID"
+      + " ON CONFLICT (day, gameID, slot) DO UPDATE SET orders = r.orders + EXCLUDED.orders,"
+      + " units = r.units + EXCLUDED.units, revenue = r.revenue + EXCLUDED.revenue"
+      + "), genre_rollup AS ("
+      + " INSERT INTO genre_daily_rentals AS r (day, genre, slot, orders, units, revenue)"
+      + " SELECT orderTimestamp::date, coalesce(genre, ''), pg_backend_pid() % 8, count(DISTINCT rentalOrderID),"
+      + " sum(units), sum(units * price)"
+      + " FROM items GROUP BY orderTimestamp::date, coalesce(genre, '')"
+      + " ON CONFLICT (day, genre, slot) DO UPDATE SET orders = r.orders + EXCLUDED.orders,"
+      + " units = r.units + EXCLUDED.units, revenue = r.revenue + EXCLUDED.revenue"
+      + ")"
+      + " INSERT INTO TrackingInfo (trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate)"
+      + " SELECT t.trackingID, ord.rentalOrderID, 'Pending', 'Warehouse', 'Courier Service', ord.orderTimestamp"
+      + " FROM unnest(?::text[]) WITH ORDINALITY AS t(trackingID, n)"
+      + " JOIN unnest(?::text[]) WITH ORDINALITY AS i(id, n) USING (n)"
+      + " JOIN ord ON ord.rentalOrderID = i.id";
+
+   // 15. Top games: the most rented titles of the last ? days, read from the daily rollup
+   static final String TOP_GAMES_REPORT =
+      "WITH top AS ("
+      + " SELECT gameID, sum(orders) AS orders, sum(units) AS units, sum(revenue) AS revenue"
+      + " FROM game_daily_rentals WHERE day > current_date - ?::int"
+      + " GROUP BY gameID ORDER BY units DESC, revenue DESC, gameID LIMIT ?"
+      + ")"
+      + " SELECT top.gameID, c.gameName, c.genre, top.orders, top.units, top.revenue"
+      + " FROM top LEFT JOIN Catalog c ON c.gameID = top.gameID"
+      + " ORDER BY top.units DESC, top.revenue DESC, top.gameID";
+
+   // 16. Revenue by genre: per day of the last ? days, read from the daily rollup
+   static final String GENRE_REVENUE_REPORT =
+      "SELECT day, genre, sum(orders) AS orders, sum(units) AS units, sum(revenue) AS revenue"
+      + " FROM genre_daily_rentals WHERE day > current_date - ?::int"
+      + " GROUP BY day, genre ORDER BY day DESC, revenue DESC, genre";
+
+   // one shard's share of the top games report, every game rented in the last ? days
+   static final String SHARD_GAME_TOTALS =
+      "SELECT gameID, sum(orders) AS orders, sum(units) AS units, sum(revenue) AS revenue"
+      + " FROM game_daily_rentals WHERE day > current_date - ?::int GROUP BY gameID";
+
+   /*
+    * Copies catalog titles from shard 0 to another shard, one array per
+    * column.  Stock is not copied; only shard 0 tracks it.  Rows that
+    * already match are left alone, so a full copy writes only what changed.
+    **/
+   static final String COPY_CATALOG =
+      "INSERT INTO Catalog AS c (gameID, gameName, genre, price, description, imageURL)"
+      + " SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::numeric[], ?::text[], ?::text[])"
+      + " ON CONFLICT (gameID) DO UPDATE SET gameName = excluded.gameName, genre = excluded.genre,"
+      + " price = excluded.price, description = excluded.description, imageURL = excluded.imageURL"
+      + " WHERE (c.gameName, c.genre, c.price, c.description, c.imageURL)"
+      + " IS DISTINCT FROM (excluded.gameName, excluded.genre, excluded.price, excluded.description, excluded.imageURL)";
+
+   /*
+    * Moves up to ? units of a title's stock into this node's in-memory
+    * allotment.  Returns whether the title is stock-tracked and how many
+    * units were taken; no row for an unknown gameID.
+    **/
+   static final String LEASE_STOCK =
+      "WITH cur AS ("
+      + " SELECT gameID, unitsInStock, least(unitsInStock, ?) AS take FROM Catalog WHERE gameID = ? FOR UPDATE"
+      + "), took AS ("
+      + " UPDATE Catalog c SET unitsInStock = c.unitsInStock - cur.take"
+      + " FROM cur WHERE c.gameID = cur.gameID AND cur.take > 0"
+      + ")"
+      + " SELECT cur.unitsInStock IS NOT NULL, coalesce(cur.take, 0) FROM cur";
+
+   // Hands unsold units of an allotment back to the stored stock
+   static final String RETURN_STOCK =
+      "UPDATE Catalog SET unitsInStock = unitsInStock + ? WHERE gameID = ? AND unitsInStock IS NOT NULL";
+
+   // Adds delivered units; starts tracking stock for an untracked title
+   static final String RESTOCK =
+      "UPDATE Catalog SET unitsInStock = coalesce(unitsInStock, 0) + ? WHERE gameID = ? RETURNING unitsInStock";
+
+   // 7. and 8. View order history: keyset pages, newest first
+   static final String FIRST_ORDER_PAGE =
+      "SELECT * FROM RentalOrder WHERE login = ?"
+      + " ORDER BY orderTimestamp DESC, rentalOrderID DESC LIMIT ?";
+   static final String OLDER_ORDER_PAGE =
+      "SELECT * FROM RentalOrder WHERE login = ? AND (orderTimestamp, rentalOrderID) < (?, ?)"
+      + " ORDER BY orderTimestamp DESC, rentalOrderID DESC LIMIT ?";
+   static final String NEWER_ORDER_PAGE =
+      "SELECT * FROM RentalOrder WHERE login = ? AND (orderTimestamp, rentalOrderID) > (?, ?)"
+      + " ORDER BY orderTimestamp ASC, rentalOrderID ASC LIMIT ?";
+
+   /*
+    * rows of RentalOrder o the login ? may see: its own, or all of them
+    * when the second ? is true, for staff.  The caller's role comes from
+    * its session, since the caller's Users row may be on another shard.
+    **/
+   private static final String OWNED_BY = " (o.login = ? OR ?::boolean)";
+
+   /*
+    * 9. View order information, for any number of orders in one round
+    * trip: each order with its games, their titles and current prices,
+    * and the shipment updated last.  One row per game, or one row with
+    * null game columns for an order without games.  Orders the login may
+    * not see are left out as if they did not exist.
+    **/
+   static final String ORDER_DETAILS =
+      "SELECT o.rentalOrderID, o.login, o.noOfGames, o.totalPrice, o.orderTimestamp, o.dueDate, o.returnedDate,"
+      + " g.gameID, c.gameName, c.price, g.unitsOrdered,"
+      + " t.trackingID, t.status, t.currentLocation, t.courierName, t.lastUpdateDate, t.additionalComments"
+      + " FROM RentalOrder o"
+      + " LEFT JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+      + " LEFT JOIN Catalog c ON c.gameID = g.gameID"
+      + " LEFT JOIN LATERAL (SELECT * FROM TrackingInfo ti WHERE ti.rentalOrderID = o.rentalOrderID"
+      + " ORDER BY ti.lastUpdateDate DESC NULLS LAST, ti.trackingID DESC LIMIT 1) t ON true"
+      + " WHERE o.rentalOrderID = ANY(?::text[]) AND" + OWNED_BY
+      + " ORDER BY o.orderTimestamp DESC, o.rentalOrderID DESC, g.gameID";
+
+   // 10. View tracking information of a shipment the login may see
+   static final String VIEW_TRACKING_INFO =
+      "SELECT t.* FROM TrackingInfo t JOIN RentalOrder o ON o.rentalOrderID = t.rentalOrderID"
+      + " WHERE t.trackingID = ? AND" + OWNED_BY;
+
+   // 11. Update tracking information; a null location keeps the stored one
+   static final String UPDATE_TRACKING_INFO =
+      "UPDATE TrackingInfo SET status = ?, currentLocation = coalesce(?, currentLocation),"
+      + " courierName = ?, additionalComments = ?, lastUpdateDate = now() WHERE trackingID = ?";
+
+   /*
+    * Applies a batch of coalesced courier events in one statement.  The
+    * arrays hold one element per shipment; null fields keep the stored
+    * value.  An event older than the stored lastUpdateDate is skipped, so
+    * late deliveries never move a shipment back.
+    **/
+   static final String APPLY_TRACKING_EVENTS =
+      "UPDATE TrackingInfo t SET status = e.status,"
+      + " currentLocation = coalesce(e.currentLocation, t.currentLocation),"
+      + " courierName = coalesce(e.courierName, t.courierName),"
+      + " additionalComments = coalesce(e.additionalComments, t.additionalComments),"
+      + " lastUpdateDate = e.eventTime"
+      + " FROM unnest(?::text[], ?::text[], ?::text[], ?::text[], ?::text[], ?::timestamp[])"
+      + " AS e(trackingID, status, currentLocation, courierName, additionalComments, eventTime)"
+      + " WHERE t.trackingID = e.trackingID"
+      + " AND (t.lastUpdateDate IS NULL OR t.lastUpdateDate <= e.eventTime)";
+
+   /*
+    * Overdue engine run.  Locks the watermark row so runs on different
+    * nodes take turns, marks the unreturned orders that are due and not
+    * yet counted, whenever they were written, adds their games to the
+    * owners' overdue counts and records the run's time in the watermark.
+    * Returns the orders and users touched.
+    **/
+   static final String COUNT_NEWLY_OVERDUE =
+      "WITH wm AS ("
+      + " SELECT scannedThrough FROM overdue_watermark FOR UPDATE"
+      + "), due AS ("
+      + " UPDATE RentalOrder o SET overdueCounted = true FROM wm"
+      + " WHERE o.dueDate <= now() AND o.returnedDate IS NULL AND NOT o.overdueCounted"
+      + " RETURNING o.login, o.noOfGames"
+      + "), per_user AS ("
+      + " SELECT login, sum(noOfGames) AS games FROM due GROUP BY login"
+      + "), bump AS ("
+      + " UPDATE Users u SET numOverDueGames = u.numOverDueGames + p.games"
+      + " FROM per_user p WHERE u.login = p.login RETURNING u.login"
+      + "), mark AS ("
+      + " UPDATE overdue_watermark SET scannedThrough = now() FROM wm RETURNING 1"
+      + ")"
+      + " SELECT (SELECT count(*) FROM due), (SELECT count(*) FROM bump), (SELECT count(*) FROM mark)";
+
+   /*
+    * Records the return of an order.  If the order had been counted as
+    * overdue, its games come off the owner's overdue count.  Returns the
+    * owner and whether the return was late, whether or not the overdue
+    * engine has counted it yet; no row if the order does not exist or
+    * was already returned.
+    **/
+   static final String RECORD_RETURN =
+      "WITH ret AS ("
+      + " UPDATE RentalOrder SET returnedDate = now()"
+      + " WHERE rentalOrderID = ? AND returnedDate IS NULL"
+      + " RETURNING login, noOfGames, overdueCounted, dueDate < now() AS late"
+      + "), dec AS ("
+      + " UPDATE Users u SET numOverDueGames = greatest(u.numOverDueGames - ret.noOfGames, 0)"
+      + " FROM ret WHERE u.login = ret.login AND ret.overdueCounted RETURNING 1"
+      + ")"
+      + " SELECT ret.login, ret.late FROM ret";
+
+   // 12. Update catalog, returning the row for the write-through cache
+   static final String UPDATE_CATALOG =
+      "UPDATE Catalog SET description = ?, price = ? WHERE gameID = ? RETURNING *";
+
+   // 13. Update user
+   static final String UPDATE_USER =
+      "UPDATE Users SET role = ?, numOverDueGames = ? WHERE login = ?";
+
+}//end Queries
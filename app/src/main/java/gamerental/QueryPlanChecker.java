@@ -0,0 +1,169 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class runs EXPLAIN on every application query and reports the
+ * ones that plan to a sequential scan of a large table.  It is meant to
+ * run after migrations, in CI and before a release, so that a dropped or
+ * missing index shows up as a failure instead of as slow requests.
+ *
+ * Statements are only planned, never executed, so the check is safe to
+ * run against a production database.
+ *
+ */
+public class QueryPlanChecker {
+
+   // tables with at least this many estimated rows count as large.
+   static final long LARGE_TABLE_ROWS = Long.getLong("gamerental.planCheck.largeTableRows", 10000L);
+
+   // matches a sequential scan node of the JSON plan and captures its relation.
+   private static final Pattern SEQ_SCAN = Pattern.compile(
+      "\"Node Type\"\\s*:\\s*\"Seq Scan\"[^{}\\[\\]]*?\"Relation Name\"\\s*:\\s*\"([^\"]+)\"");
+
+   /**
+    * One application query together with representative parameters.
+    */
+   static final class CheckedQuery {
+      final String operation;
+      final String sql;
+      final Object[] params;
+      final Set<String> allowedSeqScans;
+
+      CheckedQuery(String operation, String sql, Object[] params, String... allowedSeqScans) {
+         this.operation = operation;
+         this.sql = sql;
+         this.params = params;
+         this.allowedSeqScans = new LinkedHashSet<String>();
+         for (String table : allowedSeqScans)
+            this.allowedSeqScans.add(table.toLowerCase());
+      }//end CheckedQuery
+   }//end CheckedQuery
+
+   /**
+    * @return the statements issued by the menu operations and background jobs
+    */
+   static List<CheckedQuery> applicationQueries() {
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      return Collections.unmodifiableList(Arrays.asList(
+         new CheckedQuery("Create user", Queries.CREATE_USER,
+            new Object[] { "plan_check_user", "secret", "555-0100" }),
+         new CheckedQuery("Log in", Queries.VIEW_PROFILE,
+            new Object[] { "plan_check_user" }),
+         new CheckedQuery("Upgrade password hash", Queries.UPGRADE_PASSWORD,
+            new Object[] { "secret", "plan_check_user", "plain" }),
+         new CheckedQuery("Update profile", Queries.UPDATE_PASSWORD,
+            new Object[] { "secret", "plan_check_user" }),
+         // loading the catalog cache reads the whole table by design
+         new CheckedQuery("View catalog", Queries.LOAD_CATALOG,
+            new Object[0], "Catalog"),
+         new CheckedQuery("Refresh cached game", Queries.LOAD_GAME,
+            new Object[] { "G1" }),
+         new CheckedQuery("Place order", Queries.PLACE_ORDER,
+            new Object[] { new String[] { "G1", "G2" }, new int[] { 1, 2 },
+                           "plan_check_order", "plan_check_user", 2, "plan_check_tracking" }),
+         new CheckedQuery("Drain order journal", Queries.DRAIN_ORDERS,
+            new Object[] { new String[] { "plan_check_order" }, new String[] { "plan_check_user" }, new int[] { 1 },
+                           new String[] { "9.99" }, new long[] { 1704067200000L },
+                           new String[] { "plan_check_order" }, new String[] { "G1" }, new int[] { 1 },
+                           new String[] { "9.99" },
+                           new String[] { "plan_check_tracking" }, new String[] { "plan_check_order" } }),
+         new CheckedQuery("Lease stock", Queries.LEASE_STOCK,
+            new Object[] { 50, "G1" }),
+         new CheckedQuery("Return stock", Queries.RETURN_STOCK,
+            new Object[] { 50, "G1" }),
+         new CheckedQuery("View full order history", Queries.OLDER_ORDER_PAGE,
+            new Object[] { "plan_check_user", now, "plan_check_order", 11 }),
+         new CheckedQuery("View recent orders", Queries.FIRST_ORDER_PAGE,
+            new Object[] { "plan_check_user", 6 }),
+         new CheckedQuery("View order details", Queries.ORDER_DETAILS,
+            new Object[] { new String[] { "plan_check_order" }, "plan_check_user", false }),
+         new CheckedQuery("View tracking information", Queries.VIEW_TRACKING_INFO,
+            new Object[] { "plan_check_tracking", "plan_check_user", false }),
+         new CheckedQuery("Update tracking information", Queries.UPDATE_TRACKING_INFO,
+            new Object[] { "Shipped", "Hub", "Courier", "", "plan_check_tracking" }),
+         new CheckedQuery("Ingest tracking events", Queries.APPLY_TRACKING_EVENTS,
+            new Object[] { new String[] { "plan_check_tracking" }, new String[] { "Shipped" },
+                           new String[] { "Hub" }, new String[] { "Courier" }, new String[] { null },
+                           new String[] { now.toString() } }),
+         new CheckedQuery("Count overdue rentals", Queries.COUNT_NEWLY_OVERDUE,
+            new Object[0]),
+         new CheckedQuery("Record return", Queries.RECORD_RETURN,
+            new Object[] { "plan_check_order" }),
+         new CheckedQuery("Update catalog", Queries.UPDATE_CATALOG,
+            new Object[] { "", 9.99, "G1" }),
+         new CheckedQuery("Update user", Queries.UPDATE_USER,
+            new Object[] { "customer", 0, "plan_check_user" }),
+         new CheckedQuery("Top games report", Queries.TOP_GAMES_REPORT,
+            new Object[] { 7, 10 }),
+         new CheckedQuery("Revenue by genre report", Queries.GENRE_REVENUE_REPORT,
+            new Object[] { 7 }),
+         new CheckedQuery("Top games report, one shard", Queries.SHARD_GAME_TOTALS,
+            new Object[] { 7 }),
+         new CheckedQuery("Copy catalog to a shard", Queries.COPY_CATALOG,
+            new Object[] { new String[] { "G1" }, new String[] { "Game" }, new String[] { "Action" },
+                           new String[] { "9.99" }, new String[] { "" }, new String[] { "" } })
+      ));
+   }//end applicationQueries
+
+   private final GameRental _esql;
+
+   /**
+    * Creates a new plan checker
+    *
+    * @param esql the database whose plans are checked
+    */
+   public QueryPlanChecker(GameRental esql) {
+      this._esql = esql;
+   }//end QueryPlanChecker
+
+   /**
+    * Plans every application query and prints one line per query.
+    *
+    * @return the problems found, empty when every plan is acceptable
+    * @throws java.sql.SQLException when a query cannot be planned
+    */
+   public List<String> check() throws SQLException {
+      List<String> problems = new ArrayList<String>();
+      for (CheckedQuery query : applicationQueries()) {
+         StringBuilder plan = new StringBuilder();
+         this._esql.executeQueryForEach("EXPLAIN (FORMAT JSON) " + query.sql,
+            row -> plan.append(row.getString(1)), query.params);
+
+         List<String> largeScans = new ArrayList<String>();
+         Matcher m = SEQ_SCAN.matcher(plan);
+         while (m.find()) {
+            String table = m.group(1).toLowerCase();
+            if (!query.allowedSeqScans.contains(table) && estimatedRows(table) >= LARGE_TABLE_ROWS)
+               largeScans.add(table);
+         }//end while
+
+         if (largeScans.isEmpty()) {
+            System.out.println("OK    " + query.operation);
+         } else {
+            String problem = query.operation + ": sequential scan on " + String.join(", ", largeScans);
+            System.out.println("FAIL  " + problem);
+            problems.add(problem);
+         }//end if
+      }//end for
+      return problems;
+   }//end check
+
+   private long estimatedRows(String table) throws SQLException {
+      long[] rows = { 0 };
+      this._esql.executeQueryForEach(
+         "SELECT reltuples::bigint FROM pg_class WHERE relkind = 'r' AND relname = ?",
+         row -> rows[0] = Math.max(rows[0], row.getLong(1)), table);
+      return rows[0];
+   }//end estimatedRows
+
+}//end QueryPlanChecker
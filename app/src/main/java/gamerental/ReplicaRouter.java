@@ -0,0 +1,173 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class chooses the read replica that read-only work runs on.
+ * Replicas are taken in turn, skipping any that failed their last health
+ * check; a replica that cannot hand out a connection is marked down at
+ * once and checked again every HEALTH_CHECK_INTERVAL_MILLIS.
+ *
+ * It also remembers which sessions wrote recently.  A login that wrote
+ * in the last PIN_MILLIS reads from the primary, so it sees its own
+ * writes even when the replicas lag behind.
+ *
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+   // how often every replica is checked.
+   static final long HEALTH_CHECK_INTERVAL_MILLIS = Long.getLong("gamerental.replicas.healthCheckMillis", 2000L);
+
+   // how long a session reads from the primary after it writes.
+   static final long PIN_MILLIS = Long.getLong("gamerental.replicas.pinMillis", 5000L);
+
+   /**
+    * One read replica and its connection pool.
+    */
+   static final class Replica {
+      final String url;
+      final ConnectionPool pool;
+      volatile boolean healthy = true;
+
+      Replica(String url, ConnectionPool pool) {
+         this.url = url;
+         this.pool = pool;
+      }//end Replica
+   }//end Replica
+
+   private final List<Replica> _replicas;
+   private final AtomicInteger _next = new AtomicInteger();
+
+   // login to the System.nanoTime() until which it reads from the primary.
+   private final ConcurrentHashMap<String, Long> _pinnedUntil = new ConcurrentHashMap<String, Long>();
+
+   private final ScheduledExecutorService _checker;
+
+   /**
+    * Creates a new router; with no replica URLs, everything runs on the primary
+    *
+    * @param urls the JDBC URLs of the replicas
+    * @param props the driver properties, as for the primary
+    * @throws java.sql.SQLException when a pool cannot be created
+    */
+   public ReplicaRouter(List<String> urls, Properties props) throws SQLException {
+      List<Replica> replicas = new ArrayList<Replica>();
+      for (String url : urls) {
+         // no connections up front: a replica that is down must not stop startup
+         replicas.add(new Replica(url, new ConnectionPool(url, props, 0, GameRental.POOL_MAX_SIZE,
+            GameRental.POOL_BORROW_TIMEOUT_MILLIS, GameRental.POOL_IDLE_TIMEOUT_MILLIS,
+            GameRental.POOL_LEAK_THRESHOLD_MILLIS)));
+      }//end for
+      this._replicas = Collections.unmodifiableList(replicas);
+      if (this._replicas.isEmpty()) {
+         this._checker = null;
+         return;
+      }//end if
+      this._checker = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "replica-health-check");
+         t.setDaemon(true);
+         return t;
+      });
+      this._checker.scheduleWithFixedDelay(this::check,
+         HEALTH_CHECK_INTERVAL_MILLIS, HEALTH_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+   }//end ReplicaRouter
+
+   /**
+    * @param login the session reading, or null for an anonymous read
+    * @return the replica to read from, or null if the read should run
+    *         on the primary
+    */
+   Replica pick(String login) {
+      if (this._replicas.isEmpty() || isPinned(login))
+         return null;
+      int n = this._replicas.size();
+      int start = Math.floorMod(this._next.getAndIncrement(), n);
+      for (int i = 0; i < n; ++i) {
+         Replica replica = this._replicas.get((start + i) % n);
+         if (replica.healthy)
+            return replica;
+      }//end for
+      return null;
+   }//end pick
+
+   /**
+    * Takes a replica out of rotation until it passes a health check.
+    *
+    * @param replica the replica that failed
+    * @param e the error it failed with
+    */
+   void markDown(Replica replica, SQLException e) {
+      if (replica.healthy) {
+         replica.healthy = false;
+         System.err.println("Read replica " + replica.url + " is down, reading from the primary: " + e.getMessage());
+      }//end if
+   }//end markDown
+
+   /**
+    * Sends a session's reads to the primary for the next PIN_MILLIS.
+    *
+    * @param login the session that wrote, may be null
+    */
+   public void pin(String login) {
+      if (login != null && !this._replicas.isEmpty())
+         this._pinnedUntil.put(login, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PIN_MILLIS));
+   }//end pin
+
+   private boolean isPinned(String login) {
+      if (login == null)
+         return false;
+      Long until = this._pinnedUntil.get(login);
+      return until != null && until - System.nanoTime() > 0;
+   }//end isPinned
+
+   /*
+    * Checks that every replica hands out a working connection and drops
+    * expired pins.
+    **/
+   private void check() {
+      for (Replica replica : this._replicas) {
+         boolean up;
+         ConnectionPool.PooledConnection conn = null;
+         try{
+            conn = replica.pool.borrow();
+            up = conn.connection().isValid(ConnectionPool.VALIDATION_TIMEOUT_SECONDS);
+         }catch (SQLException e){
+            up = false;
+         }finally{
+            replica.pool.release(conn);
+         }//end try
+         if (up && !replica.healthy)
+            System.err.println("Read replica " + replica.url + " is back up");
+         else if (!up && replica.healthy)
+            System.err.println("Read replica " + replica.url + " failed its health check, reading from the primary");
+         replica.healthy = up;
+      }//end for
+
+      long now = System.nanoTime();
+      for (Map.Entry<String, Long> pin : this._pinnedUntil.entrySet())
+         if (pin.getValue() - now <= 0)
+            this._pinnedUntil.remove(pin.getKey(), pin.getValue());
+   }//end check
+
+   /**
+    * Stops the health checks and closes the replica pools.
+    */
+   @Override
+   public void close() {
+      if (this._checker != null)
+         this._checker.shutdownNow();
+      for (Replica replica : this._replicas)
+         replica.pool.close();
+   }//end close
+
+}//end ReplicaRouter
@@ -0,0 +1,115 @@
+package gamerental;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * This class renders query results as tab separated text.  Each row is
+ * assembled in memory and written to a large buffer in one call, and the
+ * buffer is flushed once at the end instead of once per cell.
+ *
+ */
+public class ResultPrinter implements RowHandler {
+
+   // size of the output buffer in characters.
+   static final int BUFFER_SIZE = 1 << 16;
+
+   private final Writer _out;
+   private final StringBuilder _line = new StringBuilder(256);
+   private boolean _headerWritten = false;
+   private int _rowCount = 0;
+
+   /**
+    * Creates a printer that writes to standard out
+    */
+   public ResultPrinter() {
+      this(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+   }//end ResultPrinter
+
+   /**
+    * Creates a printer that writes to the given writer
+    *
+    * @param out where the rendered rows go
+    */
+   public ResultPrinter(Writer out) {
+      this._out = new BufferedWriter(out, BUFFER_SIZE);
+   }//end ResultPrinter
+
+   /**
+    * Renders the header before the first row, then the row itself.
+    */
+   @Override
+   public void handle(Row row) throws SQLException {
+      int numCol = row.columnCount();
+      if (!this._headerWritten) {
+         String[] header = new String[numCol];
+         for (int i = 1; i <= numCol; ++i)
+            header[i - 1] = row.columnName(i);
+         header(header);
+      }//end if
+      this._line.setLength(0);
+      for (int i = 1; i <= numCol; ++i)
+         this._line.append(row.getString(i)).append('\t');
+      writeLine();
+      ++this._rowCount;
+   }//end handle
+
+   /**
+    * Renders a header line of column names.
+    *
+    * @param columns the column names
+    */
+   public void header(String... columns) {
+      this._line.setLength(0);
+      for (String column : columns)
+         this._line.append(column).append('\t');
+      this._headerWritten = true;
+      writeLine();
+   }//end header
+
+   /**
+    * Renders one row of values that are already in memory.
+    *
+    * @param values the column values
+    */
+   public void row(Object... values) {
+      this._line.setLength(0);
+      for (Object value : values)
+         this._line.append(value).append('\t');
+      writeLine();
+      ++this._rowCount;
+   }//end row
+
+   /**
+    * @return the number of data rows rendered so far
+    */
+   public int rowCount() {
+      return this._rowCount;
+   }//end rowCount
+
+   /**
+    * Flushes everything rendered so far.  The underlying stream stays open.
+    */
+   public void flush() {
+      try{
+         this._out.flush();
+      }catch (IOException e){
+         throw new UncheckedIOException(e);
+      }//end try
+   }//end flush
+
+   private void writeLine() {
+      this._line.append(System.lineSeparator());
+      try{
+         this._out.append(this._line);
+      }catch (IOException e){
+         throw new UncheckedIOException(e);
+      }//end try
+   }//end writeLine
+
+}//end ResultPrinter
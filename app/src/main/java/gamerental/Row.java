@@ -0,0 +1,130 @@
+package gamerental;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * This class is a read-only view of the current row of a streaming query.
+ * It gives typed access to the columns straight from the underlying
+ * ResultSet, without converting them to String first.
+ *
+ * A Row is reused for every row of its result: it is only valid inside
+ * the RowHandler call (or Stream step) that received it.  Use toArray()
+ * to keep a copy of the values.
+ *
+ */
+public class Row {
+
+   private final ResultSet _rs;
+   private final ResultSetMetaData _meta;
+   private final int _numCol;
+
+   /**
+    * Creates a view over a result set
+    *
+    * @param rs the result set positioned by the caller
+    * @throws java.sql.SQLException when the metadata cannot be read
+    */
+   Row(ResultSet rs) throws SQLException {
+      this._rs = rs;
+      this._meta = rs.getMetaData();
+      this._numCol = this._meta.getColumnCount();
+   }//end Row
+
+   /**
+    * @return the number of columns in the result
+    */
+   public int columnCount() {
+      return this._numCol;
+   }//end columnCount
+
+   /**
+    * @param i the 1-based column index
+    * @return the column label reported by the database
+    * @throws java.sql.SQLException when the index is out of range
+    */
+   public String columnName(int i) throws SQLException {
+      return this._meta.getColumnLabel(i);
+   }//end columnName
+
+   public String getString(int i) throws SQLException {
+      return this._rs.getString(i);
+   }//end getString
+
+   public String getString(String column) throws SQLException {
+      return this._rs.getString(column);
+   }//end getString
+
+   public int getInt(int i) throws SQLException {
+      return this._rs.getInt(i);
+   }//end getInt
+
+   public int getInt(String column) throws SQLException {
+      return this._rs.getInt(column);
+   }//end getInt
+
+   public long getLong(int i) throws SQLException {
+      return this._rs.getLong(i);
+   }//end getLong
+
+   public long getLong(String column) throws SQLException {
+      return this._rs.getLong(column);
+   }//end getLong
+
+   public double getDouble(int i) throws SQLException {
+      return this._rs.getDouble(i);
+   }//end getDouble
+
+   public double getDouble(String column) throws SQLException {
+      return this._rs.getDouble(column);
+   }//end getDouble
+
+   public BigDecimal getBigDecimal(int i) throws SQLException {
+      return this._rs.getBigDecimal(i);
+   }//end getBigDecimal
+
+   public BigDecimal getBigDecimal(String column) throws SQLException {
+      return this._rs.getBigDecimal(column);
+   }//end getBigDecimal
+
+   public Timestamp getTimestamp(int i) throws SQLException {
+      return this._rs.getTimestamp(i);
+   }//end getTimestamp
+
+   public Timestamp getTimestamp(String column) throws SQLException {
+      return this._rs.getTimestamp(column);
+   }//end getTimestamp
+
+   public Object getObject(int i) throws SQLException {
+      return this._rs.getObject(i);
+   }//end getObject
+
+   public Object getObject(String column) throws SQLException {
+      return this._rs.getObject(column);
+   }//end getObject
+
+   /**
+    * @return true when the column read last was SQL NULL
+    * @throws java.sql.SQLException when nothing has been read yet
+    */
+   public boolean wasNull() throws SQLException {
+      return this._rs.wasNull();
+   }//end wasNull
+
+   /**
+    * Copies the values of the current row so they outlive the Row.
+    *
+    * @return the column values as returned by getObject
+    * @throws java.sql.SQLException when a value cannot be read
+    */
+   public Object[] toArray() throws SQLException {
+      Object[] values = new Object[this._numCol];
+      for (int i = 1; i <= this._numCol; ++i)
+         values[i - 1] = this._rs.getObject(i);
+      return values;
+   }//end toArray
+
+}//end Row
@@ -0,0 +1,20 @@
+package gamerental;
+
+import java.sql.SQLException;
+
+/**
+ * Callback invoked once per row by GameRental.executeQueryForEach.
+ *
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+   /**
+    * Handles the current row of a streaming query.
+    *
+    * @param row a view of the current row, valid only during this call
+    * @throws java.sql.SQLException when a column cannot be read
+    */
+   void handle(Row row) throws SQLException;
+
+}//end RowHandler
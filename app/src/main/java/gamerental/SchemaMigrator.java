@@ -0,0 +1,290 @@
+package gamerental;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class creates and evolves the GameRental schema.  Each migration
+ * has a version number and runs exactly once per database, in its own
+ * transaction; the versions already applied are recorded in the
+ * schema_migrations table.
+ *
+ * Migrations are append-only: never edit one that has shipped, add a new
+ * version instead.
+ *
+ */
+public class SchemaMigrator {
+
+   // key of the advisory lock that keeps two migrators from racing.
+   static final long MIGRATION_LOCK_KEY = 0x47616d6552656eL;
+
+   // rows a statement may change and still publish one event per row.
+   static final int NOTIFY_ROW_LIMIT = 1000;
+
+   /**
+    * One versioned schema change.
+    */
+   static final class Migration {
+      final int version;
+      final String description;
+      final String[] statements;
+
+      Migration(int version, String description, String... statements) {
+         this.version = version;
+         this.description = description;
+         this.statements = statements;
+      }//end Migration
+   }//end Migration
+
+   // every migration, in version order.
+   static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+
+      new Migration(1, "Create the rental tables",
+         "CREATE TABLE IF NOT EXISTS Users ("
+         + " login text PRIMARY KEY,"
+         + " password text NOT NULL,"
+         + " role text NOT NULL DEFAULT 'customer',"
+         + " favGames text,"
+         + " phoneNum text,"
+         + " numOverDueGames integer NOT NULL DEFAULT 0)",
+         "CREATE TABLE IF NOT EXISTS Catalog ("
+         + " gameID text PRIMARY KEY,"
+         + " gameName text NOT NULL,"
+         + " genre text,"
+         + " price numeric(10,2) NOT NULL,"
+         + " description text,"
+         + " imageURL text)",
+         "CREATE TABLE IF NOT EXISTS RentalOrder ("
+         + " rentalOrderID text PRIMARY KEY,"
+         + " login text NOT NULL REFERENCES Users(login),"
+         + " noOfGames integer NOT NULL,"
+         + " totalPrice numeric(10,2) NOT NULL,"
+         + " orderTimestamp timestamp NOT NULL,"
+         + " dueDate timestamp NOT NULL)",
+         "CREATE TABLE IF NOT EXISTS GamesInOrder ("
+         + " rentalOrderID text NOT NULL REFERENCES RentalOrder(rentalOrderID),"
+         + " gameID text NOT NULL REFERENCES Catalog(gameID),"
+         + " unitsOrdered integer NOT NULL,"
+         + " PRIMARY KEY (rentalOrderID, gameID))",
+         "CREATE TABLE IF NOT EXISTS TrackingInfo ("
+         + " trackingID text PRIMARY KEY,"
+         + " rentalOrderID text NOT NULL REFERENCES RentalOrder(rentalOrderID),"
+         + " status text,"
+         + " currentLocation text,"
+         + " courierName text,"
+         + " lastUpdateDate timestamp,"
+         + " additionalComments text)"),
+
+      // Users.login, GamesInOrder.rentalOrderID and TrackingInfo.trackingID
+      // lookups are served by the primary keys created in version 1.
+      new Migration(2, "Index the lookup paths of the application queries",
+         // order history pages: login equality, then (orderTimestamp, rentalOrderID) range
+         "CREATE INDEX IF NOT EXISTS rentalorder_login_time_idx"
+         + " ON RentalOrder (login, orderTimestamp DESC, rentalOrderID DESC)",
+         // tracking rows of an order
+         "CREATE INDEX IF NOT EXISTS trackinginfo_order_idx ON TrackingInfo (rentalOrderID)",
+         // catalog searches by genre and by price
+         "CREATE INDEX IF NOT EXISTS catalog_genre_idx ON Catalog (genre)",
+         "CREATE INDEX IF NOT EXISTS catalog_price_idx ON Catalog (price)"),
+
+      // each nextval() reserves a block of INCREMENT BY ids for IdAllocator
+      new Migration(3, "Create the id block sequences for orders and tracking",
+         "CREATE SEQUENCE IF NOT EXISTS rental_order_id_seq AS bigint INCREMENT BY 100",
+         "CREATE SEQUENCE IF NOT EXISTS tracking_id_seq AS bigint INCREMENT BY 100"),
+
+      // OverdueEngine only reads orders that fell due since its watermark
+      new Migration(4, "Track returns and incrementally counted overdue rentals",
+         "ALTER TABLE RentalOrder ADD COLUMN IF NOT EXISTS returnedDate timestamp",
+         "ALTER TABLE RentalOrder ADD COLUMN IF NOT EXISTS overdueCounted boolean NOT NULL DEFAULT false",
+         // unreturned orders by due date: the range each overdue run scans
+         "CREATE INDEX IF NOT EXISTS rentalorder_open_due_idx ON RentalOrder (dueDate) WHERE returnedDate IS NULL",
+         // a single row; -infinity makes the first run count every past-due order once
+         "CREATE TABLE IF NOT EXISTS overdue_watermark ("
+         + " singleton boolean PRIMARY KEY DEFAULT true CHECK (singleton),"
+         + " scannedThrough timestamp NOT NULL)",
+         "INSERT INTO overdue_watermark (scannedThrough) VALUES ('-infinity') ON CONFLICT DO NOTHING"),
+
+      // NULL stock means the title is not stock-tracked and never sells out
+      new Migration(5, "Track units in stock per catalog title",
+         "ALTER TABLE Catalog ADD COLUMN IF NOT EXISTS unitsInStock integer CHECK (unitsInStock >= 0)"),
+
+      // daily totals per game and per genre, added to by every PLACE_ORDER;
+      // slot spreads a busy day's row over connections, reports sum the slots
+      new Migration(6, "Create the daily rental rollups",
+         "CREATE TABLE IF NOT EXISTS game_daily_rentals ("
+         + " day date NOT NULL,"
+         + " gameID text NOT NULL,"
+         + " slot smallint NOT NULL,"
+         + " orders bigint NOT NULL,"
+         + " units bigint NOT NULL,"
+         + " revenue numeric(14,2) NOT NULL,"
+         + " PRIMARY KEY (day, gameID, slot))",
+         "CREATE TABLE IF NOT EXISTS genre_daily_rentals ("
+         + " day date NOT NULL,"
+         + " genre text NOT NULL,"
+         + " slot smallint NOT NULL,"
+         + " orders bigint NOT NULL,"
+         + " units bigint NOT NULL,"
+         + " revenue numeric(14,2) NOT NULL,"
+         + " PRIMARY KEY (day, genre, slot))",
+         // orders placed before this version; their revenue is at today's prices
+         "INSERT INTO game_daily_rentals (day, gameID, slot, orders, units, revenue)"
+         + " SELECT o.orderTimestamp::date, g.gameID, 0, count(*), sum(g.unitsOrdered), sum(g.unitsOrdered * c.price)"
+         + " FROM RentalOrder o JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+         + " JOIN Catalog c ON c.gameID = g.gameID"
+         + " GROUP BY o.orderTimestamp::date, g.gameID ON CONFLICT DO NOTHING",
+         "INSERT INTO genre_daily_rentals (day, genre, slot, orders, units, revenue)"
+         + " SELECT o.orderTimestamp::date, coalesce(c.genre, ''), 0, count(DISTINCT o.rentalOrderID),"
+         + " sum(g.unitsOrdered), sum(g.unitsOrdered * c.price)"
+         + " FROM RentalOrder o JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+         + " JOIN Catalog c ON c.gameID = g.gameID"
+         + " GROUP BY o.orderTimestamp::date, coalesce(c.genre, '') ON CONFLICT DO NOTHING"),
+
+      // ChangeFeed listens for these; stock counts change too often to publish
+      new Migration(7, "Publish committed changes to Catalog, Users and TrackingInfo",
+         concat(new String[] {
+            "CREATE OR REPLACE FUNCTION gamerental_notify_change() RETURNS trigger LANGUAGE plpgsql AS $$"
+            + " DECLARE"
+            + "  key text := TG_ARGV[0];"
+            + "  ignored text[] := TG_ARGV[1:TG_NARGS - 1];"
+            + "  ids text[];"
+            + " BEGIN"
+            + "  IF TG_OP = 'INSERT' THEN"
+            + "   SELECT array_agg(to_jsonb(n) ->> key) INTO ids FROM new_rows n;"
+            + "  ELSIF TG_OP = 'DELETE' THEN"
+            + "   SELECT array_agg(to_jsonb(o) ->> key) INTO ids FROM old_rows o;"
+            + "  ELSIF TG_OP = 'UPDATE' THEN"
+            + "   SELECT array_agg(to_jsonb(n) ->> key) INTO ids"
+            + "   FROM new_rows n JOIN old_rows o ON to_jsonb(n) ->> key = to_jsonb(o) ->> key"
+            + "   WHERE to_jsonb(n) - ignored IS DISTINCT FROM to_jsonb(o) - ignored;"
+            + "  END IF;"
+            + "  IF TG_OP <> 'TRUNCATE' AND ids IS NULL THEN"
+            + "   RETURN NULL;"
+            + "  END IF;"
+            // a big statement is one event without an id rather than a flood
+            + "  IF TG_OP = 'TRUNCATE' OR cardinality(ids) > " + NOTIFY_ROW_LIMIT + " THEN"
+            + "   PERFORM pg_notify('" + ChangeFeed.CHANNEL + "',"
+            + "    json_build_object('table', lower(TG_TABLE_NAME), 'op', TG_OP)::text);"
+            + "  ELSE"
+            + "   PERFORM pg_notify('" + ChangeFeed.CHANNEL + "',"
+            + "    json_build_object('table', lower(TG_TABLE_NAME), 'op', TG_OP, 'id', id)::text)"
+            + "   FROM unnest(ids) AS id;"
+            + "  END IF;"
+            + "  RETURN NULL;"
+            + " END $$" },
+            changeTriggers("Catalog", "gameid", "unitsinstock"),
+            changeTriggers("Users", "login"),
+            changeTriggers("TrackingInfo", "trackingid"))),
+
+      // an order written with a due date behind the watermark, e.g. by an
+      // import or a journal replay, is still counted; counted orders leave the index
+      new Migration(8, "Index the unreturned orders not yet counted as overdue",
+         "DROP INDEX IF EXISTS rentalorder_open_due_idx",
+         "CREATE INDEX rentalorder_open_due_idx ON RentalOrder (dueDate)"
+         + " WHERE returnedDate IS NULL AND NOT overdueCounted")
+   ));
+
+   /*
+    * The statement-level triggers that publish a table's changes.  The
+    * arguments are the key column and the columns whose changes are not
+    * published, in lower case.
+    **/
+   private static String[] changeTriggers(String table, String... columns) {
+      String args = "'" + String.join("', '", columns) + "'";
+      String prefix = table.toLowerCase(Locale.ROOT) + "_notify_";
+      return new String[] {
+         "DROP TRIGGER IF EXISTS " + prefix + "insert ON " + table,
+         "CREATE TRIGGER " + prefix + "insert AFTER INSERT ON " + table
+            + " REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT"
+            + " EXECUTE FUNCTION gamerental_notify_change(" + args + ")",
+         "DROP TRIGGER IF EXISTS " + prefix + "update ON " + table,
+         "CREATE TRIGGER " + prefix + "update AFTER UPDATE ON " + table
+            + " REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT"
+            + " EXECUTE FUNCTION gamerental_notify_change(" + args + ")",
+         "DROP TRIGGER IF EXISTS " + prefix + "delete ON " + table,
+         "CREATE TRIGGER " + prefix + "delete AFTER DELETE ON " + table
+            + " REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT"
+            + " EXECUTE FUNCTION gamerental_notify_change(" + args + ")",
+         "DROP TRIGGER IF EXISTS " + prefix + "truncate ON " + table,
+         "CREATE TRIGGER " + prefix + "truncate AFTER TRUNCATE ON " + table
+            + " FOR EACH STATEMENT EXECUTE FUNCTION gamerental_notify_change(" + args + ")"
+      };
+   }//end changeTriggers
+
+   private static String[] concat(String[]... parts) {
+      List<String> all = new ArrayList<String>();
+      for (String[] part : parts)
+         all.addAll(Arrays.asList(part));
+      return all.toArray(new String[0]);
+   }//end concat
+
+   private final GameRental _esql;
+
+   /**
+    * Creates a new migrator
+    *
+    * @param esql the database to migrate
+    */
+   public SchemaMigrator(GameRental esql) {
+      this._esql = esql;
+   }//end SchemaMigrator
+
+   /**
+    * Applies every migration the database has not seen yet.
+    *
+    * @return the versions that were applied, in order
+    * @throws java.sql.SQLException when a migration failed; it is rolled back
+    */
+   public List<Integer> migrate() throws SQLException {
+      List<Integer> applied = new ArrayList<Integer>();
+      for (Migration migration : MIGRATIONS) {
+         boolean ran = this._esql.inTransaction(() -> {
+            // serializes concurrent migrators until this transaction ends
+            this._esql.executeQuery("SELECT pg_advisory_xact_lock(?)", MIGRATION_LOCK_KEY);
+            this._esql.executeUpdate("CREATE TABLE IF NOT EXISTS schema_migrations ("
+               + " version integer PRIMARY KEY,"
+               + " description text NOT NULL,"
+               + " appliedAt timestamp NOT NULL DEFAULT now())");
+            if (this._esql.executeQuery("SELECT 1 FROM schema_migrations WHERE version = ?",
+                  migration.version) > 0)
+               return false;
+
+            for (String statement : migration.statements)
+               this._esql.executeUpdate(statement);
+            this._esql.executeUpdate("INSERT INTO schema_migrations (version, description) VALUES (?, ?)",
+               migration.version, migration.description);
+            return true;
+         });
+         if (ran) {
+            System.out.println("Applied migration " + migration.version + ": " + migration.description);
+            applied.add(migration.version);
+         }//end if
+      }//end for
+      return applied;
+   }//end migrate
+
+   /**
+    * @return the highest version applied to the database, or 0 for none
+    * @throws java.sql.SQLException when the version cannot be read
+    */
+   public int currentVersion() throws SQLException {
+      if (this._esql.executeQuery("SELECT 1 FROM pg_tables WHERE tablename = 'schema_migrations'") == 0)
+         return 0;
+      int[] version = { 0 };
+      this._esql.executeQueryForEach("SELECT coalesce(max(version), 0) FROM schema_migrations",
+         row -> version[0] = row.getInt(1));
+      return version[0];
+   }//end currentVersion
+
+   /**
+    * @return the version the newest migration brings the schema to
+    */
+   public static int latestVersion() {
+      return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+   }//end latestVersion
+
+}//end SchemaMigrator
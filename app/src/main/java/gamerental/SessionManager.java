@@ -0,0 +1,371 @@
+package gamerental;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the sessions of logged-in users in memory.  A password
+ * is checked against its salted hash once, at login; the session then
+ * holds the user's role and profile, so authorizing an operation or
+ * showing the profile needs no database round trip.
+ *
+ * A session ends after TTL_MILLIS without use.  When a user's row changes
+ * (updateProfile, updateUser, or any node through the change feed), their
+ * sessions are marked stale and read the row again on next use; a user
+ * whose row is gone is logged out.
+ *
+ * Service mode requests with Basic credentials share one session per
+ * login, found by a fast digest of the password, so only the first
+ * request of a client pays for the hash.
+ *
+ */
+public class SessionManager implements AutoCloseable {
+
+   // idle time after which a session ends.
+   static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("gamerental.session.ttlSeconds", 1800L));
+
+   // how often ended sessions are dropped.
+   static final long SWEEP_INTERVAL_MILLIS = Math.min(TTL_MILLIS, 60000L);
+
+   // bytes of randomness in a session token.
+   static final int TOKEN_BYTES = 32;
+
+   /**
+    * One logged-in user.  The role and profile are as of the last read of
+    * the user's row.
+    */
+   public static final class Session {
+      private final String _token;
+      private final String _login;
+      private volatile String _role;
+      private volatile Map<String, Object> _profile;
+      private volatile long _expiresAt;
+      private volatile boolean _stale = false;
+
+      // digest of the Basic password this session was shared for, else null.
+      private volatile byte[] _credential = null;
+
+      private Session(String token, String login) {
+         this._token = token;
+         this._login = login;
+      }//end Session
+
+      public String token() {
+         return this._token;
+      }//end token
+
+      public String login() {
+         return this._login;
+      }//end login
+
+      /**
+       * @return the role, trimmed and in lower case, e.g. "manager"
+       */
+      public String role() {
+         return this._role;
+      }//end role
+
+      /**
+       * @return the user's row without the password, keyed by column name
+       */
+      public Map<String, Object> profile() {
+         return this._profile;
+      }//end profile
+
+      /**
+       * @param roles the roles allowed
+       * @return whether the user holds one of them
+       */
+      public boolean hasRole(String... roles) {
+         for (String role : roles)
+            if (role.equals(this._role))
+               return true;
+         return false;
+      }//end hasRole
+
+      /**
+       * @return whether the user is an employee or manager, who may see
+       *         every order
+       */
+      public boolean isStaff() {
+         return hasRole("employee", "manager");
+      }//end isStaff
+
+      /**
+       * @return milliseconds until the session ends unless used
+       */
+      public long expiresInMillis() {
+         return Math.max(0, this._expiresAt - System.currentTimeMillis());
+      }//end expiresInMillis
+   }//end Session
+
+   private final GameRental _esql;
+   private final SecureRandom _random = new SecureRandom();
+
+   // keys the Basic password digests, so a digest is useless outside this process.
+   private final byte[] _pepper = new byte[32];
+
+   private final ConcurrentHashMap<String, Session> _sessions = new ConcurrentHashMap<String, Session>();
+   private final ConcurrentHashMap<String, Set<Session>> _byLogin = new ConcurrentHashMap<String, Set<Session>>();
+   private final ConcurrentHashMap<String, Session> _basic = new ConcurrentHashMap<String, Session>();
+   private final ScheduledExecutorService _sweeper;
+
+   /**
+    * Creates a new session store
+    *
+    * @param esql the database holding the Users table
+    */
+   public SessionManager(GameRental esql) {
+      this._esql = esql;
+      this._random.nextBytes(this._pepper);
+      this._sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "session-sweeper");
+         t.setDaemon(true);
+         return t;
+      });
+      this._sweeper.scheduleWithFixedDelay(this::sweep,
+         SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+   }//end SessionManager
+
+   /**
+    * Checks a password and opens a new session.  A password still stored
+    * in plain text, or hashed with fewer rounds than now configured, is
+    * replaced by a fresh hash.
+    *
+    * @param login the user
+    * @param password the plain password given
+    * @return the new session, or null if the login or password is wrong
+    * @throws java.sql.SQLException when the user cannot be read
+    */
+   public Session login(String login, String password) throws SQLException {
+      Map<String, Object> row = loadUser(login);
+      String stored = row == null ? null : (String) row.get("password");
+      if (!PasswordHasher.verify(password, stored))
+         return null;
+      if (PasswordHasher.needsRehash(stored)) {
+         // only if no one changed it meanwhile; on the primary, even inside a read
+         String hash = PasswordHasher.hash(password);
+         this._esql.onShardOf(login, () -> this._esql.onPrimary(() ->
+            this._esql.executeUpdate(Queries.UPGRADE_PASSWORD, hash, login, stored)));
+      }//end if
+
+      Session session = new Session(newToken(), login);
+      apply(session, row);
+      touch(session);
+      this._sessions.put(session._token, session);
+      this._byLogin.compute(login, (l, sessions) -> {
+         Set<Session> set = sessions != null ? sessions : ConcurrentHashMap.<Session>newKeySet();
+         set.add(session);
+         return set;
+      });
+      return session;
+   }//end login
+
+   /**
+    * Authenticates a request carrying Basic credentials.  Repeated
+    * requests with the same password reuse one session and skip the hash.
+    *
+    * @param login the user
+    * @param password the plain password given
+    * @return the session, or null if the login or password is wrong
+    * @throws java.sql.SQLException when the user cannot be read
+    */
+   public Session authenticate(String login, String password) throws SQLException {
+      byte[] credential = credential(login, password);
+      Session session = this._basic.get(login);
+      if (session != null && MessageDigest.isEqual(credential, session._credential)) {
+         session = current(session);
+         if (session != null)
+            return session;
+      }//end if
+      session = login(login, password);
+      if (session != null) {
+         session._credential = credential;
+         Session replaced = this._basic.put(login, session);
+         if (replaced != null && replaced != session)
+            end(replaced);
+      }//end if
+      return session;
+   }//end authenticate
+
+   /**
+    * @param token the session token
+    * @return the session, re-read if its user changed, or null if there
+    *         is no such session or it ended
+    */
+   public Session get(String token) {
+      if (token == null)
+         return null;
+      Session session = this._sessions.get(token);
+      return session == null ? null : current(session);
+   }//end get
+
+   /**
+    * @param token the session token
+    * @return the login of the session, or null; neither extends nor
+    *         re-reads the session
+    */
+   public String loginOf(String token) {
+      Session session = token == null ? null : this._sessions.get(token);
+      return session == null ? null : session._login;
+   }//end loginOf
+
+   /**
+    * @param login a login
+    * @return whether the user exists; a user with a session is taken as
+    *         existing, any other is looked up
+    * @throws java.sql.SQLException when the user cannot be read
+    */
+   public boolean isKnown(String login) throws SQLException {
+      return login != null && (this._byLogin.containsKey(login) || loadUser(login) != null);
+   }//end isKnown
+
+   /**
+    * Re-reads a session's user if it changed and extends the session.
+    *
+    * @param session a session handed out by this store
+    * @return the session, or null if it ended
+    */
+   public Session current(Session session) {
+      if (session._expiresAt - System.currentTimeMillis() <= 0) {
+         end(session);
+         return null;
+      }//end if
+      if (session._stale) {
+         synchronized (session) {
+            if (session._stale) {
+               // clear first, so a change during the read marks it again
+               session._stale = false;
+               try{
+                  Map<String, Object> row = loadUser(session._login);
+                  if (row == null) {
+                     end(session);
+                     return null;
+                  }//end if
+                  apply(session, row);
+               }catch (SQLException e){
+                  // keep what we have and try again next time.
+                  session._stale = true;
+                  System.err.println("Could not refresh the session of " + session._login + ": " + e.getMessage());
+               }//end try
+            }//end if
+         }//end synchronized
+      }//end if
+      touch(session);
+      return session;
+   }//end current
+
+   /**
+    * Marks the sessions of a user stale after their row changed, and
+    * forgets their Basic password, which may have changed too.
+    *
+    * @param login the user, or null when any number of users changed
+    */
+   public void invalidate(String login) {
+      if (login == null) {
+         this._basic.clear();
+         for (Session session : this._sessions.values())
+            session._stale = true;
+         return;
+      }//end if
+      this._basic.remove(login);
+      Set<Session> sessions = this._byLogin.get(login);
+      if (sessions != null)
+         for (Session session : sessions)
+            session._stale = true;
+   }//end invalidate
+
+   /**
+    * Ends a session.
+    *
+    * @param token the session token
+    */
+   public void logout(String token) {
+      Session session = token == null ? null : this._sessions.get(token);
+      if (session != null)
+         end(session);
+   }//end logout
+
+   private void end(Session session) {
+      this._sessions.remove(session._token);
+      this._basic.remove(session._login, session);
+      this._byLogin.computeIfPresent(session._login, (l, sessions) -> {
+         sessions.remove(session);
+         return sessions.isEmpty() ? null : sessions;
+      });
+   }//end end
+
+   private void sweep() {
+      long now = System.currentTimeMillis();
+      for (Session session : this._sessions.values())
+         if (session._expiresAt - now <= 0)
+            end(session);
+   }//end sweep
+
+   private static void touch(Session session) {
+      session._expiresAt = System.currentTimeMillis() + TTL_MILLIS;
+   }//end touch
+
+   private static void apply(Session session, Map<String, Object> row) {
+      Object role = row.get("role");
+      session._role = role == null ? "" : role.toString().trim().toLowerCase(Locale.ROOT);
+      Map<String, Object> profile = new LinkedHashMap<String, Object>(row);
+      profile.remove("password");
+      session._profile = Collections.unmodifiableMap(profile);
+   }//end apply
+
+   /*
+    * Reads a user's row from the primary of their shard, so a session
+    * never picks up a replica's older copy of a change it was told about.
+    **/
+   private Map<String, Object> loadUser(String login) throws SQLException {
+      Map<String, Object> user = new LinkedHashMap<String, Object>();
+      this._esql.onShardOf(login, () -> this._esql.onPrimary(() -> this._esql.executeQueryForEach(Queries.VIEW_PROFILE, row -> {
+         for (int i = 1; i <= row.columnCount(); ++i)
+            user.put(row.columnName(i), row.getObject(i));
+      }, login)));
+      return user.isEmpty() ? null : user;
+   }//end loadUser
+
+   private String newToken() {
+      byte[] token = new byte[TOKEN_BYTES];
+      this._random.nextBytes(token);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+   }//end newToken
+
+   private byte[] credential(String login, String password) {
+      try{
+         MessageDigest sha = MessageDigest.getInstance("SHA-256");
+         sha.update(this._pepper);
+         sha.update(login.getBytes(StandardCharsets.UTF_8));
+         sha.update((byte) 0);
+         return sha.digest(password.getBytes(StandardCharsets.UTF_8));
+      }catch (NoSuchAlgorithmException e){
+         // every Java SE runtime provides SHA-256.
+         throw new IllegalStateException(e);
+      }//end try
+   }//end credential
+
+   /**
+    * Stops dropping ended sessions; the sessions themselves are forgotten
+    * with the process.
+    */
+   @Override
+   public void close() {
+      this._sweeper.shutdownNow();
+   }//end close
+
+}//end SessionManager
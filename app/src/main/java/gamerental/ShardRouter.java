@@ -0,0 +1,153 @@
+package gamerental;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * This class spreads per-user data over several PostgreSQL databases,
+ * the shards.  Each shard holds the whole schema.  A user's Users row and
+ * all of their RentalOrder, GamesInOrder and TrackingInfo rows, and the
+ * rollups of their orders, live on the shard their login hashes to, so
+ * every per-user statement still runs on a single database.
+ *
+ * Shard 0 is the database named on the command line.  It alone holds the
+ * authoritative Catalog, including the stock counts, and the id
+ * sequences; the other shards keep a copy of Catalog that GameRental
+ * refreshes from shard 0's change feed.  Ids of orders and shipments end
+ * in SUFFIX and the number of their shard, so a lookup by id goes
+ * straight to the right shard; ids without one are on shard 0.
+ *
+ * Logins are placed by a hash modulo the number of shards, so the list
+ * of shards must not change once it holds data.
+ *
+ */
+public class ShardRouter implements AutoCloseable {
+
+   // separates an id from the number of its shard, e.g. RO1042-s2.
+   static final String SUFFIX = "-s";
+
+   /**
+    * One database and its connection pool.
+    */
+   static final class Shard {
+      final int index;
+      final String url;
+      final ConnectionPool pool;
+
+      Shard(int index, String url, ConnectionPool pool) {
+         this.index = index;
+         this.url = url;
+         this.pool = pool;
+      }//end Shard
+   }//end Shard
+
+   private final List<Shard> _shards;
+
+   /**
+    * Creates a new router; with no other URLs, everything is on shard 0
+    *
+    * @param homeURL the JDBC URL of shard 0
+    * @param home the pool of shard 0, owned by the caller
+    * @param urls the JDBC URLs of the other shards, in shard order
+    * @param props the driver properties, as for shard 0
+    * @throws java.sql.SQLException when a pool cannot be created
+    */
+   public ShardRouter(String homeURL, ConnectionPool home, List<String> urls, Properties props) throws SQLException {
+      this(open(homeURL, home, urls, props));
+   }//end ShardRouter
+
+   /**
+    * Creates a router over shards already set up, shard 0 first
+    *
+    * @param shards the shards, numbered by their position
+    */
+   ShardRouter(List<Shard> shards) {
+      this._shards = Collections.unmodifiableList(new ArrayList<Shard>(shards));
+   }//end ShardRouter
+
+   private static List<Shard> open(String homeURL, ConnectionPool home, List<String> urls, Properties props)
+         throws SQLException {
+      List<Shard> shards = new ArrayList<Shard>();
+      shards.add(new Shard(0, homeURL, home));
+      for (String url : urls) {
+         shards.add(new Shard(shards.size(), url, new ConnectionPool(url, props, GameRental.POOL_MIN_SIZE,
+            GameRental.POOL_MAX_SIZE, GameRental.POOL_BORROW_TIMEOUT_MILLIS, GameRental.POOL_IDLE_TIMEOUT_MILLIS,
+            GameRental.POOL_LEAK_THRESHOLD_MILLIS)));
+      }//end for
+      return shards;
+   }//end open
+
+   /**
+    * @return the number of shards, at least 1
+    */
+   public int size() {
+      return this._shards.size();
+   }//end size
+
+   /**
+    * @return every shard, shard 0 first
+    */
+   List<Shard> all() {
+      return this._shards;
+   }//end all
+
+   Shard shard(int index) {
+      return this._shards.get(index);
+   }//end shard
+
+   /**
+    * @param login a user
+    * @return the shard holding the user's data
+    */
+   public int shardOf(String login) {
+      if (this._shards.size() == 1)
+         return 0;
+      CRC32 crc = new CRC32();
+      crc.update(login.getBytes(StandardCharsets.UTF_8));
+      return (int) (crc.getValue() % this._shards.size());
+   }//end shardOf
+
+   /**
+    * @param id an order or tracking id
+    * @return the shard the id was created on; 0 for ids without a shard
+    *         number, or with one this router does not have
+    */
+   public int shardOfId(String id) {
+      int at = id == null ? -1 : id.lastIndexOf(SUFFIX);
+      if (at < 0 || at + SUFFIX.length() == id.length())
+         return 0;
+      int shard = 0;
+      for (int i = at + SUFFIX.length(); i < id.length(); ++i) {
+         char c = id.charAt(i);
+         if (c < '0' || c > '9' || shard >= this._shards.size())
+            return 0;
+         shard = shard * 10 + (c - '0');
+      }//end for
+      return shard < this._shards.size() ? shard : 0;
+   }//end shardOfId
+
+   /**
+    * @param id a new order or tracking id
+    * @param shard the shard it is created on
+    * @return the id as stored; unchanged when there is only one shard
+    */
+   public String tag(String id, int shard) {
+      return this._shards.size() == 1 ? id : id + SUFFIX + shard;
+   }//end tag
+
+   /**
+    * Closes the pools of the other shards; shard 0's belongs to the caller.
+    */
+   @Override
+   public void close() {
+      for (Shard shard : this._shards)
+         if (shard.index != 0)
+            shard.pool.close();
+   }//end close
+
+}//end ShardRouter
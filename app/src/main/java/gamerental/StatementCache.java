@@ -0,0 +1,128 @@
+package gamerental;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps a bounded, least-recently-used cache of prepared
+ * statements for a single physical connection.  Statements are keyed by
+ * their SQL text, so every call site that uses the same bind-variable
+ * query shares one PreparedStatement and the server only parses and plans
+ * it once.
+ *
+ * A StatementCache is not thread safe; it belongs to exactly one
+ * connection and must only be used by the thread that currently owns
+ * that connection.
+ *
+ */
+public class StatementCache {
+
+   // default number of statements kept open per connection.
+   public static final int DEFAULT_CAPACITY = 64;
+
+   // the connection the cached statements were prepared on.
+   private final Connection _connection;
+
+   // statements in access order; the eldest entry is evicted first.
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+
+   // number of lookups served from the cache and prepared fresh.
+   private long _hits = 0;
+   private long _misses = 0;
+
+   /**
+    * Creates a new statement cache on top of a connection
+    *
+    * @param connection the connection statements are prepared on
+    * @param capacity the maximum number of statements kept open
+    */
+   public StatementCache(Connection connection, final int capacity) {
+      this._connection = connection;
+      this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= capacity)
+               return false;
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Returns the cached statement for the given SQL text, preparing it on
+    * first use.  The caller must not close the returned statement.
+    *
+    * @param sql the SQL text with '?' placeholders
+    * @return a prepared statement with its parameters cleared
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare(String sql) throws SQLException {
+      PreparedStatement stmt = this._statements.get(sql);
+      if (stmt != null && !stmt.isClosed()) {
+         ++this._hits;
+         stmt.clearParameters();
+         return stmt;
+      }//end if
+      ++this._misses;
+      stmt = this._connection.prepareStatement(sql);
+      this._statements.put(sql, stmt);
+      return stmt;
+   }//end prepare
+
+   /**
+    * Drops a statement from the cache, e.g. after it failed in a way that
+    * leaves it unusable.
+    *
+    * @param sql the SQL text of the statement
+    */
+   public void evict(String sql) {
+      closeQuietly(this._statements.remove(sql));
+   }//end evict
+
+   /**
+    * @return the number of statements currently cached
+    */
+   public int size() {
+      return this._statements.size();
+   }//end size
+
+   /**
+    * @return the number of lookups served from the cache
+    */
+   public long hits() {
+      return this._hits;
+   }//end hits
+
+   /**
+    * @return the number of lookups that had to prepare a new statement
+    */
+   public long misses() {
+      return this._misses;
+   }//end misses
+
+   /**
+    * Closes every cached statement.  The connection itself is left open.
+    */
+   public void close() {
+      Iterator<PreparedStatement> it = this._statements.values().iterator();
+      while (it.hasNext()) {
+         closeQuietly(it.next());
+         it.remove();
+      }//end while
+   }//end close
+
+   private static void closeQuietly(PreparedStatement stmt) {
+      try{
+         if (stmt != null)
+            stmt.close();
+      }catch (SQLException e){
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end StatementCache
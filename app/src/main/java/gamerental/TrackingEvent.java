@@ -0,0 +1,98 @@
+package gamerental;
+
+import java.sql.Timestamp;
+
+/**
+ * This class is one courier status event for a shipment.  Fields other
+ * than the tracking id, status and event time may be null, meaning the
+ * stored value is kept.
+ *
+ */
+public final class TrackingEvent {
+
+   private final String _trackingID;
+   private final String _status;
+   private final String _currentLocation;
+   private final String _courierName;
+   private final String _additionalComments;
+   private final Timestamp _eventTime;
+
+   /**
+    * Creates a new event
+    *
+    * @param trackingID the shipment
+    * @param status the new status
+    * @param currentLocation where the shipment is, or null if unknown
+    * @param courierName the courier, or null to keep the stored one
+    * @param additionalComments comments, or null to keep the stored ones
+    * @param eventTime when the courier recorded the event
+    */
+   public TrackingEvent(String trackingID, String status, String currentLocation,
+                        String courierName, String additionalComments, Timestamp eventTime) {
+      if (trackingID == null || trackingID.isEmpty() || status == null || status.isEmpty())
+         throw new IllegalArgumentException("A tracking event needs a trackingID and a status");
+      this._trackingID = trackingID;
+      this._status = status;
+      this._currentLocation = currentLocation;
+      this._courierName = courierName;
+      this._additionalComments = additionalComments;
+      this._eventTime = eventTime;
+   }//end TrackingEvent
+
+   /**
+    * Parses one tab-separated line: trackingID, status, currentLocation,
+    * courierName, eventTime and additionalComments.  Trailing fields may
+    * be left out and empty fields are null; a missing event time means now.
+    *
+    * @param line the line to parse
+    * @return the event
+    * @throws java.lang.IllegalArgumentException when the line is malformed
+    */
+   public static TrackingEvent parse(String line) {
+      String[] f = line.split("\t", -1);
+      Timestamp eventTime = field(f, 4) == null
+         ? new Timestamp(System.currentTimeMillis())
+         : Timestamp.valueOf(field(f, 4));
+      return new TrackingEvent(field(f, 0), field(f, 1), field(f, 2), field(f, 3), field(f, 5), eventTime);
+   }//end parse
+
+   private static String field(String[] fields, int i) {
+      if (i >= fields.length)
+         return null;
+      String value = fields[i].trim();
+      return value.isEmpty() ? null : value;
+   }//end field
+
+   /**
+    * @param other a later-arriving event for the same shipment
+    * @return whichever of the two events happened last, the other on a tie
+    */
+   public TrackingEvent latest(TrackingEvent other) {
+      return other._eventTime.before(this._eventTime) ? this : other;
+   }//end latest
+
+   public String trackingID() {
+      return this._trackingID;
+   }//end trackingID
+
+   public String status() {
+      return this._status;
+   }//end status
+
+   public String currentLocation() {
+      return this._currentLocation;
+   }//end currentLocation
+
+   public String courierName() {
+      return this._courierName;
+   }//end courierName
+
+   public String additionalComments() {
+      return this._additionalComments;
+   }//end additionalComments
+
+   public Timestamp eventTime() {
+      return this._eventTime;
+   }//end eventTime
+
+}//end TrackingEvent
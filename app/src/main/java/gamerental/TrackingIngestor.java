@@ -0,0 +1,315 @@
+package gamerental;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class ingests courier status events in bulk.  Events are buffered
+ * by tracking id, and a newer event for a shipment replaces the buffered
+ * one, so a burst of updates to one parcel costs one row write.  A
+ * background flusher applies the surviving events every
+ * FLUSH_INTERVAL_MILLIS, or as soon as BATCH_SIZE shipments are waiting,
+ * with one set-based UPDATE per batch.
+ *
+ * At most MAX_PENDING shipments are buffered or being written.  When the
+ * database falls behind, submit() blocks until a batch has been written,
+ * which pushes back on the source instead of growing the heap.
+ *
+ * Events come from tab-separated lines (see TrackingEvent.parse) read
+ * from a file or a socket, or from POST /tracking/events in service mode.
+ *
+ */
+public class TrackingIngestor implements AutoCloseable {
+
+   // shipments buffered or in flight before submit() blocks.
+   static final int MAX_PENDING = Integer.getInteger("gamerental.tracking.maxPending", 10000);
+
+   // shipments written per UPDATE statement.
+   static final int BATCH_SIZE = Integer.getInteger("gamerental.tracking.batchSize", 500);
+
+   // longest time an event waits in the buffer.
+   static final long FLUSH_INTERVAL_MILLIS = Long.getLong("gamerental.tracking.flushIntervalMillis", 100L);
+
+   // pause after a failed batch before it is retried.
+   static final long RETRY_DELAY_MILLIS = 1000L;
+
+   private final GameRental _esql;
+
+   // the latest unwritten event of each shipment.
+   private final ConcurrentHashMap<String, TrackingEvent> _pending = new ConcurrentHashMap<String, TrackingEvent>();
+
+   // one permit per shipment that may still be buffered or in flight.
+   private final Semaphore _capacity = new Semaphore(MAX_PENDING);
+
+   private final Thread _flusher;
+   private final Object _wakeup = new Object();
+   private volatile boolean _running = true;
+
+   private final LongAdder _received = new LongAdder();
+   private final LongAdder _coalesced = new LongAdder();
+   private final LongAdder _applied = new LongAdder();
+   private final LongAdder _skipped = new LongAdder();
+   private final LongAdder _batches = new LongAdder();
+
+   /**
+    * Creates a new ingestor; call start() to begin flushing
+    *
+    * @param esql the database the events are written to
+    */
+   public TrackingIngestor(GameRental esql) {
+      this._esql = esql;
+      this._flusher = new Thread(this::flushLoop, "tracking-flusher");
+      this._flusher.setDaemon(true);
+   }//end TrackingIngestor
+
+   /**
+    * Starts the background flusher.
+    */
+   public void start() {
+      this._flusher.start();
+   }//end start
+
+   /**
+    * Buffers one event, replacing any older buffered event for the same
+    * shipment.  Blocks while MAX_PENDING other shipments are waiting.
+    *
+    * @param event the courier event
+    * @throws java.lang.InterruptedException when interrupted while blocked
+    */
+   public void submit(TrackingEvent event) throws InterruptedException {
+      if (!this._running)
+         throw new IllegalStateException("Tracking ingestion is stopped");
+      this._received.increment();
+
+      // a shipment that is already buffered needs no new permit
+      if (this._pending.computeIfPresent(event.trackingID(), (id, buffered) -> buffered.latest(event)) != null) {
+         this._coalesced.increment();
+         return;
+      }//end if
+
+      this._capacity.acquire();
+      boolean[] merged = { false };
+      this._pending.merge(event.trackingID(), event, (buffered, e) -> {
+         merged[0] = true;
+         return buffered.latest(e);
+      });
+      if (merged[0]) {
+         this._capacity.release();
+         this._coalesced.increment();
+      } else if (this._pending.size() >= BATCH_SIZE) {
+         synchronized (this._wakeup) {
+            this._wakeup.notify();
+         }//end synchronized
+      }//end if
+   }//end submit
+
+   /**
+    * Submits every event line of a stream.  Blank lines and lines starting
+    * with '#' are skipped; malformed lines are reported and skipped.
+    *
+    * @param source the event lines
+    * @return the number of events submitted
+    * @throws java.io.IOException when the stream cannot be read
+    * @throws java.lang.InterruptedException when interrupted while blocked
+    */
+   public long ingest(Reader source) throws IOException, InterruptedException {
+      BufferedReader lines = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+      long submitted = 0;
+      long lineNo = 0;
+      String line;
+      while ((line = lines.readLine()) != null) {
+         ++lineNo;
+         if (line.trim().isEmpty() || line.startsWith("#"))
+            continue;
+         try{
+            submit(TrackingEvent.parse(line));
+            ++submitted;
+         }catch (IllegalArgumentException e){
+            System.err.println("Skipping tracking event on line " + lineNo + ": " + e.getMessage());
+         }//end try
+      }//end while
+      return submitted;
+   }//end ingest
+
+   /**
+    * Accepts event streams on a TCP port until the thread is interrupted
+    * or the ingestor is closed.  Each connection sends event lines in
+    * UTF-8 and is read on its own thread.
+    *
+    * @param port the port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public void listen(int port) throws IOException {
+      try (ServerSocket server = new ServerSocket(port)) {
+         System.out.println("Accepting tracking events on port " + server.getLocalPort());
+         while (this._running && !Thread.currentThread().isInterrupted()) {
+            Socket socket = server.accept();
+            Thread reader = new Thread(() -> {
+               try (Socket s = socket;
+                    Reader in = new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)) {
+                  ingest(in);
+               }catch (IOException e){
+                  System.err.println("Tracking event connection failed: " + e.getMessage());
+               }catch (InterruptedException e){
+                  Thread.currentThread().interrupt();
+               }//end try
+            }, "tracking-source-" + socket.getRemoteSocketAddress());
+            reader.setDaemon(true);
+            reader.start();
+         }//end while
+      }//end try
+   }//end listen
+
+   private void flushLoop() {
+      while (this._running || !this._pending.isEmpty()) {
+         synchronized (this._wakeup) {
+            if (this._running && this._pending.size() < BATCH_SIZE) {
+               try{
+                  this._wakeup.wait(FLUSH_INTERVAL_MILLIS);
+               }catch (InterruptedException e){
+                  // closing; flush what is left.
+               }//end try
+            }//end if
+         }//end synchronized
+         if (!flush()) {
+            try{
+               Thread.sleep(RETRY_DELAY_MILLIS);
+            }catch (InterruptedException e){
+               // closing; retry at once.
+            }//end try
+         }//end if
+      }//end while
+   }//end flushLoop
+
+   /*
+    * Writes everything buffered, BATCH_SIZE shipments per statement and
+    * each to the shard its trackingID names.  A failed batch goes back
+    * into the buffer, behind any newer events for the same shipments, and
+    * false is returned.
+    **/
+   private boolean flush() {
+      ShardRouter shards = this._esql.shards();
+      List<List<TrackingEvent>> batches = new ArrayList<List<TrackingEvent>>();
+      for (int i = 0; i < shards.size(); ++i)
+         batches.add(new ArrayList<TrackingEvent>(BATCH_SIZE));
+      boolean written = true;
+      Iterator<String> ids = this._pending.keySet().iterator();
+      while (written && ids.hasNext()) {
+         TrackingEvent event = this._pending.remove(ids.next());
+         if (event == null)
+            continue;
+         int shard = shards.shardOfId(event.trackingID());
+         List<TrackingEvent> batch = batches.get(shard);
+         batch.add(event);
+         if (batch.size() == BATCH_SIZE) {
+            written = write(shard, batch);
+            batch.clear();
+         }//end if
+      }//end while
+      for (int shard = 0; shard < batches.size(); ++shard) {
+         List<TrackingEvent> batch = batches.get(shard);
+         // after a failure the rest still go back into the buffer
+         if (!batch.isEmpty())
+            written = written ? write(shard, batch) : requeueAll(batch);
+      }//end for
+      return written;
+   }//end flush
+
+   private boolean requeueAll(List<TrackingEvent> batch) {
+      for (TrackingEvent event : batch)
+         requeue(event);
+      return false;
+   }//end requeueAll
+
+   private boolean write(int shard, List<TrackingEvent> batch) {
+      int n = batch.size();
+      String[] trackingIDs = new String[n];
+      String[] statuses = new String[n];
+      String[] locations = new String[n];
+      String[] couriers = new String[n];
+      String[] comments = new String[n];
+      String[] eventTimes = new String[n];
+      for (int i = 0; i < n; ++i) {
+         TrackingEvent e = batch.get(i);
+         trackingIDs[i] = e.trackingID();
+         statuses[i] = e.status();
+         locations[i] = e.currentLocation();
+         couriers[i] = e.courierName();
+         comments[i] = e.additionalComments();
+         eventTimes[i] = e.eventTime().toString();
+      }//end for
+
+      try{
+         int updated = this._esql.onShard(shard, () -> this._esql.executeUpdate(Queries.APPLY_TRACKING_EVENTS,
+            trackingIDs, statuses, locations, couriers, comments, eventTimes));
+         this._applied.add(updated);
+         this._skipped.add(n - updated);
+         this._batches.increment();
+         this._capacity.release(n);
+         return true;
+      }catch (SQLException e){
+         System.err.println("Tracking batch of " + n + " failed, will retry: " + e.getMessage());
+         return requeueAll(batch);
+      }//end try
+   }//end write
+
+   // puts an unwritten event back, keeping its permit unless a newer event took the slot.
+   private void requeue(TrackingEvent event) {
+      boolean[] merged = { false };
+      this._pending.merge(event.trackingID(), event, (newer, e) -> {
+         merged[0] = true;
+         return e.latest(newer);
+      });
+      if (merged[0])
+         this._capacity.release();
+   }//end requeue
+
+   /**
+    * @return counts of received, coalesced, applied and skipped events,
+    *         batches written and shipments still pending
+    */
+   public Map<String, Object> stats() {
+      Map<String, Object> stats = new LinkedHashMap<String, Object>();
+      stats.put("received", this._received.sum());
+      stats.put("coalesced", this._coalesced.sum());
+      stats.put("applied", this._applied.sum());
+      stats.put("skipped", this._skipped.sum());
+      stats.put("batches", this._batches.sum());
+      stats.put("pending", this._pending.size());
+      return stats;
+   }//end stats
+
+   /**
+    * Stops accepting events and waits until everything buffered is written.
+    */
+   @Override
+   public void close() {
+      this._running = false;
+      synchronized (this._wakeup) {
+         this._wakeup.notify();
+      }//end synchronized
+      if (this._flusher.isAlive()) {
+         try{
+            this._flusher.join(TimeUnit.SECONDS.toMillis(30));
+         }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+         }//end try
+      }//end if
+   }//end close
+
+}//end TrackingIngestor
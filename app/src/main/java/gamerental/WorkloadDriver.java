@@ -0,0 +1,640 @@
+package gamerental;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class load-tests the system the way its users use it.  Any number
+ * of simulated users log in and run the operations of the menu, through
+ * the same GameRental calls the menu and service mode make, and the
+ * throughput and latency percentiles of every operation are reported.
+ *
+ * Each user either picks operations at random from a weighted mix
+ * (gamerental.workload.mix) or replays session scripts, one operation per
+ * line:
+ *
+ *    # comment
+ *    login ${user}          log in; ${user} is the simulated user's login
+ *    browse [genre]         list the catalog, or one genre
+ *    search [words]         search titles and descriptions
+ *    history                first page of the order history
+ *    details [orderID]      one order with its games and shipment
+ *    tracking [trackingID]  one shipment
+ *    order [gameID[:units] ...]
+ *    profile                change the phone number
+ *    sleep <millis>         think time, not measured
+ *    logout
+ *
+ * Arguments left out are picked at random from the seeded data and from
+ * what the user saw earlier in the session.  Operations other than login
+ * log the user in first if needed.
+ *
+ * seed() adds a synthetic population to run against: users load1..loadN,
+ * all with password SEED_PASSWORD, catalog titles LG1..LGn, and orders
+ * spread over the last SEED_DAYS days with two games and a shipment each.
+ * The users and their orders go to their shards like any others.
+ *
+ */
+public class WorkloadDriver {
+
+   // operation=weight pairs the synthetic mix picks from.
+   static final String MIX = System.getProperty("gamerental.workload.mix",
+      "browse=25,search=15,history=20,details=10,tracking=15,order=10,profile=5");
+
+   // pause after each operation of the synthetic mix.
+   static final long THINK_MILLIS = Long.getLong("gamerental.workload.thinkMillis", 0L);
+
+   // operations of the synthetic mix between logging in and out.
+   static final int OPS_PER_SESSION = Integer.getInteger("gamerental.workload.opsPerSession", 20);
+
+   // time at the start of a run that is not measured, while caches and pools fill.
+   static final long WARMUP_SECONDS = Long.getLong("gamerental.workload.warmupSeconds", 0L);
+
+   // the seeded users' logins are this followed by 1..users.
+   static final String LOGIN_PREFIX = "load";
+   static final String SEED_PASSWORD = "load";
+   static final int SEED_DAYS = 90;
+
+   // rows per seeding statement.
+   static final int SEED_BATCH = 10000;
+
+   static final String[] GENRES = {
+      "Action", "Adventure", "Puzzle", "Racing", "RPG", "Shooter", "Sports", "Strategy" };
+
+   // the name each operation is reported and timed under, in report order.
+   private static final Map<String, String> OPERATIONS = new LinkedHashMap<String, String>();
+   static {
+      OPERATIONS.put("login", "Log in");
+      OPERATIONS.put("browse", "View catalog");
+      OPERATIONS.put("search", "Search catalog");
+      OPERATIONS.put("history", "View full order history");
+      OPERATIONS.put("details", "View order information");
+      OPERATIONS.put("tracking", "View tracking information");
+      OPERATIONS.put("order", "Place order");
+      OPERATIONS.put("profile", "Update profile");
+      OPERATIONS.put("logout", "Log out");
+   }
+
+   /*
+    * 2 games of LG1..LGn per order, and the order's time derived from its
+    * number: ? is the shard suffix, then the order numbers and their
+    * logins, the minutes the orders span and the number of games.
+    **/
+   private static final String SEED_ORDERS =
+      "INSERT INTO RentalOrder (rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate, returnedDate)"
+      + " SELECT 'LO' || o.n || ?, o.login, 2, c1.price + c2.price, t.ts, t.ts + interval '7 days',"
+      + " CASE WHEN t.ts < now() - interval '10 days' THEN t.ts + interval '5 days' END"
+      + " FROM unnest(?::int[], ?::text[]) AS o(n, login)"
+      + " CROSS JOIN LATERAL (SELECT (now() - (o.n % ?::int) * interval '1 minute')::timestamp AS ts) t"
+      + " JOIN Catalog c1 ON c1.gameID = 'LG' || (1 + o.n % ?::int)"
+      + " JOIN Catalog c2 ON c2.gameID = 'LG' || (1 + (o.n + 1) % ?::int)";
+   private static final String SEED_GAMES_IN_ORDER =
+      "INSERT INTO GamesInOrder (rentalOrderID, gameID, unitsOrdered)"
+      + " SELECT 'LO' || o.n || ?, 'LG' || (1 + (o.n + g) % ?::int), 1"
+      + " FROM unnest(?::int[]) AS o(n), generate_series(0, 1) AS g";
+   private static final String SEED_TRACKING =
+      "INSERT INTO TrackingInfo (trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate)"
+      + " SELECT 'LT' || o.n || ?, r.rentalOrderID,"
+      + " CASE WHEN r.returnedDate IS NOT NULL THEN 'Returned'"
+      + " WHEN r.orderTimestamp < now() - interval '2 days' THEN 'Delivered' ELSE 'In transit' END,"
+      + " CASE WHEN r.orderTimestamp < now() - interval '2 days' THEN 'Customer' ELSE 'Warehouse' END,"
+      + " 'Courier Service', least(r.orderTimestamp + interval '2 days', now())"
+      + " FROM unnest(?::int[]) AS o(n) JOIN RentalOrder r ON r.rentalOrderID = 'LO' || o.n || ?";
+
+   // the seeded orders' rollups, as PLACE_ORDER would have kept them
+   private static final String SEED_GAME_ROLLUP =
+      "INSERT INTO game_daily_rentals (day, gameID, slot, orders, units, revenue)"
+      + " SELECT o.orderTimestamp::date, g.gameID, 0, count(*), sum(g.unitsOrdered), sum(g.unitsOrdered * c.price)"
+      + " FROM RentalOrder o JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+      + " JOIN Catalog c ON c.gameID = g.gameID WHERE o.rentalOrderID LIKE 'LO%' GROUP BY 1, 2"
+      + " ON CONFLICT (day, gameID, slot) DO UPDATE SET orders = game_daily_rentals.orders + excluded.orders,"
+      + " units = game_daily_rentals.units + excluded.units, revenue = game_daily_rentals.revenue + excluded.revenue";
+   private static final String SEED_GENRE_ROLLUP =
+      "INSERT INTO genre_daily_rentals (day, genre, slot, orders, units, revenue)"
+      + " SELECT o.orderTimestamp::date, c.genre, 0, count(DISTINCT o.rentalOrderID),"
+      + " sum(g.unitsOrdered), sum(g.unitsOrdered * c.price)"
+      + " FROM RentalOrder o JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+      + " JOIN Catalog c ON c.gameID = g.gameID WHERE o.rentalOrderID LIKE 'LO%' GROUP BY 1, 2"
+      + " ON CONFLICT (day, genre, slot) DO UPDATE SET orders = genre_daily_rentals.orders + excluded.orders,"
+      + " units = genre_daily_rentals.units + excluded.units, revenue = genre_daily_rentals.revenue + excluded.revenue";
+
+   /**
+    * One line of a session script.
+    */
+   static final class Step {
+      final String op;
+      final String[] args;
+
+      Step(String op, String[] args) {
+         this.op = op;
+         this.args = args;
+      }//end Step
+   }//end Step
+
+   /*
+    * The measurements of one operation over the whole run.
+    **/
+   private static final class Result {
+      final LatencyHistogram latency = new LatencyHistogram();
+      final LongAdder errors = new LongAdder();
+      volatile String firstError = null;
+   }//end Result
+
+   private final GameRental _esql;
+   private final List<List<Step>> _scripts = new ArrayList<List<Step>>();
+   private final ConcurrentHashMap<String, Result> _results = new ConcurrentHashMap<String, Result>();
+   private String[] _mixOps;
+   private int[] _mixWeights;
+   private int _mixTotal;
+   private int _users;
+   private List<String> _gameIDs;
+   private volatile long _measureFrom;
+   private long _measuredNanos;
+
+   /**
+    * Creates a new driver; it runs the synthetic mix unless scripts are
+    * loaded
+    *
+    * @param esql the database to load
+    * @throws java.lang.IllegalArgumentException when the mix is malformed
+    */
+   public WorkloadDriver(GameRental esql) {
+      this._esql = esql;
+      parseMix(MIX);
+   }//end WorkloadDriver
+
+   private void parseMix(String mix) {
+      List<String> ops = new ArrayList<String>();
+      List<Integer> weights = new ArrayList<Integer>();
+      for (String pair : mix.split(",")) {
+         String[] kv = pair.trim().split("=");
+         if (kv.length != 2 || !OPERATIONS.containsKey(kv[0].trim()) || "login".equals(kv[0].trim())
+               || "logout".equals(kv[0].trim()))
+            throw new IllegalArgumentException("Bad workload mix entry: " + pair);
+         int weight = Integer.parseInt(kv[1].trim());
+         if (weight <= 0)
+            continue;
+         ops.add(kv[0].trim());
+         weights.add(this._mixTotal += weight);
+      }//end for
+      if (ops.isEmpty())
+         throw new IllegalArgumentException("The workload mix has no operations");
+      this._mixOps = ops.toArray(new String[0]);
+      this._mixWeights = new int[weights.size()];
+      for (int i = 0; i < this._mixWeights.length; ++i)
+         this._mixWeights[i] = weights.get(i);
+   }//end parseMix
+
+   /**
+    * Reads session scripts to replay instead of the synthetic mix.  The
+    * simulated users take the scripts in turn.
+    *
+    * @param files the scripts
+    * @throws java.io.IOException when a script cannot be read
+    * @throws java.lang.IllegalArgumentException when a script names an
+    *         unknown operation
+    */
+   public void loadScripts(List<Path> files) throws IOException {
+      for (Path file : files) {
+         List<Step> steps = new ArrayList<Step>();
+         try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+               ++number;
+               line = line.trim();
+               if (line.isEmpty() || line.startsWith("#"))
+                  continue;
+               String[] words = line.split("\\s+");
+               String op = words[0].toLowerCase(Locale.ROOT);
+               String where = file + ":" + number;
+               if (!OPERATIONS.containsKey(op) && !"sleep".equals(op))
+                  throw new IllegalArgumentException(where + ": unknown operation " + words[0]);
+               if ("sleep".equals(op) && words.length != 2)
+                  throw new IllegalArgumentException(where + ": sleep needs the milliseconds");
+               steps.add(new Step(op, Arrays.copyOfRange(words, 1, words.length)));
+            }//end while
+         }//end try
+         if (steps.isEmpty())
+            throw new IllegalArgumentException(file + ": no operations");
+         this._scripts.add(steps);
+      }//end for
+   }//end loadScripts
+
+   /**
+    * Adds the synthetic users, catalog titles and orders.  Only one
+    * password hash is computed, shared by every seeded user, so seeding
+    * a large population takes seconds and not hours.
+    *
+    * @param users the number of users
+    * @param games the number of catalog titles, at least 2
+    * @param orders the number of orders
+    * @throws java.sql.SQLException when a shard could not be written
+    * @throws java.lang.IllegalStateException when the data was seeded before
+    */
+   public void seed(int users, int games, int orders) throws SQLException {
+      if (users < 1 || games < 2 || orders < 0)
+         throw new IllegalArgumentException("Seed at least 1 user and 2 games");
+      String first = LOGIN_PREFIX + 1;
+      if (!this._esql.onShardOf(first, () -> this._esql.executeQuery("SELECT 1 FROM Users WHERE login = ?", first) == 0))
+         throw new IllegalStateException("Workload data is already seeded");
+      ShardRouter shards = this._esql.shards();
+      String hash = PasswordHasher.hash(SEED_PASSWORD);
+
+      // titles on shard 0; loading the catalog copies them to the other shards
+      this._esql.executeUpdate(
+         "INSERT INTO Catalog (gameID, gameName, genre, price, description, imageURL)"
+         + " SELECT 'LG' || i, 'Load Game ' || i, (?::text[])[1 + i % ?::int], 0.99 + i % 60,"
+         + " 'Synthetic ' || lower((?::text[])[1 + i % ?::int]) || ' title number ' || i,"
+         + " 'https://example.com/load/' || i || '.png'"
+         + " FROM generate_series(1, ?) AS i ON CONFLICT DO NOTHING",
+         GENRES, GENRES.length, GENRES, GENRES.length, games);
+      this._esql.invalidateCatalog();
+      this._esql.catalog();
+
+      // each user, and order i of user 1 + i % users, goes to the user's shard
+      List<List<String>> logins = new ArrayList<List<String>>();
+      List<List<Integer>> orderNumbers = new ArrayList<List<Integer>>();
+      for (int s = 0; s < shards.size(); ++s) {
+         logins.add(new ArrayList<String>());
+         orderNumbers.add(new ArrayList<Integer>());
+      }//end for
+      for (int i = 1; i <= users; ++i)
+         logins.get(shards.shardOf(LOGIN_PREFIX + i)).add(LOGIN_PREFIX + i);
+      for (int i = 1; i <= orders; ++i)
+         orderNumbers.get(shards.shardOf(LOGIN_PREFIX + (1 + i % users))).add(i);
+
+      List<Long> seeded = new ArrayList<Long>();
+      for (int s = 0; s < shards.size(); ++s) {
+         int shard = s;
+         seeded.add(this._esql.onShard(shard, () -> seedShard(shards.tag("", shard), hash,
+            logins.get(shard), orderNumbers.get(shard), users, games)));
+      }//end for
+      System.out.println("Seeded " + users + " user(s), " + games + " game(s) and " + orders + " order(s)"
+         + (shards.size() > 1 ? "; orders per shard: " + seeded : ""));
+   }//end seed
+
+   /*
+    * Writes one shard's users and orders, SEED_BATCH per statement.
+    **/
+   private long seedShard(String suffix, String hash, List<String> logins, List<Integer> numbers,
+         int users, int games) throws SQLException {
+      for (int from = 0; from < logins.size(); from += SEED_BATCH) {
+         String[] batch = logins.subList(from, Math.min(logins.size(), from + SEED_BATCH)).toArray(new String[0]);
+         this._esql.executeUpdate(
+            "INSERT INTO Users (login, password, role, phoneNum)"
+            + " SELECT l, ?, 'customer', '555-' || substr(l, 5) FROM unnest(?::text[]) AS l ON CONFLICT DO NOTHING",
+            hash, batch);
+      }//end for
+      int minutes = SEED_DAYS * 24 * 60;
+      for (int from = 0; from < numbers.size(); from += SEED_BATCH) {
+         List<Integer> batch = numbers.subList(from, Math.min(numbers.size(), from + SEED_BATCH));
+         int[] n = new int[batch.size()];
+         String[] owners = new String[n.length];
+         for (int i = 0; i < n.length; ++i) {
+            n[i] = batch.get(i);
+            owners[i] = LOGIN_PREFIX + (1 + n[i] % users);
+         }//end for
+         this._esql.inTransaction(() -> {
+            this._esql.executeUpdate(SEED_ORDERS, suffix, n, owners, minutes, games, games);
+            this._esql.executeUpdate(SEED_GAMES_IN_ORDER, suffix, games, n);
+            this._esql.executeUpdate(SEED_TRACKING, suffix, n, suffix);
+            return null;
+         });
+      }//end for
+      this._esql.executeUpdate(SEED_GAME_ROLLUP);
+      this._esql.executeUpdate(SEED_GENRE_ROLLUP);
+      this._esql.executeUpdate("ANALYZE");
+      return numbers.size();
+   }//end seedShard
+
+   /**
+    * Runs the workload and measures it.
+    *
+    * @param users the number of simulated users running at once
+    * @param seconds how long to run, warm-up included
+    * @throws java.sql.SQLException when the seeded data cannot be read
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    * @throws java.lang.IllegalStateException when there is nothing to run
+    *         against
+    */
+   public void run(int users, long seconds) throws SQLException, InterruptedException {
+      long seeded = 0;
+      for (List<Map<String, Object>> rows : this._esql.onEveryShard(() -> this._esql.rowMaps(
+            "SELECT count(*) AS n FROM Users WHERE login LIKE ?", LOGIN_PREFIX + "%")))
+         seeded += ((Number) rows.get(0).get("n")).longValue();
+      if (seeded == 0)
+         throw new IllegalStateException("No workload users; run 'workload seed' first");
+      this._users = (int) seeded;
+      this._gameIDs = new ArrayList<String>();
+      for (Game game : this._esql.catalog().sortedByPrice(false))
+         this._gameIDs.add(game.gameID());
+      if (this._gameIDs.isEmpty())
+         throw new IllegalStateException("The catalog is empty; run 'workload seed' first");
+
+      long start = System.nanoTime();
+      this._measureFrom = start + TimeUnit.SECONDS.toNanos(Math.min(WARMUP_SECONDS, seconds));
+      long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+      AtomicInteger threads = new AtomicInteger();
+      ExecutorService pool = Executors.newFixedThreadPool(users, r -> {
+         Thread t = new Thread(r, "workload-user-" + threads.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      });
+      try{
+         List<Future<?>> running = new ArrayList<Future<?>>();
+         for (int u = 0; u < users; ++u) {
+            SimulatedUser user = new SimulatedUser(u);
+            running.add(pool.submit(() -> user.runUntil(deadline)));
+         }//end for
+         for (Future<?> user : running) {
+            try{
+               user.get();
+            }catch (java.util.concurrent.ExecutionException e){
+               System.err.println("Simulated user stopped: " + e.getCause());
+            }//end try
+         }//end for
+      }finally{
+         pool.shutdownNow();
+      }//end try
+      this._measuredNanos = Math.max(1, System.nanoTime() - this._measureFrom);
+   }//end run
+
+   /**
+    * Prints the operations run, their throughput and latency percentiles.
+    *
+    * @param out where to print
+    */
+   public void report(PrintStream out) {
+      String format = "%-28s %9s %7s %9s %9s %9s %9s %9s %9s %9s%n";
+      out.printf(format, "operation", "count", "errors", "ops/s", "mean ms", "p50 ms", "p90 ms",
+         "p99 ms", "p99.9 ms", "max ms");
+      double seconds = this._measuredNanos / 1e9;
+      LatencyHistogram all = new LatencyHistogram();
+      long count = 0, errors = 0;
+      for (Map.Entry<String, String> op : OPERATIONS.entrySet()) {
+         Result result = this._results.get(op.getKey());
+         if (result == null)
+            continue;
+         LatencyHistogram h = result.latency;
+         out.printf(format, op.getValue(), h.count(), result.errors.sum(), rate(h.count(), seconds),
+            millis(h.mean()), millis(h.percentile(50)), millis(h.percentile(90)),
+            millis(h.percentile(99)), millis(h.percentile(99.9)), millis(h.max()));
+         count += h.count();
+         errors += result.errors.sum();
+      }//end for
+      out.printf("%-28s %9d %7d %9s over %.1f s%n", "total", count, errors, rate(count, seconds), seconds);
+      for (Map.Entry<String, String> op : OPERATIONS.entrySet()) {
+         Result result = this._results.get(op.getKey());
+         if (result != null && result.firstError != null)
+            out.println("First " + op.getValue() + " error: " + result.firstError);
+      }//end for
+      Map<String, Object> journal = this._esql.journalStats();
+      if (journal != null)
+         out.println("Order journal: " + journal);
+      out.flush();
+   }//end report
+
+   /**
+    * @return the operations that failed during the measured time
+    */
+   public long errors() {
+      long errors = 0;
+      for (Result result : this._results.values())
+         errors += result.errors.sum();
+      return errors;
+   }//end errors
+
+   private static String rate(long count, double seconds) {
+      return String.format("%.1f", count / seconds);
+   }//end rate
+
+   private static String millis(double nanos) {
+      return String.format("%.3f", nanos / 1e6);
+   }//end millis
+
+   /*
+    * One simulated user: a thread that logs in as a seeded user and runs
+    * operations until the deadline, remembering the orders and shipments
+    * it saw so later operations can look them up.
+    **/
+   private final class SimulatedUser {
+      private final int _number;
+      private final List<String> _orders = new ArrayList<String>();
+      private final List<String> _shipments = new ArrayList<String>();
+      private String _login;
+      private SessionManager.Session _session = null;
+
+      SimulatedUser(int number) {
+         this._number = number;
+      }//end SimulatedUser
+
+      void runUntil(long deadline) {
+         ThreadLocalRandom random = random();
+         while (System.nanoTime() - deadline < 0) {
+            // a new seeded user for every session
+            this._login = LOGIN_PREFIX + (1 + random.nextInt(WorkloadDriver.this._users));
+            this._orders.clear();
+            this._shipments.clear();
+            if (!WorkloadDriver.this._scripts.isEmpty()) {
+               List<Step> script = WorkloadDriver.this._scripts.get(this._number % WorkloadDriver.this._scripts.size());
+               for (Step step : script) {
+                  if (System.nanoTime() - deadline >= 0)
+                     break;
+                  if ("sleep".equals(step.op))
+                     pause(Long.parseLong(step.args[0]));
+                  else
+                     measure(step.op, step.args);
+               }//end for
+            } else {
+               for (int i = 0; i < OPS_PER_SESSION && System.nanoTime() - deadline < 0; ++i) {
+                  measure(pick(random), new String[0]);
+                  pause(THINK_MILLIS);
+               }//end for
+            }//end if
+            if (this._session != null)
+               measure("logout", new String[0]);
+         }//end while
+      }//end runUntil
+
+      private String pick(ThreadLocalRandom random) {
+         int r = random.nextInt(WorkloadDriver.this._mixTotal);
+         int i = 0;
+         while (WorkloadDriver.this._mixWeights[i] <= r)
+            ++i;
+         return WorkloadDriver.this._mixOps[i];
+      }//end pick
+
+      private void pause(long millis) {
+         if (millis <= 0)
+            return;
+         try{
+            Thread.sleep(millis);
+         }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+         }//end try
+      }//end pause
+
+      /*
+       * Runs one operation, logging in first when needed, and records it
+       * unless it started during the warm-up.
+       **/
+      private void measure(String op, String[] args) {
+         if (this._session == null && !"login".equals(op) && !"logout".equals(op))
+            measure("login", new String[0]);
+         if (this._session == null && !"login".equals(op))
+            return;
+         long start = System.nanoTime();
+         String failure = null;
+         try{
+            WorkloadDriver.this._esql.metrics().call(OPERATIONS.get(op), () -> {
+               execute(op, args);
+               return null;
+            });
+         }catch (Exception e){
+            failure = e.getMessage() == null ? e.toString() : e.getMessage();
+         }//end try
+         long nanos = System.nanoTime() - start;
+         if (start - WorkloadDriver.this._measureFrom < 0)
+            return;
+         Result result = WorkloadDriver.this._results.computeIfAbsent(op, o -> new Result());
+         if (failure == null) {
+            result.latency.record(nanos);
+         } else {
+            result.errors.increment();
+            if (result.firstError == null)
+               result.firstError = failure;
+         }//end if
+      }//end measure
+
+      private void execute(String op, String[] args) throws Exception {
+         GameRental esql = WorkloadDriver.this._esql;
+         String login = this._session == null ? null : this._session.login();
+         switch (op) {
+            case "login": {
+               String user = args.length > 0 ? expand(args[0]) : this._login;
+               SessionManager.Session session = esql.sessions().login(user, args.length > 1 ? args[1] : SEED_PASSWORD);
+               if (session == null)
+                  throw new IllegalStateException("Invalid username or password for " + user);
+               this._session = session;
+               break;
+            }
+            case "logout":
+               esql.sessions().logout(this._session.token());
+               this._session = null;
+               break;
+            case "browse": {
+               String genre = args.length > 0 ? args[0] : (random().nextBoolean() ? null : randomGenre());
+               esql.readOnly(login, () -> genre == null
+                  ? esql.catalog().sortedByPrice(random().nextBoolean()) : esql.catalog().byGenre(genre));
+               break;
+            }
+            case "search": {
+               String words = args.length > 0 ? String.join(" ", args) : randomGenre().toLowerCase(Locale.ROOT) + " title";
+               esql.readOnly(login, () -> esql.catalog().search(words, 20));
+               break;
+            }
+            case "history": {
+               OrderPage page = esql.readOnly(login, () -> esql.fetchOrderPage(login, null, true, GameRental.ORDER_PAGE_SIZE));
+               remember(this._orders, page.rentalOrderIDs());
+               break;
+            }
+            case "details": {
+               String rentalOrderID = args.length > 0 ? args[0] : knownOrder();
+               if (rentalOrderID == null)
+                  break;
+               OrderDetail detail = esql.readOnly(login,
+                  () -> esql.fetchOrderDetail(login, this._session.isStaff(), rentalOrderID));
+               if (detail != null && detail.tracking() != null)
+                  remember(this._shipments, Collections.singletonList((String) detail.tracking()[0]));
+               break;
+            }
+            case "tracking": {
+               String trackingID = args.length > 0 ? args[0] : knownShipment();
+               if (trackingID == null)
+                  break;
+               boolean staff = this._session.isStaff();
+               esql.readOnly(login, () -> esql.onShardOfId(trackingID,
+                  () -> esql.rowMaps(Queries.VIEW_TRACKING_INFO, trackingID, login, staff)));
+               break;
+            }
+            case "order": {
+               Cart cart = new Cart();
+               for (String line : args) {
+                  String[] parts = line.split(":");
+                  cart.add(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+               }//end for
+               List<String> games = WorkloadDriver.this._gameIDs;
+               for (int i = 1 + random().nextInt(3); cart.isEmpty() && i > 0; --i)
+                  cart.add(games.get(random().nextInt(games.size())), 1);
+               OrderReceipt receipt = esql.readWrite(login, () -> esql.submitOrder(login, cart));
+               remember(this._orders, Collections.singletonList(receipt.rentalOrderID()));
+               remember(this._shipments, Collections.singletonList(receipt.trackingID()));
+               break;
+            }
+            case "profile": {
+               String phone = "555-" + random().nextInt(10000000);
+               esql.readWrite(login, () -> esql.onShardOf(login,
+                  () -> esql.executeUpdate(Queries.UPDATE_PHONE_NUM, phone, login)));
+               esql.sessions().invalidate(login);
+               break;
+            }
+            default:
+               throw new IllegalArgumentException("Unknown operation " + op);
+         }//end switch
+      }//end execute
+
+      // an order seen this session, or one from the first history page.
+      private String knownOrder() throws Exception {
+         if (this._orders.isEmpty())
+            execute("history", new String[0]);
+         return this._orders.isEmpty() ? null : this._orders.get(random().nextInt(this._orders.size()));
+      }//end knownOrder
+
+      // a shipment seen this session, or the one of an order from the history.
+      private String knownShipment() throws Exception {
+         if (this._shipments.isEmpty())
+            execute("details", new String[0]);
+         return this._shipments.isEmpty() ? null : this._shipments.get(random().nextInt(this._shipments.size()));
+      }//end knownShipment
+
+      private ThreadLocalRandom random() {
+         return ThreadLocalRandom.current();
+      }//end random
+
+      private String randomGenre() {
+         return GENRES[random().nextInt(GENRES.length)];
+      }//end randomGenre
+
+      private String expand(String word) {
+         return word.replace("${user}", this._login);
+      }//end expand
+
+      private void remember(List<String> seen, List<String> ids) {
+         for (String id : ids)
+            if (id != null && !seen.contains(id))
+               seen.add(id);
+      }//end remember
+   }//end SimulatedUser
+
+}//end WorkloadDriver
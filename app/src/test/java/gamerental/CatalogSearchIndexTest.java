@@ -0,0 +1,127 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CatalogSearchIndexTest {
+
+   private CatalogSearchIndex _index;
+
+   @BeforeEach
+   void indexCatalog() {
+      this._index = new CatalogSearchIndex();
+      this._index.add(game("G1", "The Legend of Zelda", "An adventure across Hyrule"));
+      this._index.add(game("G2", "Zelda Puzzle Party", "Puzzles for the whole family"));
+      this._index.add(game("G3", "Mario Kart", "Racing with Mario and friends, a party classic"));
+      this._index.add(game("G4", "Space Racer", "Racing among the stars"));
+   }//end indexCatalog
+
+   private static Game game(String id, String name, String description) {
+      return new Game(id, name, "Action", 9.99, description, "");
+   }//end game
+
+   private List<String> search(String query) {
+      List<String> ids = new ArrayList<String>();
+      for (Game game : this._index.search(query, 10))
+         ids.add(game.gameID());
+      return ids;
+   }//end search
+
+   @Test
+   void editDistance() {
+      assertEquals(0, CatalogSearchIndex.editDistance("zelda", "zelda", 2));
+      assertEquals(1, CatalogSearchIndex.editDistance("zelad", "zelda", 2));
+      assertEquals(1, CatalogSearchIndex.editDistance("zeld", "zelda", 2));
+      assertEquals(1, CatalogSearchIndex.editDistance("zelda", "zelta", 2));
+      assertEquals(3, CatalogSearchIndex.editDistance("mario", "zelda", 2));
+      assertEquals(2, CatalogSearchIndex.editDistance("kitten", "sitting", 1));
+      assertEquals(3, CatalogSearchIndex.editDistance("kitten", "sitting", 5));
+      assertEquals(2, CatalogSearchIndex.editDistance("abcd", "badc", 3));
+   }//end editDistance
+
+   @Test
+   void editDistanceCutoffAgreesWithFullTable() {
+      Random random = new Random(42);
+      for (int n = 0; n < 20000; ++n) {
+         String a = word(random), b = word(random);
+         int max = random.nextInt(4);
+         assertEquals(Math.min(fullDistance(a, b), max + 1), CatalogSearchIndex.editDistance(a, b, max), a + " / " + b);
+      }//end for
+   }//end editDistanceCutoffAgreesWithFullTable
+
+   private static String word(Random random) {
+      char[] letters = new char[random.nextInt(8)];
+      for (int i = 0; i < letters.length; ++i)
+         letters[i] = (char) ('a' + random.nextInt(4));
+      return new String(letters);
+   }//end word
+
+   // the whole edit table, adjacent swaps included, with no early exit.
+   private static int fullDistance(String a, String b) {
+      int[][] d = new int[a.length() + 1][b.length() + 1];
+      for (int i = 0; i <= a.length(); ++i)
+         d[i][0] = i;
+      for (int j = 0; j <= b.length(); ++j)
+         d[0][j] = j;
+      for (int i = 1; i <= a.length(); ++i) {
+         for (int j = 1; j <= b.length(); ++j) {
+            int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+            d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+               d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+         }//end for
+      }//end for
+      return d[a.length()][b.length()];
+   }//end fullDistance
+
+   @Test
+   void tokenizeDropsCaseStopWordsAndPunctuation() {
+      assertEquals(List.of("legend", "zelda", "2"), CatalogSearchIndex.tokenize("The Legend of Zelda: 2!"));
+      assertTrue(CatalogSearchIndex.tokenize(null).isEmpty());
+   }//end tokenizeDropsCaseStopWordsAndPunctuation
+
+   @Test
+   void titleMatchesRankAboveDescriptionMatches() {
+      // "party" is in G2's title and only in G3's description
+      assertEquals(List.of("G2", "G3"), search("party"));
+   }//end titleMatchesRankAboveDescriptionMatches
+
+   @Test
+   void gamesMatchingMoreWordsComeFirst() {
+      assertEquals("G3", search("mario racing").get(0));
+      assertEquals(List.of("G3", "G4"), search("racing mario"));
+   }//end gamesMatchingMoreWordsComeFirst
+
+   @Test
+   void prefixesAndTyposMatch() {
+      // the shorter entry ranks first, as BM25 normalizes for length
+      assertEquals(List.of("G1", "G2"), search("zel"));
+      assertTrue(search("zelad").containsAll(List.of("G1", "G2")));
+      assertTrue(search("racng").containsAll(List.of("G3", "G4")));
+      assertEquals(List.of("G3"), search("mraio"));
+      // below four letters a word only matches as itself or a prefix
+      assertTrue(search("kxt").isEmpty());
+   }//end prefixesAndTyposMatch
+
+   @Test
+   void removedGamesAreNotFound() {
+      this._index.remove(game("G2", "Zelda Puzzle Party", "Puzzles for the whole family"));
+      assertEquals(List.of("G1"), search("zelda"));
+      assertEquals(List.of("G3"), search("party"));
+   }//end removedGamesAreNotFound
+
+   @Test
+   void emptyQueriesAndLimits() {
+      assertTrue(search("").isEmpty());
+      assertTrue(search("the of and").isEmpty());
+      assertEquals(1, this._index.search("racing", 1).size());
+   }//end emptyQueriesAndLimits
+
+}//end CatalogSearchIndexTest
@@ -0,0 +1,120 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ForEachRowTest {
+
+   /*
+    * A statement over a result of three rows that records what is done to
+    * its connection's transaction.
+    **/
+   private static final class FakeStatement {
+      final List<String> calls = new ArrayList<String>();
+      boolean autoCommit;
+      int rowsLeft = 3;
+
+      FakeStatement(boolean autoCommit) {
+         this.autoCommit = autoCommit;
+      }//end FakeStatement
+
+      PreparedStatement statement() {
+         Connection conn = proxy(Connection.class, (name, args) -> {
+            switch (name) {
+               case "getAutoCommit":
+                  return this.autoCommit;
+               case "setAutoCommit":
+                  this.autoCommit = (Boolean) args[0];
+                  this.calls.add("autoCommit " + this.autoCommit);
+                  return null;
+               case "commit":
+               case "rollback":
+                  this.calls.add(name);
+                  return null;
+               default:
+                  return null;
+            }//end switch
+         });
+         ResultSetMetaData meta = proxy(ResultSetMetaData.class,
+            (name, args) -> "getColumnCount".equals(name) ? 1 : null);
+         ResultSet rs = proxy(ResultSet.class, (name, args) -> {
+            switch (name) {
+               case "getMetaData":
+                  return meta;
+               case "next":
+                  return this.rowsLeft-- > 0;
+               case "getInt":
+                  return 3 - this.rowsLeft;
+               default:
+                  return null;
+            }//end switch
+         });
+         return proxy(PreparedStatement.class, (name, args) -> {
+            switch (name) {
+               case "getConnection":
+                  return conn;
+               case "executeQuery":
+                  return rs;
+               default:
+                  return null;
+            }//end switch
+         });
+      }//end statement
+   }//end FakeStatement
+
+   private interface Answer {
+      Object answer(String method, Object[] args) throws Exception;
+   }//end Answer
+
+   private static <T> T proxy(Class<T> type, Answer answer) {
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+         (self, method, args) -> answer.answer(method.getName(), args)));
+   }//end proxy
+
+   @Test
+   void handledRowsAreCommitted() throws SQLException {
+      FakeStatement fake = new FakeStatement(true);
+      List<Integer> seen = new ArrayList<Integer>();
+      assertEquals(3, GameRental.forEachRow(fake.statement(), row -> seen.add(row.getInt(1))));
+      assertEquals(List.of(1, 2, 3), seen);
+      assertEquals(List.of("autoCommit false", "commit", "autoCommit true"), fake.calls);
+   }//end handledRowsAreCommitted
+
+   @Test
+   void aHandlerFailingPartwayRollsTheWriteBack() {
+      FakeStatement fake = new FakeStatement(true);
+      SQLException e = assertThrows(SQLException.class, () -> GameRental.forEachRow(fake.statement(), row -> {
+         if (row.getInt(1) == 2)
+            throw new SQLException("bad row");
+      }));
+      assertEquals("bad row", e.getMessage());
+      assertEquals(List.of("autoCommit false", "rollback", "autoCommit true"), fake.calls);
+
+      FakeStatement unchecked = new FakeStatement(true);
+      assertThrows(IllegalStateException.class, () -> GameRental.forEachRow(unchecked.statement(), row -> {
+         throw new IllegalStateException("handler bug");
+      }));
+      assertEquals(List.of("autoCommit false", "rollback", "autoCommit true"), unchecked.calls);
+   }//end aHandlerFailingPartwayRollsTheWriteBack
+
+   @Test
+   void anOpenTransactionIsLeftToItsOwner() {
+      FakeStatement fake = new FakeStatement(false);
+      assertThrows(SQLException.class, () -> GameRental.forEachRow(fake.statement(), row -> {
+         throw new SQLException("bad row");
+      }));
+      assertEquals(List.of(), fake.calls);
+   }//end anOpenTransactionIsLeftToItsOwner
+
+}//end ForEachRowTest
@@ -0,0 +1,107 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class JsonTest {
+
+   @Test
+   void stringsAreEscapedAndReadBack() {
+      String s = "quote \" backslash \\ newline \n tab \t bell \u0007 é";
+      String json = Json.toJson(s);
+      assertEquals("\"quote \\\" backslash \\\\ newline \\n tab \\t bell \\u0007 é\"", json);
+      assertEquals(s, Json.parse(json));
+      assertEquals("a/b\bc\fdé", Json.parse("\"a\\/b\\bc\\fd\\u00e9\""));
+   }//end stringsAreEscapedAndReadBack
+
+   @Test
+   void valuesEncodeInOrder() {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      map.put("b", List.of(1, true, "x"));
+      map.put("a", null);
+      map.put("c", new Object[] { 2.5, Double.NaN });
+      assertEquals("{\"b\":[1,true,\"x\"],\"a\":null,\"c\":[2.5,null]}", Json.toJson(map));
+      assertEquals(map.keySet(), ((Map<?, ?>) Json.parse(Json.toJson(map))).keySet());
+   }//end valuesEncodeInOrder
+
+   @Test
+   void numbersAreDecimals() {
+      assertEquals(new BigDecimal("42"), Json.parse("42"));
+      assertEquals(new BigDecimal("-0.5"), Json.parse(" -0.5 "));
+      assertEquals(new BigDecimal("1.5E+3"), Json.parse("1.5e3"));
+      assertEquals("0.10", Json.toJson(new BigDecimal("0.10")));
+      assertEquals("1000", Json.toJson(new BigDecimal("1E+3")));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("1.2.3"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("-"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("@"));
+   }//end numbersAreDecimals
+
+   @Test
+   void literalsAndContainers() {
+      assertEquals(Boolean.TRUE, Json.parse("true"));
+      assertEquals(Boolean.FALSE, Json.parse("false"));
+      assertNull(Json.parse("null"));
+      assertEquals(List.of(), Json.parse("[ ]"));
+      assertEquals(Map.of(), Json.parse("{ }"));
+      assertEquals(Map.of("units", List.of(new BigDecimal("1"), "G1")), Json.parse("{\"units\": [1, \"G1\"]}"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("tru"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"a\" 1}"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("{1: 2}"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("[1, 2"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("\"open"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse(""));
+   }//end literalsAndContainers
+
+   @Test
+   void trailingGarbageIsRejected() {
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("{} x"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("[1]]"));
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("1 2"));
+      assertEquals(List.of(), Json.parse("[]\n"));
+   }//end trailingGarbageIsRejected
+
+   @Test
+   void nestingIsLimited() {
+      assertEquals(Json.MAX_DEPTH, depth(Json.parse(nested(Json.MAX_DEPTH))));
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+         () -> Json.parse(nested(Json.MAX_DEPTH + 1)));
+      assertTrue(e.getMessage().startsWith("Nested deeper"), e.getMessage());
+      assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"a\":" + nested(Json.MAX_DEPTH) + "}"));
+
+      // a request body's worth of brackets fails as bad input, not with a StackOverflowError
+      char[] brackets = new char[1 << 20];
+      Arrays.fill(brackets, '[');
+      assertThrows(IllegalArgumentException.class, () -> Json.parse(new String(brackets)));
+
+      // siblings do not add up
+      List<Object> wide = new ArrayList<Object>();
+      for (int i = 0; i < 3 * Json.MAX_DEPTH; ++i)
+         wide.add(List.of(List.of()));
+      assertEquals(wide.size(), ((List<?>) Json.parse(Json.toJson(wide))).size());
+   }//end nestingIsLimited
+
+   private static String nested(int depth) {
+      return "[".repeat(depth) + "]".repeat(depth);
+   }//end nested
+
+   private static int depth(Object value) {
+      int depth = 0;
+      while (value instanceof List && !((List<?>) value).isEmpty()) {
+         value = ((List<?>) value).get(0);
+         ++depth;
+      }//end while
+      return depth + 1;
+   }//end depth
+
+}//end JsonTest
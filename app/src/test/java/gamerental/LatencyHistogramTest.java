@@ -0,0 +1,72 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+   @Test
+   void smallValuesAreExact() {
+      for (long v = 0; v < 128; ++v) {
+         assertEquals(v, LatencyHistogram.index(v));
+         assertEquals(v, LatencyHistogram.highestValue(LatencyHistogram.index(v)));
+      }//end for
+   }//end smallValuesAreExact
+
+   @Test
+   void bucketsCoverEveryValueWithinOneSixtyFourth() {
+      int previous = LatencyHistogram.index(127);
+      long previousHighest = 127;
+      // every bucket boundary up to 2^20, then a sample up to MAX_NANOS
+      for (long v = 128; v < (1L << 20); ++v) {
+         int index = LatencyHistogram.index(v);
+         assertTrue(index == previous || index == previous + 1, "index skipped at " + v);
+         if (index == previous + 1)
+            assertEquals(previousHighest + 1, v, "bucket " + index + " does not start after the last one");
+         long highest = LatencyHistogram.highestValue(index);
+         assertTrue(v <= highest, v + " above its bucket's highest value " + highest);
+         assertTrue(highest - v <= v / 64, v + " reported as " + highest);
+         previous = index;
+         previousHighest = highest;
+      }//end for
+      for (int i = 0; i < 100000; ++i) {
+         long v = ThreadLocalRandom.current().nextLong(128, LatencyHistogram.MAX_NANOS + 1);
+         long highest = LatencyHistogram.highestValue(LatencyHistogram.index(v));
+         assertTrue(v <= highest && highest - v <= v / 64, v + " reported as " + highest);
+      }//end for
+   }//end bucketsCoverEveryValueWithinOneSixtyFourth
+
+   @Test
+   void percentilesOfUniformValues() {
+      LatencyHistogram h = new LatencyHistogram();
+      for (long v = 1; v <= 1000; ++v)
+         h.record(v * 1000);
+      assertEquals(1000, h.count());
+      assertEquals(500500.0, h.mean(), 0.001);
+      assertEquals(1000000, h.max());
+      assertWithin(500000, h.percentile(50));
+      assertWithin(990000, h.percentile(99));
+      assertEquals(1000000, h.percentile(100));
+   }//end percentilesOfUniformValues
+
+   @Test
+   void emptyAndOutOfRange() {
+      LatencyHistogram h = new LatencyHistogram();
+      assertEquals(0, h.percentile(99));
+      assertEquals(0.0, h.mean());
+      h.record(-5);
+      h.record(Long.MAX_VALUE);
+      assertEquals(0, h.percentile(50));
+      assertEquals(LatencyHistogram.MAX_NANOS, h.max());
+      assertEquals(LatencyHistogram.MAX_NANOS, h.percentile(100));
+   }//end emptyAndOutOfRange
+
+   private static void assertWithin(long expected, long actual) {
+      assertTrue(actual >= expected && actual - expected <= expected / 64, "expected about " + expected + ", got " + actual);
+   }//end assertWithin
+
+}//end LatencyHistogramTest
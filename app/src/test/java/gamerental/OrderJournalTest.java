@@ -0,0 +1,233 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OrderJournalTest {
+
+   @TempDir
+   Path _directory;
+
+   /*
+    * Records what is drained to it.  Orders whose id starts with "bad"
+    * violate a constraint; while down, every write fails.
+    **/
+   private static final class RecordingSink implements OrderJournal.Sink {
+      final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+      final List<String> rejected = Collections.synchronizedList(new ArrayList<String>());
+      volatile boolean down = false;
+
+      @Override
+      public int shardOf(OrderJournal.Entry order) {
+         return order.rentalOrderID.hashCode() & 1;
+      }//end shardOf
+
+      @Override
+      public void write(int shard, List<OrderJournal.Entry> orders) throws SQLException {
+         if (this.down)
+            throw new SQLException("connection refused", "08001");
+         for (OrderJournal.Entry order : orders)
+            if (order.rentalOrderID.startsWith("bad"))
+               throw new SQLException("violates foreign key constraint", "23503");
+         for (OrderJournal.Entry order : orders)
+            this.written.add(order.rentalOrderID);
+      }//end write
+
+      @Override
+      public void reject(OrderJournal.Entry order) {
+         this.rejected.add(order.rentalOrderID);
+      }//end reject
+   }//end RecordingSink
+
+   private OrderJournal open(RecordingSink sink, int segmentBytes) throws IOException {
+      return new OrderJournal(this._directory, sink, segmentBytes, 1L, 200L);
+   }//end open
+
+   private static OrderJournal.Entry order(String id) {
+      return new OrderJournal.Entry(id, "TR" + id, "alice", 1704067200000L, new String[] { "G1", "G2" },
+         new int[] { 1, 2 }, new BigDecimal[] { new BigDecimal("9.99"), new BigDecimal("4.50") });
+   }//end order
+
+   private List<Path> segments() throws IOException {
+      List<Path> segments = new ArrayList<Path>();
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(this._directory, "orders-*.journal")) {
+         for (Path file : files)
+            segments.add(file);
+      }//end try
+      return segments;
+   }//end segments
+
+   // the offset after the last intact record of a segment file.
+   private static int end(Path segment) throws IOException {
+      ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+      int offset = 0;
+      while (offset + OrderJournal.HEADER_BYTES <= bytes.capacity() && bytes.getInt(offset) > 0)
+         offset += OrderJournal.HEADER_BYTES + bytes.getInt(offset);
+      return offset;
+   }//end end
+
+   @Test
+   void entriesSurviveEncoding() throws IOException {
+      OrderJournal.Entry entry = OrderJournal.Entry.decode(order("RO1").encode());
+      assertEquals("RO1", entry.rentalOrderID);
+      assertEquals("TRRO1", entry.trackingID);
+      assertEquals("alice", entry.login);
+      assertEquals(1704067200000L, entry.orderMillis);
+      assertArrayEquals(new String[] { "G1", "G2" }, entry.gameIDs);
+      assertArrayEquals(new int[] { 1, 2 }, entry.units);
+      assertEquals(3, entry.noOfGames());
+      assertEquals(new BigDecimal("18.99"), entry.totalPrice());
+      assertEquals(List.of("G1", "G2"), List.of(entry.cart().gameIDs()));
+   }//end entriesSurviveEncoding
+
+   @Test
+   void appendedOrdersAreDrainedAndFullSegmentsDeleted() throws IOException {
+      RecordingSink sink = new RecordingSink();
+      OrderJournal journal = open(sink, 512);
+      for (int i = 0; i < 40; ++i)
+         journal.append(order("RO" + i));
+      journal.close();
+
+      assertEquals(40, sink.written.size());
+      assertEquals(40L, journal.stats().get("appended"));
+      assertEquals(40L, journal.stats().get("drained"));
+      assertEquals(0L, journal.stats().get("pendingBytes"));
+      // the segment last appended to stays
+      assertEquals(1, segments().size());
+   }//end appendedOrdersAreDrainedAndFullSegmentsDeleted
+
+   @Test
+   void undrainedOrdersAreReplayedOnReopen() throws IOException {
+      RecordingSink down = new RecordingSink();
+      down.down = true;
+      OrderJournal journal = open(down, 512);
+      for (int i = 0; i < 12; ++i)
+         journal.append(order("RO" + i));
+      journal.close();
+      assertTrue(down.written.isEmpty());
+      assertTrue(segments().size() > 1);
+
+      RecordingSink sink = new RecordingSink();
+      journal = open(sink, 512);
+      assertEquals(12L, journal.stats().get("replayed"));
+      journal.close();
+      Set<String> ids = new LinkedHashSet<String>();
+      for (int i = 0; i < 12; ++i)
+         ids.add("RO" + i);
+      assertEquals(ids, new LinkedHashSet<String>(sink.written));
+   }//end undrainedOrdersAreReplayedOnReopen
+
+   @Test
+   void tornTailIsDroppedAndAppendingResumesBeforeIt() throws IOException {
+      RecordingSink sink = new RecordingSink();
+      OrderJournal journal = open(sink, 4096);
+      journal.append(order("RO1"));
+      journal.append(order("RO2"));
+      journal.close();
+
+      // a record whose CRC does not match, as a crash mid-append leaves it
+      Path segment = segments().get(0);
+      int tail = end(segment);
+      ByteBuffer torn = ByteBuffer.allocate(OrderJournal.HEADER_BYTES + 16);
+      torn.putInt(16).putInt(0xBADC0DE).put("not a real order".getBytes(StandardCharsets.US_ASCII)).flip();
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+         channel.write(torn, tail);
+      }//end try
+
+      journal = open(sink, 4096);
+      // drained orders in the segment still appended to are replayed, and skipped by the database
+      assertEquals(2L, journal.stats().get("replayed"));
+      byte[] bytes = Files.readAllBytes(segment);
+      for (int i = tail; i < tail + OrderJournal.HEADER_BYTES + 16; ++i)
+         assertEquals(0, bytes[i], "offset " + i);
+      journal.append(order("RO3"));
+      journal.close();
+      assertTrue(end(segment) > tail);
+
+      RecordingSink reread = new RecordingSink();
+      journal = open(reread, 4096);
+      assertEquals(3L, journal.stats().get("replayed"));
+      journal.close();
+      assertEquals(Set.of("RO1", "RO2", "RO3"), Set.copyOf(reread.written));
+   }//end tornTailIsDroppedAndAppendingResumesBeforeIt
+
+   @Test
+   void rejectedOrdersAreSetAside() throws IOException {
+      RecordingSink sink = new RecordingSink();
+      OrderJournal journal = open(sink, 4096);
+      journal.append(order("RO1"));
+      journal.append(order("bad2"));
+      journal.append(order("RO3"));
+      journal.close();
+
+      assertEquals(Set.of("RO1", "RO3"), Set.copyOf(sink.written));
+      assertEquals(List.of("bad2"), sink.rejected);
+      assertEquals(1L, journal.rejected());
+      assertEquals(1L, journal.stats().get("rejected"));
+      List<String> lines = Files.readAllLines(this._directory.resolve(OrderJournal.DEAD_LETTER_FILE));
+      assertEquals(1, lines.size());
+      String[] fields = lines.get(0).split("\t");
+      assertEquals("bad2", fields[1]);
+      assertEquals("alice", fields[3]);
+      assertEquals("G1:1:9.99 G2:2:4.50", fields[5]);
+      assertEquals("23503", fields[6]);
+
+      // the segment is still appended to, so its orders are replayed; the set-aside one is skipped
+      RecordingSink replay = new RecordingSink();
+      journal = open(replay, 4096);
+      assertEquals(3L, journal.stats().get("replayed"));
+      journal.close();
+      assertEquals(Set.of("RO1", "RO3"), Set.copyOf(replay.written));
+      assertTrue(replay.rejected.isEmpty());
+      assertEquals(0L, journal.rejected());
+      assertEquals(1, Files.readAllLines(this._directory.resolve(OrderJournal.DEAD_LETTER_FILE)).size());
+   }//end rejectedOrdersAreSetAside
+
+   @Test
+   void receiptIsDueSevenCalendarDaysLater() {
+      TimeZone zone = TimeZone.getDefault();
+      TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+      try{
+         // daylight saving time starts on 2024-03-10, within the week
+         long ordered = ZonedDateTime.of(2024, 3, 8, 12, 0, 0, 0, ZoneId.of("America/New_York")).toInstant()
+            .toEpochMilli();
+         OrderJournal.Entry entry = new OrderJournal.Entry("RO1", "TR1", "alice", ordered, new String[] { "G1" },
+            new int[] { 1 }, new BigDecimal[] { new BigDecimal("9.99") });
+         OrderReceipt receipt = entry.receipt();
+         assertEquals(LocalDateTime.of(2024, 3, 8, 12, 0), wallTime(receipt.orderTimestamp()));
+         assertEquals(LocalDateTime.of(2024, 3, 15, 12, 0), wallTime(receipt.dueDate()));
+      }finally{
+         TimeZone.setDefault(zone);
+      }//end try
+   }//end receiptIsDueSevenCalendarDaysLater
+
+   private static LocalDateTime wallTime(String timestamp) {
+      return Timestamp.valueOf(timestamp).toLocalDateTime();
+   }//end wallTime
+
+}//end OrderJournalTest
@@ -0,0 +1,91 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OrderPageTest {
+
+   private static final String[] COLUMNS = { "rentalOrderID", "orderTimestamp" };
+
+   private final List<Object[]> _rows = new ArrayList<Object[]>();
+   private final List<OrderPage.Key> _keys = new ArrayList<OrderPage.Key>();
+
+   /*
+    * Adds the rows a page query returned, in query order, e.g. "RO5".
+    **/
+   private void read(int... orders) {
+      for (int order : orders) {
+         Timestamp ts = new Timestamp(order * 1000L);
+         this._rows.add(new Object[] { "RO" + order, ts });
+         this._keys.add(new OrderPage.Key(ts, "RO" + order));
+      }//end for
+   }//end read
+
+   @Test
+   void firstPageWithMoreBehindIt() {
+      read(9, 8, 7, 6);
+      OrderPage page = OrderPage.of(COLUMNS, this._rows, this._keys, 3, false, true);
+      assertEquals(List.of("RO9", "RO8", "RO7"), page.rentalOrderIDs());
+      assertFalse(page.hasNewer());
+      assertTrue(page.hasOlder());
+      assertEquals("RO9", page.newest().rentalOrderID());
+      assertEquals("RO7", page.oldest().rentalOrderID());
+   }//end firstPageWithMoreBehindIt
+
+   @Test
+   void firstPageHoldingTheWholeHistory() {
+      read(9, 8);
+      OrderPage page = OrderPage.of(COLUMNS, this._rows, this._keys, 3, false, true);
+      assertEquals(List.of("RO9", "RO8"), page.rentalOrderIDs());
+      assertFalse(page.hasNewer());
+      assertFalse(page.hasOlder());
+   }//end firstPageHoldingTheWholeHistory
+
+   @Test
+   void olderPageAtTheEnd() {
+      read(6, 5);
+      OrderPage page = OrderPage.of(COLUMNS, this._rows, this._keys, 3, true, true);
+      assertTrue(page.hasNewer());
+      assertFalse(page.hasOlder());
+   }//end olderPageAtTheEnd
+
+   @Test
+   void newerPageIsReversedToNewestFirst() {
+      // a newer page is read oldest first, from just above the cursor
+      read(4, 5, 6, 7);
+      OrderPage page = OrderPage.of(COLUMNS, this._rows, this._keys, 3, true, false);
+      assertEquals(List.of("RO6", "RO5", "RO4"), page.rentalOrderIDs());
+      assertTrue(page.hasNewer());
+      assertTrue(page.hasOlder());
+      assertEquals("RO6", page.newest().rentalOrderID());
+      assertEquals("RO4", page.oldest().rentalOrderID());
+   }//end newerPageIsReversedToNewestFirst
+
+   @Test
+   void newerPageReachingTheNewestOrder() {
+      read(4, 5);
+      OrderPage page = OrderPage.of(COLUMNS, this._rows, this._keys, 3, true, false);
+      assertEquals(List.of("RO5", "RO4"), page.rentalOrderIDs());
+      assertFalse(page.hasNewer());
+      assertTrue(page.hasOlder());
+   }//end newerPageReachingTheNewestOrder
+
+   @Test
+   void emptyHistory() {
+      OrderPage page = OrderPage.of(COLUMNS, this._rows, this._keys, 3, false, true);
+      assertTrue(page.isEmpty());
+      assertNull(page.newest());
+      assertNull(page.oldest());
+      assertFalse(page.hasNewer());
+      assertFalse(page.hasOlder());
+   }//end emptyHistory
+
+}//end OrderPageTest
@@ -0,0 +1,60 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PasswordHasherTest {
+
+   @Test
+   void hashVerifiesOnlyItsPassword() {
+      String hash = PasswordHasher.hash("hunter2");
+      assertTrue(hash.startsWith(PasswordHasher.PREFIX + PasswordHasher.ITERATIONS + "$"));
+      assertEquals(4, hash.split("\\$").length);
+      assertTrue(PasswordHasher.verify("hunter2", hash));
+      assertFalse(PasswordHasher.verify("hunter3", hash));
+      assertFalse(PasswordHasher.verify("", hash));
+      assertFalse(PasswordHasher.needsRehash(hash));
+   }//end hashVerifiesOnlyItsPassword
+
+   @Test
+   void saltsDiffer() {
+      assertNotEquals(PasswordHasher.hash("same"), PasswordHasher.hash("same"));
+   }//end saltsDiffer
+
+   @Test
+   void plainPasswordsStillVerifyAndNeedRehash() {
+      assertTrue(PasswordHasher.verify("legacy", "legacy"));
+      assertFalse(PasswordHasher.verify("legacy", "Legacy"));
+      assertTrue(PasswordHasher.needsRehash("legacy"));
+   }//end plainPasswordsStillVerifyAndNeedRehash
+
+   @Test
+   void unknownUserNeverVerifies() {
+      assertFalse(PasswordHasher.verify("", null));
+      assertFalse(PasswordHasher.verify("anything", null));
+   }//end unknownUserNeverVerifies
+
+   @Test
+   void fewerIterationsNeedRehash() {
+      String hash = PasswordHasher.hash("pw");
+      String weaker = hash.replace("$" + PasswordHasher.ITERATIONS + "$", "$" + (PasswordHasher.ITERATIONS - 1) + "$");
+      assertTrue(PasswordHasher.needsRehash(weaker));
+      // the iteration count is part of the hash, so the altered one no longer verifies
+      assertFalse(PasswordHasher.verify("pw", weaker));
+   }//end fewerIterationsNeedRehash
+
+   @Test
+   void malformedHashesMatchNothing() {
+      String prefix = PasswordHasher.PREFIX;
+      assertFalse(PasswordHasher.verify("pw", prefix + "1000$onlysalt"));
+      assertFalse(PasswordHasher.verify("pw", prefix + "many$c2FsdA==$aGFzaA=="));
+      assertFalse(PasswordHasher.verify("pw", prefix + "1000$not base64!$aGFzaA=="));
+      assertTrue(PasswordHasher.needsRehash(prefix + "1000$onlysalt"));
+      assertTrue(PasswordHasher.needsRehash(prefix + "many$c2FsdA==$aGFzaA=="));
+   }//end malformedHashesMatchNothing
+
+}//end PasswordHasherTest
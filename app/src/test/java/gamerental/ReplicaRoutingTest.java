@@ -0,0 +1,37 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ReplicaRoutingTest {
+
+   @Test
+   void readsMayGoToAReplica() {
+      for (String sql : new String[] { Queries.VIEW_PROFILE, Queries.LOAD_CATALOG, Queries.LOAD_GAME,
+            Queries.FIRST_ORDER_PAGE, Queries.OLDER_ORDER_PAGE, Queries.NEWER_ORDER_PAGE, Queries.ORDER_DETAILS,
+            Queries.VIEW_TRACKING_INFO, Queries.TOP_GAMES_REPORT, Queries.GENRE_REVENUE_REPORT,
+            Queries.SHARD_GAME_TOTALS })
+         assertTrue(GameRental.isReadOnly(sql), sql);
+   }//end readsMayGoToAReplica
+
+   @Test
+   void writesStayOnThePrimary() {
+      for (String sql : new String[] { Queries.CREATE_USER, Queries.UPGRADE_PASSWORD, Queries.UPDATE_PASSWORD,
+            Queries.PLACE_ORDER, Queries.DRAIN_ORDERS, Queries.COPY_CATALOG, Queries.LEASE_STOCK,
+            Queries.RETURN_STOCK, Queries.RESTOCK, Queries.UPDATE_TRACKING_INFO, Queries.APPLY_TRACKING_EVENTS,
+            Queries.RECORD_RETURN, Queries.UPDATE_CATALOG, Queries.UPDATE_USER })
+         assertFalse(GameRental.isReadOnly(sql), sql);
+   }//end writesStayOnThePrimary
+
+   @Test
+   void lockingReadsAndSequencesStayOnThePrimary() {
+      assertFalse(GameRental.isReadOnly("SELECT * FROM Catalog WHERE gameID = ? FOR UPDATE"));
+      assertFalse(GameRental.isReadOnly("select 1 from Users for share"));
+      assertFalse(GameRental.isReadOnly("SELECT nextval('rental_order_id_seq')"));
+      assertFalse(GameRental.isReadOnly("  ANALYZE RentalOrder"));
+      assertTrue(GameRental.isReadOnly("  select lastUpdateDate from TrackingInfo"));
+   }//end lockingReadsAndSequencesStayOnThePrimary
+
+}//end ReplicaRoutingTest
@@ -0,0 +1,67 @@
+package gamerental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ShardRouterTest {
+
+   // a router over n shards without pools; routing never touches them.
+   private static ShardRouter router(int n) {
+      List<ShardRouter.Shard> shards = new ArrayList<ShardRouter.Shard>();
+      for (int i = 0; i < n; ++i)
+         shards.add(new ShardRouter.Shard(i, "jdbc:postgresql://shard" + i + "/gamerental", null));
+      return new ShardRouter(shards);
+   }//end router
+
+   @Test
+   void oneShardLeavesIdsAlone() {
+      ShardRouter one = router(1);
+      assertEquals("RO1042", one.tag("RO1042", 0));
+      assertEquals(0, one.shardOf("alice"));
+      assertEquals(0, one.shardOfId("RO1042"));
+   }//end oneShardLeavesIdsAlone
+
+   @Test
+   void taggedIdsRouteBackToTheirShard() {
+      ShardRouter three = router(3);
+      for (int shard = 0; shard < 3; ++shard) {
+         String id = three.tag("RO1042", shard);
+         assertEquals("RO1042-s" + shard, id);
+         assertEquals(shard, three.shardOfId(id));
+      }//end for
+   }//end taggedIdsRouteBackToTheirShard
+
+   @Test
+   void malformedOrForeignIdsGoToShardZero() {
+      ShardRouter three = router(3);
+      assertEquals(0, three.shardOfId(null));
+      assertEquals(0, three.shardOfId("RO1042"));
+      assertEquals(0, three.shardOfId("RO1042-s"));
+      assertEquals(0, three.shardOfId("RO1042-sx"));
+      assertEquals(0, three.shardOfId("RO1042-s1x"));
+      assertEquals(0, three.shardOfId("RO1042-s3"));
+      assertEquals(0, three.shardOfId("RO1042-s12"));
+      assertEquals(0, three.shardOfId("RO1042-s99999999999999999999"));
+      // only the last suffix counts
+      assertEquals(2, three.shardOfId("RO1-s1-s2"));
+   }//end malformedOrForeignIdsGoToShardZero
+
+   @Test
+   void loginsSpreadOverEveryShardAndStayPut() {
+      ShardRouter four = router(4);
+      int[] users = new int[4];
+      for (int i = 0; i < 4000; ++i) {
+         int shard = four.shardOf("user" + i);
+         assertEquals(shard, four.shardOf("user" + i));
+         ++users[shard];
+      }//end for
+      for (int count : users)
+         assertTrue(count > 800 && count < 1200, "uneven spread: " + count);
+   }//end loginsSpreadOverEveryShardAndStayPut
+
+}//end ShardRouterTest
@@ -0,0 +1,141 @@
+package gamerental;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class is the database every benchmark runs against.  For each
+ * data size it migrates the schema, empties the rental tables and seeds
+ * them with set-based inserts, so every trial starts from the same data.
+ *
+ * The database is given by system properties and is wiped by every
+ * trial, so point it at a dedicated database:
+ *
+ *    gamerental.bench.db        database name (default gamerental_bench)
+ *    gamerental.bench.port      server port (default 5432)
+ *    gamerental.bench.user      user name (default the OS user)
+ *    gamerental.bench.password  password (default empty)
+ *
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+   // genres the seeded catalog titles are spread over.
+   static final String[] GENRES = {
+      "Action", "Adventure", "Puzzle", "Racing", "RPG", "Shooter", "Sports", "Strategy" };
+
+   // the stock-tracked title and its stock, enough for any benchmark run.
+   static final String HOT_TITLE = "G1";
+   static final int HOT_TITLE_STOCK = 1000000000;
+
+   /**
+    * The number of seeded rental orders.  Users and catalog titles are a
+    * tenth of that; every order has two games and one tracking entry.
+    */
+   @Param({ "1000", "10000", "100000" })
+   public int orders;
+
+   GameRental esql;
+   int users;
+   int games;
+
+   @Setup(Level.Trial)
+   public void seed() throws SQLException {
+      this.esql = new GameRental(
+         System.getProperty("gamerental.bench.db", "gamerental_bench"),
+         System.getProperty("gamerental.bench.port", "5432"),
+         System.getProperty("gamerental.bench.user", System.getProperty("user.name")),
+         System.getProperty("gamerental.bench.password", ""));
+      new SchemaMigrator(this.esql).migrate();
+
+      this.users = Math.max(10, this.orders / 10);
+      this.games = Math.max(10, this.orders / 10);
+
+      this.esql.inTransaction(() -> {
+         this.esql.executeUpdate("TRUNCATE game_daily_rentals, genre_daily_rentals,"
+            + " TrackingInfo, GamesInOrder, RentalOrder, Catalog, Users");
+         this.esql.executeUpdate(
+            "INSERT INTO Users (login, password, role, favGames, phoneNum, numOverDueGames)"
+            + " SELECT 'user' || i, 'pw' || i, 'customer', NULL, '555-' || i, 0"
+            + " FROM generate_series(1, ?) AS i", this.users);
+         this.esql.executeUpdate(
+            "INSERT INTO Catalog (gameID, gameName, genre, price, description, imageURL)"
+            + " SELECT 'G' || i, 'Game ' || i, (?::text[])[1 + i % ?], 0.99 + i % 60,"
+            + " 'Description of game ' || i, 'https://example.com/' || i || '.png'"
+            + " FROM generate_series(1, ?) AS i", GENRES, GENRES.length, this.games);
+         // one stock-tracked title that every placeOrderHotTitle call rents
+         this.esql.executeUpdate("UPDATE Catalog SET unitsInStock = ? WHERE gameID = ?", HOT_TITLE_STOCK, HOT_TITLE);
+         this.esql.executeUpdate(
+            "INSERT INTO RentalOrder (rentalOrderID, login, noOfGames, totalPrice, orderTimestamp, dueDate)"
+            + " SELECT 'O' || i, 'user' || (1 + i % ?), 2, 9.98,"
+            + " now() - i * interval '1 minute', now() - i * interval '1 minute' + interval '7 days'"
+            + " FROM generate_series(1, ?) AS i", this.users, this.orders);
+         this.esql.executeUpdate(
+            "INSERT INTO GamesInOrder (rentalOrderID, gameID, unitsOrdered)"
+            + " SELECT 'O' || i, 'G' || (1 + (i + g) % ?), 1"
+            + " FROM generate_series(1, ?) AS i, generate_series(0, 1) AS g", this.games, this.orders);
+         this.esql.executeUpdate(
+            "INSERT INTO TrackingInfo (trackingID, rentalOrderID, status, currentLocation, courierName, lastUpdateDate)"
+            + " SELECT 'T' || i, 'O' || i, 'Pending', 'Warehouse', 'Courier Service', now()"
+            + " FROM generate_series(1, ?) AS i", this.orders);
+         // the rollups of the seeded orders, as PLACE_ORDER would have kept them
+         this.esql.executeUpdate(
+            "INSERT INTO game_daily_rentals (day, gameID, slot, orders, units, revenue)"
+            + " SELECT o.orderTimestamp::date, g.gameID, 0, count(*), sum(g.unitsOrdered), sum(g.unitsOrdered * c.price)"
+            + " FROM RentalOrder o JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+            + " JOIN Catalog c ON c.gameID = g.gameID GROUP BY 1, 2");
+         this.esql.executeUpdate(
+            "INSERT INTO genre_daily_rentals (day, genre, slot, orders, units, revenue)"
+            + " SELECT o.orderTimestamp::date, c.genre, 0, count(DISTINCT o.rentalOrderID),"
+            + " sum(g.unitsOrdered), sum(g.unitsOrdered * c.price)"
+            + " FROM RentalOrder o JOIN GamesInOrder g ON g.rentalOrderID = o.rentalOrderID"
+            + " JOIN Catalog c ON c.gameID = g.gameID GROUP BY 1, 2");
+         return null;
+      });
+      this.esql.executeUpdate("ANALYZE");
+      this.esql.invalidateCatalog();
+      this.esql.catalog();
+   }//end seed
+
+   @TearDown(Level.Trial)
+   public void close() {
+      this.esql.cleanup();
+   }//end close
+
+   /**
+    * @return the login of a random seeded user
+    */
+   String randomLogin() {
+      return "user" + (1 + ThreadLocalRandom.current().nextInt(this.users));
+   }//end randomLogin
+
+   /**
+    * @return the gameID of a random seeded title
+    */
+   String randomGameID() {
+      return "G" + (1 + ThreadLocalRandom.current().nextInt(this.games));
+   }//end randomGameID
+
+   /**
+    * @return the trackingID of a random seeded order
+    */
+   String randomTrackingID() {
+      return "T" + (1 + ThreadLocalRandom.current().nextInt(this.orders));
+   }//end randomTrackingID
+
+   /**
+    * @param n the number of a seeded order, from 1 to orders
+    * @return the login that placed it
+    */
+   String ownerOf(int n) {
+      return "user" + (1 + n % this.users);
+   }//end ownerOf
+
+}//end BenchmarkDatabase
@@ -0,0 +1,120 @@
+package gamerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks each data-access path of the menu operations
+ * with the same statements and cache the application uses.  Sample-time
+ * mode reports latency percentiles as well as the mean.
+ *
+ *    java -jar benchmarks/target/benchmarks.jar -rf json -rff results.json
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmarks {
+
+   // dominated by the password hash; the first login of each user also upgrades its plain password
+   @Benchmark
+   public SessionManager.Session login(BenchmarkDatabase db) throws SQLException {
+      String login = db.randomLogin();
+      SessionManager.Session session = db.esql.sessions().login(login, "pw" + login.substring(4));
+      db.esql.sessions().logout(session.token());
+      return session;
+   }//end login
+
+   @Benchmark
+   public List<Game> catalogSearchByGenre(BenchmarkDatabase db) throws SQLException {
+      String genre = BenchmarkDatabase.GENRES[ThreadLocalRandom.current().nextInt(BenchmarkDatabase.GENRES.length)];
+      return db.esql.catalog().byGenre(genre);
+   }//end catalogSearchByGenre
+
+   @Benchmark
+   public List<Game> catalogSearchByPriceRange(BenchmarkDatabase db) throws SQLException {
+      double min = ThreadLocalRandom.current().nextInt(50);
+      return db.esql.catalog().byPriceRange(min, min + 5);
+   }//end catalogSearchByPriceRange
+
+   @Benchmark
+   public List<Game> catalogSortByPrice(BenchmarkDatabase db) throws SQLException {
+      return db.esql.catalog().sortedByPrice(true);
+   }//end catalogSortByPrice
+
+   @Benchmark
+   public OrderReceipt placeOrder(BenchmarkDatabase db) throws SQLException {
+      Cart cart = new Cart();
+      cart.add(db.randomGameID(), 1);
+      cart.add(db.randomGameID(), 2);
+      return db.esql.submitOrder(db.randomLogin(), cart);
+   }//end placeOrder
+
+   // every thread rents the same stock-tracked title
+   @Benchmark
+   @Threads(Threads.MAX)
+   public OrderReceipt placeOrderHotTitle(BenchmarkDatabase db) throws SQLException {
+      Cart cart = new Cart();
+      cart.add(BenchmarkDatabase.HOT_TITLE, 1);
+      return db.esql.submitOrder(db.randomLogin(), cart);
+   }//end placeOrderHotTitle
+
+   @Benchmark
+   public OrderPage orderHistoryFirstPage(BenchmarkDatabase db) throws SQLException {
+      return db.esql.fetchOrderPage(db.randomLogin(), null, true, GameRental.ORDER_PAGE_SIZE);
+   }//end orderHistoryFirstPage
+
+   @Benchmark
+   public OrderPage orderHistoryOlderPage(BenchmarkDatabase db) throws SQLException {
+      // a keyset page from the middle of the seeded history
+      long minutesAgo = ThreadLocalRandom.current().nextInt(db.orders);
+      OrderPage.Key from = new OrderPage.Key(
+         new Timestamp(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutesAgo)), "O" + minutesAgo);
+      return db.esql.fetchOrderPage(db.randomLogin(), from, true, GameRental.ORDER_PAGE_SIZE);
+   }//end orderHistoryOlderPage
+
+   @Benchmark
+   public int trackingLookup(BenchmarkDatabase db) throws SQLException {
+      int n = 1 + ThreadLocalRandom.current().nextInt(db.orders);
+      return db.esql.executeQuery(Queries.VIEW_TRACKING_INFO, "T" + n, db.ownerOf(n), false);
+   }//end trackingLookup
+
+   // a history page and the details of all its orders: two round trips, not one per order
+   @Benchmark
+   public List<OrderDetail> orderHistoryWithDetails(BenchmarkDatabase db) throws SQLException {
+      String login = db.randomLogin();
+      OrderPage page = db.esql.fetchOrderPage(login, null, true, GameRental.ORDER_PAGE_SIZE);
+      return db.esql.fetchOrderDetails(login, false, page.rentalOrderIDs());
+   }//end orderHistoryWithDetails
+
+   @Benchmark
+   public int trackingUpdate(BenchmarkDatabase db) throws SQLException {
+      return db.esql.executeUpdate(Queries.UPDATE_TRACKING_INFO,
+         "In Transit", "Hub", "Courier Service", "benchmark", db.randomTrackingID());
+   }//end trackingUpdate
+
+   @Benchmark
+   public int topGamesReport(BenchmarkDatabase db) throws SQLException {
+      return db.esql.executeQuery(Queries.TOP_GAMES_REPORT, 7, 10);
+   }//end topGamesReport
+
+   @Benchmark
+   public int genreRevenueReport(BenchmarkDatabase db) throws SQLException {
+      return db.esql.executeQuery(Queries.GENRE_REVENUE_REPORT, 7);
+   }//end genreRevenueReport
+
+}//end QueryBenchmarks